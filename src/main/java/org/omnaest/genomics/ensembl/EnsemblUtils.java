@@ -37,12 +37,19 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -65,9 +72,11 @@ import org.omnaest.genomics.ensembl.domain.Variant;
 import org.omnaest.genomics.ensembl.domain.VariantConsequence;
 import org.omnaest.genomics.ensembl.domain.VariantDetail;
 import org.omnaest.genomics.ensembl.domain.raw.BioType;
+import org.omnaest.genomics.ensembl.domain.raw.ExonRegion;
 import org.omnaest.genomics.ensembl.domain.raw.ExonRegions;
 import org.omnaest.genomics.ensembl.domain.raw.ExternalXRef;
 import org.omnaest.genomics.ensembl.domain.raw.ExternalXRefs;
+import org.omnaest.genomics.ensembl.domain.raw.Lookup;
 import org.omnaest.genomics.ensembl.domain.raw.RegionLocation;
 import org.omnaest.genomics.ensembl.domain.raw.RegionMappings;
 import org.omnaest.genomics.ensembl.domain.raw.Sequence;
@@ -79,9 +88,14 @@ import org.omnaest.genomics.ensembl.domain.raw.Transcripts;
 import org.omnaest.genomics.ensembl.domain.raw.VariantInfo;
 import org.omnaest.genomics.ensembl.domain.raw.Variations;
 import org.omnaest.genomics.ensembl.domain.raw.XRefs;
+import org.omnaest.genomics.ensembl.internal.DNASequenceUtils;
+import org.omnaest.genomics.ensembl.internal.LazyFuture;
 import org.omnaest.genomics.ensembl.internal.VariantInfoIndex;
+import org.omnaest.genomics.ensembl.rest.EnsemblRESTException;
 import org.omnaest.genomics.ensembl.rest.EnsemblRESTUtils;
 import org.omnaest.genomics.ensembl.rest.EnsemblRESTUtils.EnsembleRESTAccessor;
+import org.omnaest.genomics.ensembl.rest.EnsemblRESTUtils.EnsembleRESTAsyncAccessor;
+import org.omnaest.genomics.ensembl.rest.EnsemblRESTUtils.SequenceType;
 import org.omnaest.utils.CollectorUtils;
 import org.omnaest.utils.ConsumerUtils;
 import org.omnaest.utils.ExceptionUtils;
@@ -99,7 +113,6 @@ import org.omnaest.utils.exception.handler.RuntimeExceptionHandler;
 import org.omnaest.utils.optional.NullOptional;
 import org.omnaest.utils.repository.MapElementRepository;
 import org.omnaest.utils.rest.client.RestClient.Proxy;
-import org.omnaest.utils.rest.client.RestHelper.RESTAccessExeption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -109,11 +122,14 @@ import org.slf4j.LoggerFactory;
  */
 public class EnsemblUtils
 {
-    private static final String          CACHE_KEY_VARIANT_DETAIL = "VARIANT_DETAIL";
-    private static final Logger          LOG                      = LoggerFactory.getLogger(EnsemblUtils.class);
-    private static File                  localDefaultCacheFile    = new File("cache/ensembl");
-    private static Function<File, Cache> cacheFactory             = (file) -> new JsonFolderFilesCache(file).withNativeByteArrayStorage(true);
-    private static Supplier<Cache>       cacheSupplier            = CachedElement.of(() -> cacheFactory.apply(localDefaultCacheFile));
+    public static final int DEFAULT_CACHE_READ_PARALLELISM = 8;
+
+    private static final String          CACHE_KEY_VARIANT_DETAIL         = "VARIANT_DETAIL";
+    private static final Pattern         PROTEIN_POSITION_SYNONYM_PATTERN = Pattern.compile("[_a-zA-Z0-9]+\\:p\\.([a-zA-Z]+)([0-9]+)([a-zA-Z]+)");
+    private static final Logger          LOG                              = LoggerFactory.getLogger(EnsemblUtils.class);
+    private static File                  localDefaultCacheFile            = new File("cache/ensembl");
+    private static Function<File, Cache> cacheFactory                     = (file) -> new JsonFolderFilesCache(file).withNativeByteArrayStorage(true);
+    private static Supplier<Cache>       cacheSupplier                    = CachedElement.of(() -> cacheFactory.apply(localDefaultCacheFile));
 
     public static interface EnsemblDataSetAccessor
     {
@@ -150,6 +166,15 @@ public class EnsemblUtils
 
         EnsemblDataSetAccessor withVariantDetailsCacheResolvingConsumer(Consumer<VariantInfo> variantByCacheConsumer);
 
+        /**
+         * Defines the number of threads which read the cached variant details of a {@link SpeciesAccessor#findVariantDetails(Collection)} call in
+         * parallel. Default is {@value EnsemblUtils#DEFAULT_CACHE_READ_PARALLELISM}
+         * 
+         * @param cacheReadParallelism
+         * @return
+         */
+        EnsemblDataSetAccessor withCacheReadParallelism(int cacheReadParallelism);
+
     }
 
     public static interface CacheManager
@@ -164,11 +189,23 @@ public class EnsemblUtils
     }
 
     public static EnsemblDataSetAccessor getInstance()
+    {
+        return getInstance(EnsemblRESTUtils.getInstance());
+    }
+
+    /**
+     * Returns a new {@link EnsemblDataSetAccessor} which requests the ensembl rest api using the given {@link EnsembleRESTAccessor}
+     * 
+     * @param ensembleRESTAccessor
+     * @return
+     */
+    public static EnsemblDataSetAccessor getInstance(EnsembleRESTAccessor ensembleRESTAccessor)
     {
         return new EnsemblDataSetAccessor()
         {
-            private EnsembleRESTAccessor restAccessor     = EnsemblRESTUtils.getInstance();
-            private VariantInfoIndex     variantInfoIndex = VariantInfoIndex.getInstance();
+            private EnsembleRESTAccessor      restAccessor      = ensembleRESTAccessor;
+            private EnsembleRESTAsyncAccessor asyncRestAccessor = EnsemblRESTUtils.getAsyncInstance(this.restAccessor);
+            private VariantInfoIndex          variantInfoIndex  = VariantInfoIndex.getInstance();
 
             private Consumer<VariantInfo> globalVariantByFTPConsumer   = ConsumerUtils.noOperation();
             private Consumer<VariantInfo> globalVariantByRESTConsumer  = ConsumerUtils.noOperation();
@@ -176,6 +213,14 @@ public class EnsemblUtils
 
             private boolean variantDetailRESTResolvingEnabled = true;
             private Cache   cache;
+            private int     cacheReadParallelism              = DEFAULT_CACHE_READ_PARALLELISM;
+
+            @Override
+            public EnsemblDataSetAccessor withCacheReadParallelism(int cacheReadParallelism)
+            {
+                this.cacheReadParallelism = Math.max(1, cacheReadParallelism);
+                return this;
+            }
 
             @Override
             public EnsemblDataSetAccessor withVariantDetailRESTResolvingEnabled(boolean enabled)
@@ -233,7 +278,8 @@ public class EnsemblUtils
             @Override
             public EnsemblDataSetAccessor usingFTPLargeVariationFileIndexSupport()
             {
-                this.variantInfoIndex.enable();
+                this.variantInfoIndex.usingPackedIndex()
+                                     .enable();
                 return this;
             }
 
@@ -336,9 +382,9 @@ public class EnsemblUtils
 
                     private RuntimeExceptionHandler restAccessExceptionHandler = e ->
                     {
-                        if (e instanceof RESTAccessExeption)
+                        if (e instanceof EnsemblRESTException)
                         {
-                            if (((RESTAccessExeption) e).getStatusCode() != 400)
+                            if (((EnsemblRESTException) e).getStatusCode() != 400)
                             {
                                 throw e;
                             }
@@ -349,22 +395,41 @@ public class EnsemblUtils
                         }
                     };
 
-                    private GeneAccessor createGeneAccessor(String id)
+                    /**
+                     * Returns a {@link LazyFuture} which requests the data on first demand and resolves ignored {@link EnsemblRESTException}s to null
+                     * 
+                     * @param requestFactory
+                     * @return
+                     */
+                    private <T> LazyFuture<T> lazyRequest(Supplier<CompletableFuture<T>> requestFactory)
                     {
-                        Sequence rawSequence = ExceptionUtils.executeSilent(() -> restAccessor.getDNASequence(id), this.restAccessExceptionHandler);
-                        Sequences proteinSequences = ExceptionUtils.executeSilent(() -> restAccessor.getProteinSequences(id), this.restAccessExceptionHandler);
-                        ExonRegions exonRegions = ExceptionUtils.executeSilent(() -> restAccessor.getExonRegions(id), this.restAccessExceptionHandler);
-                        GeneLocation geneLocation = this.determineGeneLocation(rawSequence);
-                        ExternalXRefs xRefs = ExceptionUtils.executeSilent(() -> restAccessor.getXRefsForExternalDatabase(id, "WikiGene"),
-                                                                           this.restAccessExceptionHandler);
+                        return LazyFuture.of(() -> requestFactory.get()
+                                                                 .exceptionally(e -> ExceptionUtils.executeSilent(() ->
+                                                                 {
+                                                                     Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                                                                     if (cause instanceof RuntimeException)
+                                                                     {
+                                                                         throw (RuntimeException) cause;
+                                                                     }
+                                                                     throw new IllegalStateException(cause);
+                                                                 }, this.restAccessExceptionHandler)));
+                    }
 
-                        //                        Map<String, ExonRegion> exonIdToExonRegion = this.determineExonRegions();
+                    private GeneAccessor createGeneAccessor(String id)
+                    {
+                        // every field is requested only on first demand and at most once, concurrent callers share the request in flight
+                        LazyFuture<Sequence> rawSequence = this.lazyRequest(() -> asyncRestAccessor.getDNASequence(id));
+                        LazyFuture<Sequences> proteinSequences = this.lazyRequest(() -> asyncRestAccessor.getProteinSequences(id));
+                        LazyFuture<Sequences> codingDNASequences = this.lazyRequest(() -> asyncRestAccessor.getCodingDNASequence(id));
+                        LazyFuture<ExonRegions> exonRegions = this.lazyRequest(() -> asyncRestAccessor.getExonRegions(id));
+                        LazyFuture<ExternalXRefs> wikiGeneXRefs = this.lazyRequest(() -> asyncRestAccessor.getXRefsForExternalDatabase(id, "WikiGene"));
 
                         return new GeneAccessor()
                         {
                             @Override
                             public String getName()
                             {
+                                ExternalXRefs xRefs = wikiGeneXRefs.get();
                                 String retval = null;
                                 if (xRefs != null && !xRefs.isEmpty())
                                 {
@@ -380,6 +445,7 @@ public class EnsemblUtils
 
                             public String getSymbol()
                             {
+                                ExternalXRefs xRefs = wikiGeneXRefs.get();
                                 String retval = null;
                                 if (xRefs != null && !xRefs.isEmpty())
                                 {
@@ -414,39 +480,59 @@ public class EnsemblUtils
                             @Override
                             public String getDescription()
                             {
-                                return rawSequence.getDescription();
+                                return rawSequence.get()
+                                                  .getDescription();
                             }
 
                             @Override
                             public String getDNASequence()
                             {
-                                return rawSequence.getSequence();
+                                return rawSequence.get()
+                                                  .getSequence();
                             }
 
                             @Override
                             public Stream<String> getcDNASequences()
                             {
-                                Sequences sequences = ExceptionUtils.executeSilent(() -> restAccessor.getCodingDNASequence(id), restAccessExceptionHandler);
-                                return sequences.stream()
-                                                .map(seq -> seq.getSequence());
+                                return codingDNASequences.get()
+                                                         .stream()
+                                                         .map(seq -> seq.getSequence());
                             }
 
                             @Override
                             public Stream<String> getProteinSequences()
                             {
-                                return proteinSequences != null ? proteinSequences.stream()
-                                                                                  .filter(seq -> restAccessor.getLookUp(restAccessor.getLookUp(seq.getId())
-                                                                                                                                    .getParent())
-                                                                                                             .hasBiotype(BioType.PROTEIN_CODING))
-                                                                                  .filter(seq -> seq != null)
-                                                                                  .map(seq -> seq.getSequence())
-                                        : Stream.empty();
+                                Sequences sequences = proteinSequences.get();
+                                if (sequences == null)
+                                {
+                                    return Stream.empty();
+                                }
+
+                                // resolve the transcript biotypes with two batch lookups instead of two lookups per protein sequence
+                                Map<String, Lookup> translationIdToLookup = restAccessor.getLookUps(sequences.stream()
+                                                                                                             .filter(seq -> seq != null)
+                                                                                                             .map(seq -> seq.getId())
+                                                                                                             .filter(PredicateUtils.notNull())
+                                                                                                             .collect(Collectors.toList()));
+                                Map<String, Lookup> transcriptIdToLookup = restAccessor.getLookUps(translationIdToLookup.values()
+                                                                                                                        .stream()
+                                                                                                                        .map(Lookup::getParent)
+                                                                                                                        .filter(PredicateUtils.notNull())
+                                                                                                                        .collect(Collectors.toSet()));
+                                return sequences.stream()
+                                                .filter(seq -> seq != null)
+                                                .filter(seq -> Optional.ofNullable(translationIdToLookup.get(seq.getId()))
+                                                                       .map(Lookup::getParent)
+                                                                       .map(transcriptIdToLookup::get)
+                                                                       .map(transcript -> transcript.hasBiotype(BioType.PROTEIN_CODING))
+                                                                       .orElse(false))
+                                                .map(seq -> seq.getSequence());
                             }
 
                             @Override
                             public GeneLocation getLocation()
                             {
-                                return geneLocation;
+                                return determineGeneLocation(rawSequence.get());
                             }
 
                             @Override
@@ -507,11 +593,15 @@ public class EnsemblUtils
                             @Override
                             public List<Exon> getExons()
                             {
-                                Map<String, String> exonIdToSequence = determineExonSequences(exonRegions);
-                                return exonRegions.stream()
-                                                  .map(region -> new Exon(new Range(region.getStart(), region.getEnd()),
-                                                                          exonIdToSequence.get(region.getExonId())))
-                                                  .collect(Collectors.toList());
+                                exonRegions.start();
+                                rawSequence.start();
+
+                                ExonRegions regions = exonRegions.get();
+                                Map<String, String> exonIdToSequence = determineExonSequences(regions, rawSequence.get());
+                                return regions.stream()
+                                              .map(region -> new Exon(new Range(region.getStart(), region.getEnd()),
+                                                                      exonIdToSequence.get(region.getExonId())))
+                                              .collect(Collectors.toList());
                             }
 
                             @Override
@@ -548,15 +638,51 @@ public class EnsemblUtils
 
                     }
 
-                    private Map<String, String> determineExonSequences(ExonRegions exonRegions)
+                    /**
+                     * Slices the exon sequences out of the gene DNA sequence and requests only the exons which lie outside of the gene span with a
+                     * single batch request
+                     * 
+                     * @param exonRegions
+                     * @param geneSequence
+                     * @return
+                     */
+                    private Map<String, String> determineExonSequences(ExonRegions exonRegions, Sequence geneSequence)
                     {
-                        List<Sequence> sequences = exonRegions.stream()
-                                                              .map(region -> region.getExonId())
-                                                              .distinct()
-                                                              .map(exonId -> restAccessor.getDNASequence(exonId))
-                                                              .collect(Collectors.toList());
-                        return sequences.stream()
-                                        .collect(Collectors.toMap(seq -> seq.getId(), seq -> seq.getSequence()));
+                        GeneLocation geneLocation = this.determineGeneLocation(geneSequence);
+                        String geneDNASequence = geneSequence != null ? geneSequence.getSequence() : null;
+
+                        Map<String, String> exonIdToSequence = new HashMap<>();
+                        Set<String> remainingExonIds = new LinkedHashSet<>();
+                        for (ExonRegion region : exonRegions)
+                        {
+                            String exonId = region.getExonId();
+                            if (exonId != null && !exonIdToSequence.containsKey(exonId))
+                            {
+                                boolean isOnGeneChromosome = geneLocation != null && (region.getSequenceRegionName() == null
+                                        || StringUtils.equalsIgnoreCase(region.getSequenceRegionName(), geneLocation.getChromosome()));
+                                Optional<String> sequence = isOnGeneChromosome ? DNASequenceUtils.slice(geneDNASequence, geneLocation, region.getStart(),
+                                                                                                       region.getEnd(), region.getStrand())
+                                        : Optional.empty();
+                                if (sequence.isPresent())
+                                {
+                                    exonIdToSequence.put(exonId, sequence.get());
+                                }
+                                else
+                                {
+                                    remainingExonIds.add(exonId);
+                                }
+                            }
+                        }
+
+                        if (!remainingExonIds.isEmpty())
+                        {
+                            restAccessor.getSequences(remainingExonIds, SequenceType.GENOMIC)
+                                        .stream()
+                                        .filter(PredicateUtils.notNull())
+                                        .forEach(seq -> exonIdToSequence.putIfAbsent(seq.getId(), seq.getSequence()));
+                        }
+
+                        return exonIdToSequence;
                     }
 
                     private GeneLocation determineGeneLocation(Sequence rawSequence)
@@ -610,6 +736,19 @@ public class EnsemblUtils
                                            private Consumer<VariantInfo> variantByRESTConsumer  = ConsumerUtils.noOperation();
                                            private Consumer<VariantInfo> variantByCacheConsumer = ConsumerUtils.noOperation();
 
+                                           // variant infos, consumer notifications and derived fields are resolved at most once per variant detail
+                                           private final Supplier<Optional<VariantInfo>>     cachedVariantInfo       = CachedElement.of(() -> this.resolveVariantInfo(cachedVariantIdToVariantDetail));
+                                           private final Supplier<Optional<VariantInfo>>     restResolvedVariantInfo = CachedElement.of(() -> this.resolveVariantInfo(rawRESTVariantIdToVariantDetail));
+                                           private final AtomicBoolean                       restConsumerNotified    = new AtomicBoolean(false);
+                                           private final AtomicBoolean                       ftpConsumerNotified     = new AtomicBoolean(false);
+                                           private final AtomicBoolean                       cacheConsumerNotified   = new AtomicBoolean(false);
+                                           private final Supplier<List<String>>              synonyms                = CachedElement.of(() -> this.determineSynonyms());
+                                           private final Supplier<Integer>                   proteinPosition         = CachedElement.of(() -> this.determineProteinPosition());
+                                           private final Supplier<Set<ClinicalSignificance>> clinicalSignificances   = CachedElement.of(() -> this.determineClinicalSignificances());
+                                           private final Supplier<VariantConsequence>        consequence             = CachedElement.of(() -> this.determineConsequence());
+                                           private final Supplier<SortedSet<String>>         traits                  = CachedElement.of(() -> this.determineTraits());
+                                           private final Supplier<Double>                    minorAlleleFrequency    = CachedElement.of(() -> this.determineMinorAlleleFrequency());
+
                                            @Override
                                            public String getId()
                                            {
@@ -640,12 +779,18 @@ public class EnsemblUtils
                                                return this;
                                            }
 
+                                           private Optional<VariantInfo> resolveVariantInfo(Supplier<Function<String, VariantInfo>> variantResolver)
+                                           {
+                                               return Optional.ofNullable(variantResolver.get()
+                                                                                         .apply(variantId));
+                                           }
+
                                            private <E> Optional<E> getVariantInfo(Function<VariantInfo, E> methodReference)
                                            {
                                                AtomicReference<VariantInfo> restVariantInfo = new AtomicReference<>();
                                                AtomicReference<VariantInfo> ftpVariantInfo = new AtomicReference<>();
-                                               NullOptional<VariantInfo> cachedVariant = NullOptional.ofNullable(cachedVariantIdToVariantDetail.get()
-                                                                                                                                               .apply(variantId));
+                                               NullOptional<VariantInfo> cachedVariant = NullOptional.ofNullable(this.cachedVariantInfo.get()
+                                                                                                                                       .orElse(null));
 
                                                E result = cachedVariant.map(methodReference)
                                                                        .orElseGetAndFlatMap(() -> NullOptional.empty()
@@ -665,25 +810,34 @@ public class EnsemblUtils
                                                )
                                                                        .orElseGet(() ->
                                                                        {
-                                                                           restVariantInfo.set(rawRESTVariantIdToVariantDetail.get()
-                                                                                                                              .apply(variantId));
+                                                                           restVariantInfo.set(this.restResolvedVariantInfo.get()
+                                                                                                                           .orElse(null));
                                                                            return ObjectUtils.getIfNotNull(restVariantInfo.get(), methodReference);
                                                                        });
 
                                                if (restVariantInfo.get() != null)
                                                {
-                                                   this.variantByRESTConsumer.accept(restVariantInfo.get());
-                                                   globalVariantByRESTConsumer.accept(restVariantInfo.get());
+                                                   if (this.restConsumerNotified.compareAndSet(false, true))
+                                                   {
+                                                       this.variantByRESTConsumer.accept(restVariantInfo.get());
+                                                       globalVariantByRESTConsumer.accept(restVariantInfo.get());
+                                                   }
                                                }
                                                else if (ftpVariantInfo.get() != null)
                                                {
-                                                   this.variantByFTPConsumer.accept(ftpVariantInfo.get());
-                                                   globalVariantByFTPConsumer.accept(ftpVariantInfo.get());
+                                                   if (this.ftpConsumerNotified.compareAndSet(false, true))
+                                                   {
+                                                       this.variantByFTPConsumer.accept(ftpVariantInfo.get());
+                                                       globalVariantByFTPConsumer.accept(ftpVariantInfo.get());
+                                                   }
                                                }
                                                else if (cachedVariant.isPresent())
                                                {
-                                                   this.variantByCacheConsumer.accept(cachedVariant.get());
-                                                   globalVariantByCacheConsumer.accept(cachedVariant.get());
+                                                   if (this.cacheConsumerNotified.compareAndSet(false, true))
+                                                   {
+                                                       this.variantByCacheConsumer.accept(cachedVariant.get());
+                                                       globalVariantByCacheConsumer.accept(cachedVariant.get());
+                                                   }
                                                }
 
                                                return Optional.ofNullable(result);
@@ -691,6 +845,11 @@ public class EnsemblUtils
 
                                            @Override
                                            public List<String> getSynonyms()
+                                           {
+                                               return this.synonyms.get();
+                                           }
+
+                                           private List<String> determineSynonyms()
                                            {
                                                return this.getVariantInfo(VariantInfo::getSynonyms)
                                                           .orElse(Collections.emptyList());
@@ -698,6 +857,11 @@ public class EnsemblUtils
 
                                            @Override
                                            public int getProteinPosition()
+                                           {
+                                               return this.proteinPosition.get();
+                                           }
+
+                                           private int determineProteinPosition()
                                            {
                                                int retval = -1;
 
@@ -706,7 +870,7 @@ public class EnsemblUtils
                                                for (String synonym : synonyms)
                                                {
                                                    Optional<Match> match = MatcherUtils.matcher()
-                                                                                       .of(Pattern.compile("[_a-zA-Z0-9]+\\:p\\.([a-zA-Z]+)([0-9]+)([a-zA-Z]+)"))
+                                                                                       .of(PROTEIN_POSITION_SYNONYM_PATTERN)
                                                                                        .matchAgainst(synonym);
                                                    if (match.isPresent())
                                                    {
@@ -723,33 +887,42 @@ public class EnsemblUtils
 
                                            @Override
                                            public Set<ClinicalSignificance> getClinicalSignificances()
+                                           {
+                                               return this.clinicalSignificances.get();
+                                           }
+
+                                           private Set<ClinicalSignificance> determineClinicalSignificances()
                                            {
                                                Set<String> clinicalSignifance = this.getVariantInfo(VariantInfo::getClinicalSignifance)
                                                                                     .orElse(Collections.emptySet());
                                                return ObjectUtils.getOrDefaultIfNotNull(clinicalSignifance, () -> clinicalSignifance.stream()
-                                                                                                                                    .map(significance -> Arrays.asList(ClinicalSignificance.values())
-                                                                                                                                                               .stream()
-                                                                                                                                                               .filter(isignificance -> isignificance.matches(significance))
-                                                                                                                                                               .findFirst()
-                                                                                                                                                               .orElse(ClinicalSignificance.OTHER))
+                                                                                                                                    .map(significance -> ClinicalSignificance.of(significance)
+                                                                                                                                                                             .orElse(ClinicalSignificance.OTHER))
                                                                                                                                     .collect(CollectorUtils.toSortedSet()),
                                                                                         () -> Collections.emptySet());
                                            }
 
                                            @Override
                                            public VariantConsequence getConsequence()
+                                           {
+                                               return this.consequence.get();
+                                           }
+
+                                           private VariantConsequence determineConsequence()
                                            {
                                                String currentConsequence = this.getVariantInfo(VariantInfo::getConsequence)
                                                                                .orElse(null);
-                                               return Arrays.asList(VariantConsequence.values())
-                                                            .stream()
-                                                            .filter(consequence -> consequence.matches(currentConsequence))
-                                                            .findFirst()
-                                                            .orElse(VariantConsequence.UNKNOWN);
+                                               return VariantConsequence.of(currentConsequence)
+                                                                        .orElse(VariantConsequence.UNKNOWN);
                                            }
 
                                            @Override
                                            public SortedSet<String> getTraits()
+                                           {
+                                               return this.traits.get();
+                                           }
+
+                                           private SortedSet<String> determineTraits()
                                            {
                                                return this.getVariantInfo(VariantInfo::getPhenotypes)
                                                           .orElse(Collections.emptyList())
@@ -761,6 +934,11 @@ public class EnsemblUtils
 
                                            @Override
                                            public double getMinorAlleleFrequency()
+                                           {
+                                               return this.minorAlleleFrequency.get();
+                                           }
+
+                                           private double determineMinorAlleleFrequency()
                                            {
                                                return NumberUtils.toDouble(this.getVariantInfo(VariantInfo::getMaf)
                                                                                .orElse(null));
@@ -812,20 +990,69 @@ public class EnsemblUtils
                     {
                         return () ->
                         {
-                            Map<String, VariantInfo> map = cache != null ? Optional.ofNullable(variantIds)
-                                                                                   .orElse(Collections.emptySet())
-                                                                                   .stream()
-                                                                                   .map(variantId -> BiElement.of(variantId,
-                                                                                                                  cache.get(this.determineCacheKey(rawSpecies,
-                                                                                                                                                   variantId),
-                                                                                                                            VariantInfo.class)))
-                                                                                   .filter(BiElement::hasNoNullValue)
-                                                                                   .collect(Collectors.toMap(BiElement::getFirst, BiElement::getSecond))
-                                    : Collections.emptyMap();
+                            Map<String, VariantInfo> map = cache != null ? this.readCachedVariantInfos(cache, rawSpecies, variantIds) : Collections.emptyMap();
                             return variantId -> map.get(variantId);
                         };
                     }
 
+                    /**
+                     * Reads the cached {@link VariantInfo}s of all given variant ids with up to {@link #withCacheReadParallelism(int)} threads, since
+                     * each read of a file based {@link Cache} is an independent file access and json deserialization
+                     * 
+                     * @param cache
+                     * @param rawSpecies
+                     * @param variantIds
+                     * @return
+                     */
+                    private Map<String, VariantInfo> readCachedVariantInfos(Cache cache, Species rawSpecies, Collection<String> variantIds)
+                    {
+                        List<String> distinctVariantIds = Optional.ofNullable(variantIds)
+                                                                  .orElse(Collections.emptySet())
+                                                                  .stream()
+                                                                  .filter(PredicateUtils.notNull())
+                                                                  .distinct()
+                                                                  .collect(Collectors.toList());
+                        Function<Stream<String>, Map<String, VariantInfo>> reader = ids -> ids.map(variantId -> BiElement.of(variantId,
+                                                                                                                             cache.get(this.determineCacheKey(rawSpecies,
+                                                                                                                                                              variantId),
+                                                                                                                                       VariantInfo.class)))
+                                                                                              .filter(BiElement::hasNoNullValue)
+                                                                                              .collect(Collectors.toConcurrentMap(BiElement::getFirst,
+                                                                                                                                  BiElement::getSecond));
+
+                        int parallelism = Math.min(cacheReadParallelism, distinctVariantIds.size());
+                        if (parallelism <= 1)
+                        {
+                            return reader.apply(distinctVariantIds.stream());
+                        }
+
+                        // a dedicated pool keeps the blocking file reads off the common fork join pool
+                        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+                        try
+                        {
+                            return forkJoinPool.submit(() -> reader.apply(distinctVariantIds.parallelStream()))
+                                               .get();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread()
+                                  .interrupt();
+                            throw new IllegalStateException("Interrupted while reading cached variant details", e);
+                        }
+                        catch (ExecutionException e)
+                        {
+                            if (e.getCause() instanceof RuntimeException)
+                            {
+                                throw (RuntimeException) e.getCause();
+                            }
+                            throw new IllegalStateException("Failed to read cached variant details", e.getCause());
+                        }
+                        finally
+                        {
+                            forkJoinPool.shutdown();
+                        }
+                    }
+
                     private String determineCacheKey(Species rawSpecies, String variantId)
                     {
                         return CACHE_KEY_VARIANT_DETAIL + ":" + Optional.ofNullable(rawSpecies)
@@ -15,12 +15,17 @@
  ******************************************************************************/
 package org.omnaest.genomics.ensembl.domain;
 
+import java.util.Optional;
+
 import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.ensembl.internal.EnumDecoder;
 
 public enum ClinicalSignificance
 {
     RISK_FACTOR("risk factor", "risk"), BENIGN("benign", "benign"), OTHER("", "");
 
+    private static final EnumDecoder<ClinicalSignificance> DECODER = EnumDecoder.of(ClinicalSignificance.class, ClinicalSignificance::getMatchStr);
+
     private String matchStr;
     private String label;
 
@@ -45,4 +50,34 @@ public enum ClinicalSignificance
         return matchStr;
     }
 
+    public static Optional<ClinicalSignificance> of(String matchStr)
+    {
+        return Optional.ofNullable(decode(matchStr));
+    }
+
+    /**
+     * Returns the {@link ClinicalSignificance} matching the given raw input ignoring the case, or null if there is none. Does not allocate any
+     * object.
+     * 
+     * @param input
+     * @return
+     */
+    public static ClinicalSignificance decode(CharSequence input)
+    {
+        return DECODER.decode(input);
+    }
+
+    /**
+     * Similar to {@link #decode(CharSequence)} but only considers the characters from start (inclusive) to end (exclusive) of the input
+     * 
+     * @param input
+     * @param start
+     * @param end
+     * @return
+     */
+    public static ClinicalSignificance decode(CharSequence input, int start, int end)
+    {
+        return DECODER.decode(input, start, end);
+    }
+
 }
@@ -15,10 +15,10 @@
  ******************************************************************************/
 package org.omnaest.genomics.ensembl.domain;
 
-import java.util.Arrays;
 import java.util.Optional;
 
 import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.ensembl.internal.EnumDecoder;
 
 /**
  * <a href="https://m.ensembl.org/info/genome/variation/prediction/predicted_data.html">Ensembl documentation</a>
@@ -49,6 +49,8 @@ public enum VariantConsequence
     SYNONYMOUS("synonymous_variant", VariantSeverity.NONE),
     UNKNOWN("", VariantSeverity.LOW);
 
+    private static final EnumDecoder<VariantConsequence> DECODER = EnumDecoder.of(VariantConsequence.class, VariantConsequence::getMatchStr);
+
     private String          matchStr;
     private VariantSeverity severity;
 
@@ -81,9 +83,31 @@ public enum VariantConsequence
 
     public static Optional<VariantConsequence> of(String matchStr)
     {
-        return Arrays.asList(values())
-                     .stream()
-                     .filter(consequence -> consequence.matches(matchStr))
-                     .findFirst();
+        return Optional.ofNullable(decode(matchStr));
+    }
+
+    /**
+     * Returns the {@link VariantConsequence} matching the given raw input ignoring the case, or null if there is none. Does not allocate any
+     * object.
+     * 
+     * @param input
+     * @return
+     */
+    public static VariantConsequence decode(CharSequence input)
+    {
+        return DECODER.decode(input);
+    }
+
+    /**
+     * Similar to {@link #decode(CharSequence)} but only considers the characters from start (inclusive) to end (exclusive) of the input
+     * 
+     * @param input
+     * @param start
+     * @param end
+     * @return
+     */
+    public static VariantConsequence decode(CharSequence input, int start, int end)
+    {
+        return DECODER.decode(input, start, end);
     }
 }
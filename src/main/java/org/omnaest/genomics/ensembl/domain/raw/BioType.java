@@ -33,7 +33,29 @@
 */
 package org.omnaest.genomics.ensembl.domain.raw;
 
+import java.util.Optional;
+
+import org.omnaest.genomics.ensembl.internal.EnumDecoder;
+
 public enum BioType
 {
-	PROCESSED_TRANSCRIPT, RETAINED_INTRON, PROTEIN_CODING, NONSENSE_MEDIATED_DECAY
+	PROCESSED_TRANSCRIPT, RETAINED_INTRON, PROTEIN_CODING, NONSENSE_MEDIATED_DECAY;
+
+	private static final EnumDecoder<BioType> DECODER = EnumDecoder.of(BioType.class, BioType::name);
+
+	public static Optional<BioType> of(String bioType)
+	{
+		return Optional.ofNullable(decode(bioType));
+	}
+
+	/**
+	 * Returns the {@link BioType} matching the given raw biotype like 'protein_coding' ignoring the case, or null if there is none
+	 * 
+	 * @param input
+	 * @return
+	 */
+	public static BioType decode(CharSequence input)
+	{
+		return DECODER.decode(input);
+	}
 }
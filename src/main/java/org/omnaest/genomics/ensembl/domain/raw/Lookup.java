@@ -273,8 +273,7 @@ public class Lookup
 
 	public boolean hasBiotype(BioType bioType)
 	{
-		return bioType	.name()
-						.equalsIgnoreCase(this.bioType);
+		return bioType != null && bioType == BioType.decode(this.bioType);
 	}
 
 	@Override
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.domain.raw;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class SequenceBatchRequest
+{
+    @JsonProperty
+    private List<String> ids;
+
+    @JsonProperty
+    private String type;
+
+    @JsonProperty("multiple_sequences")
+    private int multipleSequences;
+
+    public SequenceBatchRequest(List<String> ids, String type, boolean multipleSequences)
+    {
+        super();
+        this.ids = ids;
+        this.type = type;
+        this.multipleSequences = multipleSequences ? 1 : 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SequenceBatchRequest [ids=" + this.ids + ", type=" + this.type + ", multipleSequences=" + this.multipleSequences + "]";
+    }
+
+}
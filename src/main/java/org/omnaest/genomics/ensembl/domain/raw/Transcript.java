@@ -268,8 +268,7 @@ public class Transcript
 
 	public boolean hasBiotype(BioType bioType)
 	{
-		return bioType	.name()
-						.equalsIgnoreCase(this.biotype);
+		return bioType != null && bioType == BioType.decode(this.biotype);
 	}
 
 	public void setBiotype(String biotype)
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.ftp;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * {@link InputStream} over a local BGZF file, which is a concatenation of independent gzip members of at most 64 KiB each, as used by the
+ * ensembl variation vcf files. Supports random access using the virtual file offsets of a tabix index, whereby the upper 48 bits are the file
+ * offset of a block and the lower 16 bits are the offset within the uncompressed block.
+ * 
+ * @see #seek(long)
+ * @see #getVirtualOffset()
+ * @author omnaest
+ */
+class BGZFInputStream extends InputStream
+{
+    static final int MAXIMUM_BLOCK_SIZE = 64 * 1024;
+
+    private static final int BLOCK_HEADER_SIZE  = 18;
+    private static final int BLOCK_TRAILER_SIZE = 8;
+
+    private final FileChannel channel;
+    private final Inflater    inflater        = new Inflater(true);
+    private final byte[]      compressedBlock = new byte[MAXIMUM_BLOCK_SIZE];
+    private final byte[]      block           = new byte[MAXIMUM_BLOCK_SIZE];
+
+    private long blockAddress     = 0;
+    private long nextBlockAddress = 0;
+    private int  blockLength      = 0;
+    private int  blockPosition    = 0;
+
+    private byte[] lineBuffer = new byte[1024];
+
+    private BGZFInputStream(FileChannel channel)
+    {
+        super();
+        this.channel = channel;
+    }
+
+    public static BGZFInputStream open(File file) throws IOException
+    {
+        return new BGZFInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    /**
+     * Moves the stream to the given virtual file offset
+     * 
+     * @param virtualOffset
+     * @throws IOException
+     */
+    public void seek(long virtualOffset) throws IOException
+    {
+        long address = virtualOffset >>> 16;
+        int offsetInBlock = (int) (virtualOffset & 0xFFFF);
+
+        if (address != this.blockAddress || this.blockLength == 0)
+        {
+            this.nextBlockAddress = address;
+            this.blockLength = 0;
+            this.loadNextBlock();
+        }
+        if (offsetInBlock > this.blockLength)
+        {
+            throw new IOException("Invalid virtual file offset " + virtualOffset);
+        }
+        this.blockPosition = offsetInBlock;
+    }
+
+    /**
+     * Returns the virtual file offset of the next byte to be read
+     * 
+     * @return
+     * @throws IOException
+     */
+    public long getVirtualOffset() throws IOException
+    {
+        this.ensureData();
+        return (this.blockAddress << 16) | this.blockPosition;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        return this.ensureData() ? this.block[this.blockPosition++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+        if (!this.ensureData())
+        {
+            return -1;
+        }
+        int numberOfBytes = Math.min(length, this.blockLength - this.blockPosition);
+        System.arraycopy(this.block, this.blockPosition, buffer, offset, numberOfBytes);
+        this.blockPosition += numberOfBytes;
+        return numberOfBytes;
+    }
+
+    /**
+     * Reads the next line without the line terminator or returns null at the end of the file
+     * 
+     * @return
+     * @throws IOException
+     */
+    public String readLine() throws IOException
+    {
+        int length = 0;
+        boolean hasData = false;
+        while (this.ensureData())
+        {
+            hasData = true;
+            int start = this.blockPosition;
+            int end = start;
+            while (end < this.blockLength && this.block[end] != '\n')
+            {
+                end++;
+            }
+
+            int numberOfBytes = end - start;
+            if (length + numberOfBytes > this.lineBuffer.length)
+            {
+                this.lineBuffer = Arrays.copyOf(this.lineBuffer, Math.max(this.lineBuffer.length * 2, length + numberOfBytes));
+            }
+            System.arraycopy(this.block, start, this.lineBuffer, length, numberOfBytes);
+            length += numberOfBytes;
+
+            if (end < this.blockLength)
+            {
+                this.blockPosition = end + 1;
+                return this.toLine(length);
+            }
+            this.blockPosition = end;
+        }
+        return hasData ? this.toLine(length) : null;
+    }
+
+    private String toLine(int length)
+    {
+        int effectiveLength = length > 0 && this.lineBuffer[length - 1] == '\r' ? length - 1 : length;
+        return new String(this.lineBuffer, 0, effectiveLength, StandardCharsets.UTF_8);
+    }
+
+    private boolean ensureData() throws IOException
+    {
+        while (this.blockPosition >= this.blockLength)
+        {
+            if (!this.loadNextBlock())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean loadNextBlock() throws IOException
+    {
+        long address = this.nextBlockAddress;
+        if (address >= this.channel.size())
+        {
+            return false;
+        }
+
+        this.readFully(address, this.compressedBlock, BLOCK_HEADER_SIZE);
+        int blockSize = readBlockSize(this.compressedBlock, 0);
+        this.readFully(address, this.compressedBlock, blockSize);
+
+        this.blockLength = inflateBlock(this.inflater, this.compressedBlock, 0, blockSize, this.block);
+        this.blockPosition = 0;
+        this.blockAddress = address;
+        this.nextBlockAddress = address + blockSize;
+        return true;
+    }
+
+    private void readFully(long address, byte[] buffer, int length) throws IOException
+    {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        long position = address;
+        while (byteBuffer.hasRemaining())
+        {
+            int numberOfBytes = this.channel.read(byteBuffer, position);
+            if (numberOfBytes < 0)
+            {
+                throw new EOFException("Unexpected end of BGZF file at " + position);
+            }
+            position += numberOfBytes;
+        }
+    }
+
+    /**
+     * Returns the total size of the BGZF block starting at the given offset, based on the BSIZE field of its gzip header
+     * 
+     * @param data
+     * @param offset
+     * @return
+     * @throws IOException
+     */
+    static int readBlockSize(byte[] data, int offset) throws IOException
+    {
+        if ((data[offset] & 0xFF) != 31 || (data[offset + 1] & 0xFF) != 139 || (data[offset + 3] & 0x04) == 0)
+        {
+            throw new IOException("Invalid BGZF block header");
+        }
+
+        int extraLength = readUnsignedShort(data, offset + 10);
+        int position = offset + 12;
+        int extraEnd = position + extraLength;
+        while (position + 4 <= extraEnd)
+        {
+            int subfieldLength = readUnsignedShort(data, position + 2);
+            if (data[position] == 'B' && data[position + 1] == 'C' && subfieldLength == 2)
+            {
+                return readUnsignedShort(data, position + 4) + 1;
+            }
+            position += 4 + subfieldLength;
+        }
+        throw new IOException("Missing BGZF block size in gzip header");
+    }
+
+    /**
+     * Inflates a complete BGZF block into the given target and returns the number of uncompressed bytes
+     * 
+     * @param inflater
+     * @param data
+     * @param offset
+     * @param blockSize
+     * @param target
+     * @return
+     * @throws IOException
+     */
+    static int inflateBlock(Inflater inflater, byte[] data, int offset, int blockSize, byte[] target) throws IOException
+    {
+        int extraLength = readUnsignedShort(data, offset + 10);
+        int compressedDataOffset = offset + 12 + extraLength;
+        int compressedDataLength = blockSize - 12 - extraLength - BLOCK_TRAILER_SIZE;
+        int uncompressedSize = readInt(data, offset + blockSize - 4);
+        if (compressedDataLength < 0 || uncompressedSize < 0 || uncompressedSize > target.length)
+        {
+            throw new IOException("Invalid BGZF block");
+        }
+
+        try
+        {
+            inflater.reset();
+            inflater.setInput(data, compressedDataOffset, compressedDataLength);
+            int length = 0;
+            while (length < uncompressedSize)
+            {
+                int numberOfBytes = inflater.inflate(target, length, uncompressedSize - length);
+                if (numberOfBytes == 0 && (inflater.finished() || inflater.needsInput()))
+                {
+                    break;
+                }
+                length += numberOfBytes;
+            }
+            if (length != uncompressedSize)
+            {
+                throw new IOException("Corrupt BGZF block, expected " + uncompressedSize + " bytes but inflated " + length);
+            }
+            return length;
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException("Corrupt BGZF block", e);
+        }
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset)
+    {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int readInt(byte[] data, int offset)
+    {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 24);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.inflater.end();
+        this.channel.close();
+    }
+}
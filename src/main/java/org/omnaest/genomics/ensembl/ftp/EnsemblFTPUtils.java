@@ -15,13 +15,27 @@
  ******************************************************************************/
 package org.omnaest.genomics.ensembl.ftp;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import org.apache.commons.lang3.StringUtils;
+
 import org.omnaest.genomics.vcf.VCFUtils;
 import org.omnaest.genomics.vcf.domain.VCFRecord;
 import org.omnaest.utils.CacheUtils;
@@ -29,7 +43,6 @@ import org.omnaest.utils.cache.Cache;
 import org.omnaest.utils.element.cached.CachedElement;
 import org.omnaest.utils.ftp.FTPUtils;
 import org.omnaest.utils.ftp.FTPUtils.FileType;
-import org.omnaest.utils.zip.ZipUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,12 +50,41 @@ public class EnsemblFTPUtils
 {
     private static final Logger LOG = LoggerFactory.getLogger(EnsemblFTPUtils.class);
 
+    private static final String FTP_HOST         = "ftp.ensembl.org";
+    private static final int    READ_BUFFER_SIZE = 1024 * 1024;
+
     public static interface EnsemblFTPLoader
     {
         public EnsemblFTPLoader withCache(Cache cache);
 
         public EnsemblFTPLoader withLocalDirectoryCache();
 
+        /**
+         * Similar to {@link #withLocalFileStorage(File)} using the 'ensembl/ftp/files' cache folder
+         * 
+         * @return
+         */
+        public EnsemblFTPLoader withLocalFileStorage();
+
+        /**
+         * Streams the downloaded files directly into the given directory and reads the parsed records through a buffered gunzip
+         * {@link InputStream} from there, instead of holding the whole file content in memory. Files already present in the directory are not
+         * downloaded again.
+         * 
+         * @param directory
+         * @return
+         */
+        public EnsemblFTPLoader withLocalFileStorage(File directory);
+
+        /**
+         * Defines the number of threads which inflate the blocks of the BGZF compressed vcf files in parallel, while the records are still
+         * parsed in their original order. A value of 1 inflates the files on the reading thread. Default is the number of available processors.
+         * 
+         * @param numberOfDecompressionThreads
+         * @return
+         */
+        public EnsemblFTPLoader withNumberOfDecompressionThreads(int numberOfDecompressionThreads);
+
         public EnsembleVariationVCFLoader variationVCFFiles();
     }
 
@@ -66,10 +108,52 @@ public class EnsemblFTPUtils
         public EnsembleVariationVCFLoaderWithVersionAndHomoSapiensSpecies forSpecies(String species);
     }
 
+    /**
+     * Order of the records read from multiple files in parallel
+     * 
+     * @see EnsembleVariationVCFLoaderWithVersionAndHomoSapiensSpecies#forChromosomeRecordsInParallel(int, RecordOrder)
+     * @author omnaest
+     */
+    public static enum RecordOrder
+    {
+        /**
+         * The records are returned file by file in the order of the files, while the following files are prefetched
+         */
+        ORDERED,
+
+        /**
+         * The records of all files are returned as soon as they are parsed
+         */
+        UNORDERED
+    }
+
     public static interface EnsembleVariationVCFLoaderWithVersionAndHomoSapiensSpecies
     {
         public Stream<VariationChromosomeVCFResource> forChromosomes();
 
+        /**
+         * Returns the records of all {@link #forChromosomes()} files, whereby the given number of workers download and parse the chromosome files
+         * concurrently. Each worker holds only a small buffer of parsed records, but in the default in memory mode every worker holds the
+         * compressed data of its current file, so {@link EnsemblFTPLoader#withLocalFileStorage()} is recommended.
+         * 
+         * @param numberOfWorkers
+         * @param recordOrder
+         * @return
+         */
+        public Stream<VCFRecord> forChromosomeRecordsInParallel(int numberOfWorkers, RecordOrder recordOrder);
+
+        /**
+         * Similar to {@link #forChromosomeRecordsInParallel(int, RecordOrder)} but reads the records of each chromosome file with the given
+         * function, e.g. to parse and map them in parallel using {@link VCFResourceAccessor#getRecords(Function, int)}
+         * 
+         * @param numberOfWorkers
+         * @param recordOrder
+         * @param recordsFunction
+         * @return
+         */
+        public <R> Stream<R> forChromosomeRecordsInParallel(int numberOfWorkers, RecordOrder recordOrder,
+                                                            Function<VCFResourceAccessor, Stream<R>> recordsFunction);
+
         public VariationVCFResource forClinicallyAssociated();
 
         public VariationVCFResource forPhenotypeAssociated();
@@ -79,6 +163,14 @@ public class EnsemblFTPUtils
     {
         public String getFileName();
 
+        /**
+         * Returns a fingerprint of the file content consisting of the file name, size and last modification time, if the file is stored locally,
+         * see {@link EnsemblFTPLoader#withLocalFileStorage()}. Files which are not stored locally, or not yet downloaded, have no fingerprint.
+         * 
+         * @return
+         */
+        public Optional<String> getFingerprint();
+
         public byte[] getData();
 
         public VCFResourceAccessor asParsedVCF();
@@ -100,13 +192,51 @@ public class EnsemblFTPUtils
     public static interface VCFResourceAccessor
     {
         public Stream<VCFRecord> getRecords();
+
+        /**
+         * Returns the {@link VCFRecord}s which overlap the given region. If the file is stored locally, see
+         * {@link EnsemblFTPLoader#withLocalFileStorage()}, the tabix index of the file is downloaded and only the BGZF blocks containing the
+         * region are read, otherwise the records are filtered by a linear scan.
+         * 
+         * @param chromosome
+         *            e.g. "1", "X" or "chr1"
+         * @param start
+         *            1-based inclusive
+         * @param end
+         *            1-based inclusive
+         * @return
+         */
+        public Stream<VCFRecord> getRecords(String chromosome, long start, long end);
+
+        /**
+         * Returns the {@link VCFRecord}s mapped by the given mapper function in the order of the file. The raw lines are split into chunks by a
+         * reader thread and parsed and mapped by the given number of workers. Null results of the mapper are dropped.
+         * 
+         * @param mapper
+         * @param numberOfParsingWorkers
+         * @return
+         */
+        public <R> Stream<R> getRecords(Function<VCFRecord, R> mapper, int numberOfParsingWorkers);
+
+        /**
+         * Similar to {@link #getRecords(Function, int)} but maps the raw data lines without parsing them into {@link VCFRecord}s. The header
+         * lines are skipped.
+         * 
+         * @param lineMapper
+         * @param numberOfParsingWorkers
+         * @return
+         */
+        public <R> Stream<R> getLines(Function<String, R> lineMapper, int numberOfParsingWorkers);
     }
 
     public static EnsemblFTPLoader load()
     {
         return new EnsemblFTPLoader()
         {
-            private Cache cache = CacheUtils.newNoOperationCache();
+            private Cache cache                        = CacheUtils.newNoOperationCache();
+            private File  fileStorageDirectory         = null;
+            private int   numberOfDecompressionThreads = Runtime.getRuntime()
+                                                                .availableProcessors();
 
             @Override
             public EnsemblFTPLoader withCache(Cache cache)
@@ -123,6 +253,26 @@ public class EnsemblFTPUtils
                                                 .withNativeStringStorage(true));
             }
 
+            @Override
+            public EnsemblFTPLoader withLocalFileStorage()
+            {
+                return this.withLocalFileStorage(CacheUtils.createCacheFolder("ensembl/ftp/files"));
+            }
+
+            @Override
+            public EnsemblFTPLoader withLocalFileStorage(File directory)
+            {
+                this.fileStorageDirectory = directory;
+                return this;
+            }
+
+            @Override
+            public EnsemblFTPLoader withNumberOfDecompressionThreads(int numberOfDecompressionThreads)
+            {
+                this.numberOfDecompressionThreads = Math.max(1, numberOfDecompressionThreads);
+                return this;
+            }
+
             @Override
             public EnsembleVariationVCFLoader variationVCFFiles()
             {
@@ -202,6 +352,12 @@ public class EnsemblFTPUtils
                                                 return fileName;
                                             }
 
+                                            @Override
+                                            public Optional<String> getFingerprint()
+                                            {
+                                                return determineFingerprint(fileName);
+                                            }
+
                                             @Override
                                             public byte[] getData()
                                             {
@@ -218,13 +374,38 @@ public class EnsemblFTPUtils
                                             @Override
                                             public VCFResourceAccessor asParsedVCF()
                                             {
-                                                return gzipResourceAsParsedVCF(fileName, this.getData());
+                                                return createParsedVCFAccessor(fileName, this::getData);
                                             }
                                         };
                                     }
 
+                                    private VCFResourceAccessor createParsedVCFAccessor(String fileName, Supplier<byte[]> dataSupplier)
+                                    {
+                                        if (fileStorageDirectory != null)
+                                        {
+                                            return this.fileResourceAsParsedVCF(fileName, this.loadFileFromFtpToDisk(fileName));
+                                        }
+                                        else
+                                        {
+                                            return this.gzipResourceAsParsedVCF(fileName, dataSupplier.get());
+                                        }
+                                    }
+
                                     private byte[] loadFileFromFtp(String fileName)
                                     {
+                                        if (fileStorageDirectory != null)
+                                        {
+                                            File file = this.loadFileFromFtpToDisk(fileName);
+                                            try
+                                            {
+                                                return Files.readAllBytes(file.toPath());
+                                            }
+                                            catch (IOException e)
+                                            {
+                                                throw new IllegalStateException("Unable to read file: " + file, e);
+                                            }
+                                        }
+
                                         LOG.info("Loading file: " + fileName);
                                         return cache.computeIfAbsent(fileName, () ->
                                         {
@@ -232,35 +413,259 @@ public class EnsemblFTPUtils
                                             return FTPUtils.load()
                                                            .withAnonymousCredentials()
                                                            .withFileType(FileType.BINARY)
-                                                           .from("ftp.ensembl.org", fileName)
+                                                           .from(FTP_HOST, fileName)
                                                            .orElseThrow(() -> new IllegalStateException("Unable to download file from ensembl ftp: "
                                                                    + fileName))
                                                            .asByteArray();
                                         }, byte[].class);
                                     }
 
-                                    private VCFResourceAccessor gzipResourceAsParsedVCF(String fileName, byte[] data)
+                                    private Optional<String> determineFingerprint(String fileName)
                                     {
+                                        if (fileStorageDirectory != null)
+                                        {
+                                            File file = new File(fileStorageDirectory, StringUtils.removeStart(fileName, "/"));
+                                            if (file.isFile())
+                                            {
+                                                return Optional.of(fileName + ":" + file.length() + ":" + file.lastModified());
+                                            }
+                                        }
+                                        return Optional.empty();
+                                    }
+
+                                    private File loadFileFromFtpToDisk(String fileName)
+                                    {
+                                        File file = new File(fileStorageDirectory, StringUtils.removeStart(fileName, "/"));
+                                        if (file.isFile())
+                                        {
+                                            return file;
+                                        }
+
+                                        LOG.info("Downloading file from ensembl ftp: " + fileName + " to " + file);
+                                        Path temporaryFile = null;
                                         try
                                         {
-                                            Stream<VCFRecord> records = VCFUtils.read()
-                                                                                .from(ZipUtils.read()
-                                                                                              .fromGzip(data)
-                                                                                              .asInputStream())
-                                                                                .parseOnce();
-                                            return new VCFResourceAccessor()
+                                            File directory = file.getParentFile();
+                                            directory.mkdirs();
+                                            temporaryFile = Files.createTempFile(directory.toPath(), file.getName(), ".part");
+                                            try (InputStream inputStream = new URL("ftp://" + FTP_HOST + fileName).openStream())
                                             {
-                                                @Override
-                                                public Stream<VCFRecord> getRecords()
-                                                {
-                                                    return records;
-                                                }
-                                            };
+                                                Files.copy(inputStream, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+                                            }
+                                            Files.move(temporaryFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                                            return file;
                                         }
                                         catch (IOException e)
                                         {
-                                            throw new IllegalStateException("Unable to unzip file: " + fileName, e);
+                                            if (temporaryFile != null)
+                                            {
+                                                temporaryFile.toFile()
+                                                             .delete();
+                                            }
+                                            throw new IllegalStateException("Unable to download file from ensembl ftp: " + fileName, e);
+                                        }
+                                    }
+
+                                    private Optional<TabixIndex> loadIndex(String fileName)
+                                    {
+                                        for (String indexFileSuffix : Arrays.asList(".tbi", ".csi"))
+                                        {
+                                            try
+                                            {
+                                                return Optional.of(TabixIndex.read(this.loadFileFromFtpToDisk(fileName + indexFileSuffix)));
+                                            }
+                                            catch (IllegalStateException | IOException e)
+                                            {
+                                                LOG.debug("Unable to load index: " + fileName + indexFileSuffix, e);
+                                            }
                                         }
+                                        LOG.info("No index available for " + fileName + ", falling back to a linear scan");
+                                        return Optional.empty();
+                                    }
+
+                                    private VCFResourceAccessor fileResourceAsParsedVCF(String fileName, File file)
+                                    {
+                                        CachedElement<Optional<TabixIndex>> index = CachedElement.of(() -> this.loadIndex(fileName));
+                                        return new VCFResourceAccessor()
+                                        {
+                                            @Override
+                                            public Stream<VCFRecord> getRecords(String chromosome, long start, long end)
+                                            {
+                                                try
+                                                {
+                                                    Optional<TabixIndex> tabixIndex = index.get()
+                                                                                           .filter(TabixIndex::hasSequenceNames);
+                                                    if (tabixIndex.isPresent())
+                                                    {
+                                                        return VCFRegionReader.read(file, tabixIndex.get(), chromosome, start, end);
+                                                    }
+                                                    else
+                                                    {
+                                                        return VCFRegionReader.read(this.openFile(), chromosome, start, end);
+                                                    }
+                                                }
+                                                catch (IOException e)
+                                                {
+                                                    throw new IllegalStateException("Unable to read region from file: " + file, e);
+                                                }
+                                            }
+
+                                            @Override
+                                            public <R> Stream<R> getRecords(Function<VCFRecord, R> mapper, int numberOfParsingWorkers)
+                                            {
+                                                try
+                                                {
+                                                    return VCFParsingPipeline.parse(this.openFile(), mapper, numberOfParsingWorkers);
+                                                }
+                                                catch (IOException e)
+                                                {
+                                                    throw new IllegalStateException("Unable to read file: " + file, e);
+                                                }
+                                            }
+
+                                            @Override
+                                            public <R> Stream<R> getLines(Function<String, R> lineMapper, int numberOfParsingWorkers)
+                                            {
+                                                try
+                                                {
+                                                    return VCFParsingPipeline.mapLines(this.openFile(), lineMapper, numberOfParsingWorkers);
+                                                }
+                                                catch (IOException e)
+                                                {
+                                                    throw new IllegalStateException("Unable to read file: " + file, e);
+                                                }
+                                            }
+
+                                            @Override
+                                            public Stream<VCFRecord> getRecords()
+                                            {
+                                                try
+                                                {
+                                                    InputStream inputStream = this.openFile();
+                                                    return VCFUtils.read()
+                                                                   .from(inputStream)
+                                                                   .parseOnce()
+                                                                   .onClose(() ->
+                                                                   {
+                                                                       try
+                                                                       {
+                                                                           inputStream.close();
+                                                                       }
+                                                                       catch (IOException e)
+                                                                       {
+                                                                           LOG.warn("Unable to close file: " + file, e);
+                                                                       }
+                                                                   });
+                                                }
+                                                catch (IOException e)
+                                                {
+                                                    throw new IllegalStateException("Unable to read file: " + file, e);
+                                                }
+                                            }
+
+                                            private InputStream openFile() throws IOException
+                                            {
+                                                return openGzipInputStream(new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE));
+                                            }
+                                        };
+                                    }
+
+                                    private InputStream openGzipInputStream(InputStream inputStream) throws IOException
+                                    {
+                                        return ParallelBGZFInputStream.open(inputStream, numberOfDecompressionThreads);
+                                    }
+
+                                    private VCFResourceAccessor gzipResourceAsParsedVCF(String fileName, byte[] data)
+                                    {
+                                        return new VCFResourceAccessor()
+                                        {
+                                            @Override
+                                            public Stream<VCFRecord> getRecords()
+                                            {
+                                                try
+                                                {
+                                                    InputStream inputStream = this.openData();
+                                                    return VCFUtils.read()
+                                                                   .from(inputStream)
+                                                                   .parseOnce()
+                                                                   .onClose(() ->
+                                                                   {
+                                                                       try
+                                                                       {
+                                                                           inputStream.close();
+                                                                       }
+                                                                       catch (IOException e)
+                                                                       {
+                                                                           LOG.warn("Unable to close file: " + fileName, e);
+                                                                       }
+                                                                   });
+                                                }
+                                                catch (IOException e)
+                                                {
+                                                    throw new IllegalStateException("Unable to unzip file: " + fileName, e);
+                                                }
+                                            }
+
+                                            @Override
+                                            public Stream<VCFRecord> getRecords(String chromosome, long start, long end)
+                                            {
+                                                try
+                                                {
+                                                    return VCFRegionReader.read(this.openData(), chromosome, start, end);
+                                                }
+                                                catch (IOException e)
+                                                {
+                                                    throw new IllegalStateException("Unable to unzip file: " + fileName, e);
+                                                }
+                                            }
+
+                                            @Override
+                                            public <R> Stream<R> getRecords(Function<VCFRecord, R> mapper, int numberOfParsingWorkers)
+                                            {
+                                                try
+                                                {
+                                                    return VCFParsingPipeline.parse(this.openData(), mapper, numberOfParsingWorkers);
+                                                }
+                                                catch (IOException e)
+                                                {
+                                                    throw new IllegalStateException("Unable to unzip file: " + fileName, e);
+                                                }
+                                            }
+
+                                            @Override
+                                            public <R> Stream<R> getLines(Function<String, R> lineMapper, int numberOfParsingWorkers)
+                                            {
+                                                try
+                                                {
+                                                    return VCFParsingPipeline.mapLines(this.openData(), lineMapper, numberOfParsingWorkers);
+                                                }
+                                                catch (IOException e)
+                                                {
+                                                    throw new IllegalStateException("Unable to unzip file: " + fileName, e);
+                                                }
+                                            }
+
+                                            private InputStream openData() throws IOException
+                                            {
+                                                return openGzipInputStream(new ByteArrayInputStream(data));
+                                            }
+                                        };
+                                    }
+
+                                    @Override
+                                    public Stream<VCFRecord> forChromosomeRecordsInParallel(int numberOfWorkers, RecordOrder recordOrder)
+                                    {
+                                        return this.forChromosomeRecordsInParallel(numberOfWorkers, recordOrder, accessor -> accessor.getRecords());
+                                    }
+
+                                    @Override
+                                    public <R> Stream<R> forChromosomeRecordsInParallel(int numberOfWorkers, RecordOrder recordOrder,
+                                                                                        Function<VCFResourceAccessor, Stream<R>> recordsFunction)
+                                    {
+                                        List<Supplier<Stream<R>>> recordsSuppliers = this.forChromosomes()
+                                                                                         .map(resource -> (Supplier<Stream<R>>) () -> recordsFunction.apply(resource.asParsedVCF()))
+                                                                                         .collect(Collectors.toList());
+                                        return ParallelStreamReader.read(recordsSuppliers, numberOfWorkers, RecordOrder.ORDERED.equals(recordOrder));
                                     }
 
                                     @Override
@@ -289,6 +694,12 @@ public class EnsemblFTPUtils
                                                                           return fileName;
                                                                       }
 
+                                                                      @Override
+                                                                      public Optional<String> getFingerprint()
+                                                                      {
+                                                                          return determineFingerprint(fileName);
+                                                                      }
+
                                                                       @Override
                                                                       public byte[] getData()
                                                                       {
@@ -311,7 +722,7 @@ public class EnsemblFTPUtils
                                                                       @Override
                                                                       public VCFResourceAccessor asParsedVCF()
                                                                       {
-                                                                          return gzipResourceAsParsedVCF(fileName, this.getData());
+                                                                          return createParsedVCFAccessor(fileName, this::getData);
                                                                       }
 
                                                                       @Override
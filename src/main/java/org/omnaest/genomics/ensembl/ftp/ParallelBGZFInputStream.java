@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.ftp;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * {@link InputStream} which inflates the blocks of a BGZF stream on a pool of workers. The compressed blocks are read sequentially by the
+ * consuming thread and a bounded number of blocks is inflated ahead of it, whereby the uncompressed content is always returned in the original
+ * block order.
+ * 
+ * @see #open(InputStream, int)
+ * @author omnaest
+ */
+class ParallelBGZFInputStream extends InputStream
+{
+    private static final int BLOCK_PREFIX_SIZE         = 12;
+    private static final int BLOCK_TRAILER_SIZE        = 8;
+    private static final int READ_BUFFER_SIZE          = 256 * 1024;
+    private static final int BLOCKS_AHEAD_PER_WORKER   = 4;
+    private static final int THREAD_SHUTDOWN_TIMEOUT   = 10;
+    private static final int WORKER_KEEP_ALIVE_SECONDS = 5;
+
+    private final InputStream           source;
+    private final ExecutorService       executorService;
+    private final int                   maximumNumberOfPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private final Queue<Inflater>       inflaters     = new ConcurrentLinkedQueue<>();
+
+    private byte[]  block          = new byte[0];
+    private int     blockPosition  = 0;
+    private boolean sourceConsumed = false;
+    private boolean closed         = false;
+
+    private ParallelBGZFInputStream(InputStream source, int numberOfWorkers)
+    {
+        super();
+        this.source = source;
+        this.maximumNumberOfPendingBlocks = numberOfWorkers * BLOCKS_AHEAD_PER_WORKER;
+
+        // idle workers terminate on their own, as parsed record streams are often not closed by their consumers
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executorService = new ThreadPoolExecutor(numberOfWorkers, numberOfWorkers, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                                                     new LinkedBlockingQueue<>(), runnable ->
+                                                                     {
+                                                                         Thread thread = new Thread(runnable, "ensembl-bgzf-inflater-"
+                                                                                 + threadCounter.incrementAndGet());
+                                                                         thread.setDaemon(true);
+                                                                         return thread;
+                                                                     });
+        executorService.allowCoreThreadTimeOut(true);
+        this.executorService = executorService;
+    }
+
+    /**
+     * Returns an {@link InputStream} of the uncompressed content of the given gzip {@link InputStream}. If the content is BGZF compressed and
+     * more than one worker is requested, the blocks are inflated in parallel, otherwise a single threaded {@link GZIPInputStream} is used.
+     * 
+     * @param inputStream
+     * @param numberOfWorkers
+     * @return
+     * @throws IOException
+     */
+    public static InputStream open(InputStream inputStream, int numberOfWorkers) throws IOException
+    {
+        InputStream markableInputStream = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream, READ_BUFFER_SIZE);
+        if (numberOfWorkers > 1 && isBGZF(markableInputStream))
+        {
+            return new ParallelBGZFInputStream(markableInputStream, numberOfWorkers);
+        }
+        else
+        {
+            return new GZIPInputStream(markableInputStream, READ_BUFFER_SIZE);
+        }
+    }
+
+    private static boolean isBGZF(InputStream inputStream) throws IOException
+    {
+        inputStream.mark(2 * BGZFInputStream.MAXIMUM_BLOCK_SIZE);
+        try
+        {
+            return readCompressedBlock(inputStream) != null;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        finally
+        {
+            inputStream.reset();
+        }
+    }
+
+    /**
+     * Reads the next complete compressed block including its gzip header and trailer or returns null at the end of the stream
+     * 
+     * @param inputStream
+     * @return
+     * @throws IOException
+     */
+    private static byte[] readCompressedBlock(InputStream inputStream) throws IOException
+    {
+        byte[] prefix = new byte[BLOCK_PREFIX_SIZE];
+        int numberOfBytes = readFully(inputStream, prefix, 0, BLOCK_PREFIX_SIZE);
+        if (numberOfBytes == 0)
+        {
+            return null;
+        }
+        else if (numberOfBytes < BLOCK_PREFIX_SIZE)
+        {
+            throw new EOFException("Unexpected end of BGZF stream");
+        }
+        else if ((prefix[0] & 0xFF) != 31 || (prefix[1] & 0xFF) != 139 || (prefix[3] & 0x04) == 0)
+        {
+            throw new IOException("Invalid BGZF block header");
+        }
+
+        int extraLength = (prefix[10] & 0xFF) | ((prefix[11] & 0xFF) << 8);
+        byte[] header = Arrays.copyOf(prefix, BLOCK_PREFIX_SIZE + extraLength);
+        readCompletely(inputStream, header, BLOCK_PREFIX_SIZE, extraLength);
+
+        int blockSize = BGZFInputStream.readBlockSize(header, 0);
+        if (blockSize < header.length + BLOCK_TRAILER_SIZE)
+        {
+            throw new IOException("Invalid BGZF block size " + blockSize);
+        }
+        byte[] compressedBlock = Arrays.copyOf(header, blockSize);
+        readCompletely(inputStream, compressedBlock, header.length, blockSize - header.length);
+        return compressedBlock;
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer, int offset, int length) throws IOException
+    {
+        int position = 0;
+        while (position < length)
+        {
+            int numberOfBytes = inputStream.read(buffer, offset + position, length - position);
+            if (numberOfBytes < 0)
+            {
+                break;
+            }
+            position += numberOfBytes;
+        }
+        return position;
+    }
+
+    private static void readCompletely(InputStream inputStream, byte[] buffer, int offset, int length) throws IOException
+    {
+        if (readFully(inputStream, buffer, offset, length) < length)
+        {
+            throw new EOFException("Unexpected end of BGZF stream");
+        }
+    }
+
+    private byte[] inflate(byte[] compressedBlock) throws IOException
+    {
+        int blockSize = compressedBlock.length;
+        int uncompressedSize = (compressedBlock[blockSize - 4] & 0xFF) | ((compressedBlock[blockSize - 3] & 0xFF) << 8)
+                | ((compressedBlock[blockSize - 2] & 0xFF) << 16) | ((compressedBlock[blockSize - 1] & 0xFF) << 24);
+        if (uncompressedSize < 0 || uncompressedSize > BGZFInputStream.MAXIMUM_BLOCK_SIZE)
+        {
+            throw new IOException("Invalid uncompressed BGZF block size " + uncompressedSize);
+        }
+
+        Inflater inflater = this.inflaters.poll();
+        if (inflater == null)
+        {
+            inflater = new Inflater(true);
+        }
+        try
+        {
+            byte[] block = new byte[uncompressedSize];
+            BGZFInputStream.inflateBlock(inflater, compressedBlock, 0, blockSize, block);
+
+            CRC32 crc = new CRC32();
+            crc.update(block, 0, block.length);
+            int expectedCrc = (compressedBlock[blockSize - 8] & 0xFF) | ((compressedBlock[blockSize - 7] & 0xFF) << 8)
+                    | ((compressedBlock[blockSize - 6] & 0xFF) << 16) | ((compressedBlock[blockSize - 5] & 0xFF) << 24);
+            if ((int) crc.getValue() != expectedCrc)
+            {
+                throw new IOException("Corrupt BGZF block, crc mismatch");
+            }
+            return block;
+        }
+        finally
+        {
+            this.inflaters.offer(inflater);
+        }
+    }
+
+    private void submitPendingBlocks() throws IOException
+    {
+        while (!this.sourceConsumed && this.pendingBlocks.size() < this.maximumNumberOfPendingBlocks)
+        {
+            byte[] compressedBlock = readCompressedBlock(this.source);
+            if (compressedBlock == null)
+            {
+                this.sourceConsumed = true;
+            }
+            else
+            {
+                this.pendingBlocks.add(this.executorService.submit(() -> this.inflate(compressedBlock)));
+            }
+        }
+    }
+
+    private boolean ensureData() throws IOException
+    {
+        if (this.closed)
+        {
+            throw new IOException("Stream closed");
+        }
+
+        while (this.blockPosition >= this.block.length)
+        {
+            this.submitPendingBlocks();
+            Future<byte[]> pendingBlock = this.pendingBlocks.poll();
+            if (pendingBlock == null)
+            {
+                this.executorService.shutdown();
+                return false;
+            }
+
+            try
+            {
+                this.block = pendingBlock.get();
+                this.blockPosition = 0;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread()
+                      .interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for inflated BGZF block");
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof IOException)
+                {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Unable to inflate BGZF block", e.getCause());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        return this.ensureData() ? this.block[this.blockPosition++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+        if (!this.ensureData())
+        {
+            return -1;
+        }
+        int numberOfBytes = Math.min(length, this.block.length - this.blockPosition);
+        System.arraycopy(this.block, this.blockPosition, buffer, offset, numberOfBytes);
+        this.blockPosition += numberOfBytes;
+        return numberOfBytes;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return this.closed ? 0 : this.block.length - this.blockPosition;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!this.closed)
+        {
+            this.closed = true;
+            this.pendingBlocks.forEach(pendingBlock -> pendingBlock.cancel(true));
+            this.pendingBlocks.clear();
+            this.executorService.shutdownNow();
+            try
+            {
+                this.executorService.awaitTermination(THREAD_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread()
+                      .interrupt();
+            }
+            finally
+            {
+                this.inflaters.forEach(Inflater::end);
+                this.inflaters.clear();
+                this.source.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.ftp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads multiple source {@link Stream}s concurrently with a fixed number of workers. The elements are handed over in chunks through bounded
+ * queues, so a worker pauses if the consumer falls behind.<br>
+ * <br>
+ * In the ordered mode each source has its own queue and the sources are returned one after another, so the workers only prefetch the
+ * following sources. In the unordered mode all workers share a single queue and the elements are returned as soon as they are available.
+ * 
+ * @author omnaest
+ * @param <E>
+ */
+class ParallelStreamReader<E>
+{
+    private static final int CHUNK_SIZE              = 1024;
+    private static final int NUMBER_OF_QUEUED_CHUNKS = 16;
+    private static final int THREAD_SHUTDOWN_TIMEOUT = 10;
+    private static final int WORKER_POLL_INTERVAL_MS = 100;
+
+    private final List<Supplier<Stream<E>>> sources;
+    private final int                       numberOfWorkers;
+    private final boolean                   ordered;
+
+    private final List<BlockingQueue<List<E>>> queues  = new ArrayList<>();
+    private final AtomicReference<Throwable>   failure = new AtomicReference<>();
+    private volatile boolean                   closed  = false;
+    private ExecutorService                    executorService;
+
+    private ParallelStreamReader(List<Supplier<Stream<E>>> sources, int numberOfWorkers, boolean ordered)
+    {
+        super();
+        this.sources = sources;
+        this.numberOfWorkers = Math.max(1, numberOfWorkers);
+        this.ordered = ordered;
+    }
+
+    /**
+     * Returns a {@link Stream} of the elements of all sources, which are read by the given number of workers
+     * 
+     * @param sources
+     * @param numberOfWorkers
+     * @param ordered
+     *            if true the elements are returned in the order of the sources, otherwise in the order they are read
+     * @return
+     */
+    public static <E> Stream<E> read(List<Supplier<Stream<E>>> sources, int numberOfWorkers, boolean ordered)
+    {
+        ParallelStreamReader<E> reader = new ParallelStreamReader<>(sources, numberOfWorkers, ordered);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(reader.start(), ordered ? Spliterator.ORDERED : 0), false)
+                            .onClose(reader::close);
+    }
+
+    private Iterator<E> start()
+    {
+        if (this.sources.isEmpty())
+        {
+            return Collections.emptyIterator();
+        }
+
+        if (this.ordered)
+        {
+            for (int index = 0; index < this.sources.size(); index++)
+            {
+                this.queues.add(new ArrayBlockingQueue<>(NUMBER_OF_QUEUED_CHUNKS));
+            }
+        }
+        else
+        {
+            this.queues.add(new ArrayBlockingQueue<>(NUMBER_OF_QUEUED_CHUNKS * this.numberOfWorkers));
+        }
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(Math.min(this.numberOfWorkers, this.sources.size()), runnable ->
+        {
+            Thread thread = new Thread(runnable, "ensembl-ftp-reader-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int index = 0; index < this.sources.size(); index++)
+        {
+            Supplier<Stream<E>> source = this.sources.get(index);
+            BlockingQueue<List<E>> queue = this.queues.get(this.ordered ? index : 0);
+            this.executorService.submit(() -> this.readSource(source, queue));
+        }
+        this.executorService.shutdown();
+
+        return new Iterator<E>()
+        {
+            private int         queueIndex           = 0;
+            private int         numberOfEndedSources = 0;
+            private Iterator<E> chunk                = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext()
+            {
+                while (!this.chunk.hasNext())
+                {
+                    List<E> nextChunk = this.takeNextChunk();
+                    if (nextChunk == null)
+                    {
+                        return false;
+                    }
+                    this.chunk = nextChunk.iterator();
+                }
+                return true;
+            }
+
+            private List<E> takeNextChunk()
+            {
+                while (this.queueIndex < ParallelStreamReader.this.queues.size())
+                {
+                    List<E> nextChunk = ParallelStreamReader.this.take(ParallelStreamReader.this.queues.get(this.queueIndex));
+                    if (!nextChunk.isEmpty())
+                    {
+                        return nextChunk;
+                    }
+                    else
+                    {
+                        // an empty chunk marks the end of a source, in the unordered mode the shared queue ends with the last source
+                        this.numberOfEndedSources++;
+                        if (ParallelStreamReader.this.ordered || this.numberOfEndedSources >= ParallelStreamReader.this.sources.size())
+                        {
+                            this.queueIndex++;
+                        }
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public E next()
+            {
+                if (!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return this.chunk.next();
+            }
+        };
+    }
+
+    private void readSource(Supplier<Stream<E>> source, BlockingQueue<List<E>> queue)
+    {
+        try
+        {
+            if (!this.closed && this.failure.get() == null)
+            {
+                try (Stream<E> elements = source.get())
+                {
+                    Iterator<E> iterator = elements.iterator();
+                    List<E> chunk = new ArrayList<>(CHUNK_SIZE);
+                    while (iterator.hasNext() && !this.closed)
+                    {
+                        chunk.add(iterator.next());
+                        if (chunk.size() >= CHUNK_SIZE)
+                        {
+                            this.put(queue, chunk);
+                            chunk = new ArrayList<>(CHUNK_SIZE);
+                        }
+                    }
+                    if (!chunk.isEmpty())
+                    {
+                        this.put(queue, chunk);
+                    }
+                }
+            }
+        }
+        catch (Throwable e)
+        {
+            this.failure.compareAndSet(null, e);
+        }
+        finally
+        {
+            this.put(queue, Collections.emptyList());
+        }
+    }
+
+    private void put(BlockingQueue<List<E>> queue, List<E> chunk)
+    {
+        try
+        {
+            while (!this.closed && !queue.offer(chunk, WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS))
+            {
+                // wait for the consumer
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    private List<E> take(BlockingQueue<List<E>> queue)
+    {
+        try
+        {
+            List<E> chunk = queue.take();
+            Throwable throwable = this.failure.get();
+            if (throwable != null)
+            {
+                this.close();
+                if (throwable instanceof RuntimeException)
+                {
+                    throw (RuntimeException) throwable;
+                }
+                throw new IllegalStateException(throwable);
+            }
+            return chunk;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+            this.close();
+            throw new IllegalStateException("Interrupted while waiting for records", e);
+        }
+    }
+
+    private void close()
+    {
+        this.closed = true;
+        if (this.executorService != null)
+        {
+            this.executorService.shutdownNow();
+            try
+            {
+                this.executorService.awaitTermination(THREAD_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread()
+                      .interrupt();
+            }
+        }
+    }
+}
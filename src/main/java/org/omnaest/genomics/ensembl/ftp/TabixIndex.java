@@ -0,0 +1,398 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.ftp;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Index of a BGZF compressed vcf file in the tabix (.tbi) or coordinate sorted index (.csi) format, which resolves a genomic region to the
+ * virtual file offsets of the BGZF blocks containing its records.
+ * 
+ * @see BGZFInputStream
+ * @author omnaest
+ */
+class TabixIndex
+{
+    private static final int TBI_MAGIC = 0x01494254;
+    private static final int CSI_MAGIC = 0x01495343;
+
+    private static final int TBI_MIN_SHIFT = 14;
+    private static final int TBI_DEPTH     = 5;
+
+    private final int                  minShift;
+    private final int                  depth;
+    private final Map<String, Integer> sequenceNameToIndex;
+    private final List<ReferenceIndex> referenceIndexes;
+
+    /**
+     * A range of virtual file offsets, the begin is inclusive and the end exclusive
+     * 
+     * @author omnaest
+     */
+    static class Chunk
+    {
+        private final long begin;
+        private final long end;
+
+        public Chunk(long begin, long end)
+        {
+            super();
+            this.begin = begin;
+            this.end = end;
+        }
+
+        public long getBegin()
+        {
+            return this.begin;
+        }
+
+        public long getEnd()
+        {
+            return this.end;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Chunk [begin=" + this.begin + ", end=" + this.end + "]";
+        }
+
+    }
+
+    private static class ReferenceIndex
+    {
+        private final Map<Integer, List<Chunk>> binToChunks        = new HashMap<>();
+        private final Map<Integer, Long>        binToMinimumOffset = new HashMap<>();
+        private long[]                          linearIndex        = new long[0];
+    }
+
+    private TabixIndex(int minShift, int depth, Map<String, Integer> sequenceNameToIndex, List<ReferenceIndex> referenceIndexes)
+    {
+        super();
+        this.minShift = minShift;
+        this.depth = depth;
+        this.sequenceNameToIndex = sequenceNameToIndex;
+        this.referenceIndexes = referenceIndexes;
+    }
+
+    /**
+     * Reads a .tbi or .csi index file
+     * 
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static TabixIndex read(File file) throws IOException
+    {
+        try (InputStream inputStream = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            return read(inputStream);
+        }
+    }
+
+    public static TabixIndex read(InputStream uncompressedInputStream) throws IOException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        for (int numberOfBytes = uncompressedInputStream.read(buffer); numberOfBytes >= 0; numberOfBytes = uncompressedInputStream.read(buffer))
+        {
+            outputStream.write(buffer, 0, numberOfBytes);
+        }
+
+        try
+        {
+            ByteBuffer data = ByteBuffer.wrap(outputStream.toByteArray())
+                                        .order(ByteOrder.LITTLE_ENDIAN);
+            int magic = data.getInt();
+            if (magic == TBI_MAGIC)
+            {
+                return readTbi(data);
+            }
+            else if (magic == CSI_MAGIC)
+            {
+                return readCsi(data);
+            }
+            else
+            {
+                throw new IOException("Unknown index format");
+            }
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException("Truncated index file", e);
+        }
+    }
+
+    private static TabixIndex readTbi(ByteBuffer data)
+    {
+        int numberOfReferences = data.getInt();
+        Map<String, Integer> sequenceNameToIndex = readTabixHeader(data);
+
+        List<ReferenceIndex> referenceIndexes = new ArrayList<>();
+        for (int referenceIndex = 0; referenceIndex < numberOfReferences; referenceIndex++)
+        {
+            ReferenceIndex index = new ReferenceIndex();
+            int numberOfBins = data.getInt();
+            for (int binIndex = 0; binIndex < numberOfBins; binIndex++)
+            {
+                int bin = data.getInt();
+                index.binToChunks.put(bin, readChunks(data));
+            }
+
+            int numberOfIntervals = data.getInt();
+            index.linearIndex = new long[numberOfIntervals];
+            for (int interval = 0; interval < numberOfIntervals; interval++)
+            {
+                index.linearIndex[interval] = data.getLong();
+            }
+            referenceIndexes.add(index);
+        }
+        return new TabixIndex(TBI_MIN_SHIFT, TBI_DEPTH, sequenceNameToIndex, referenceIndexes);
+    }
+
+    private static TabixIndex readCsi(ByteBuffer data)
+    {
+        int minShift = data.getInt();
+        int depth = data.getInt();
+        int auxiliaryLength = data.getInt();
+        Map<String, Integer> sequenceNameToIndex = Collections.emptyMap();
+        if (auxiliaryLength >= 28)
+        {
+            ByteBuffer auxiliaryData = (ByteBuffer) data.slice()
+                                                        .order(ByteOrder.LITTLE_ENDIAN)
+                                                        .limit(auxiliaryLength);
+            sequenceNameToIndex = readTabixHeader(auxiliaryData);
+        }
+        data.position(data.position() + auxiliaryLength);
+
+        int numberOfReferences = data.getInt();
+        List<ReferenceIndex> referenceIndexes = new ArrayList<>();
+        for (int referenceIndex = 0; referenceIndex < numberOfReferences; referenceIndex++)
+        {
+            ReferenceIndex index = new ReferenceIndex();
+            int numberOfBins = data.getInt();
+            for (int binIndex = 0; binIndex < numberOfBins; binIndex++)
+            {
+                int bin = data.getInt();
+                index.binToMinimumOffset.put(bin, data.getLong());
+                index.binToChunks.put(bin, readChunks(data));
+            }
+            referenceIndexes.add(index);
+        }
+        return new TabixIndex(minShift, depth, sequenceNameToIndex, referenceIndexes);
+    }
+
+    /**
+     * Reads the tabix header fields format, col_seq, col_beg, col_end, meta, skip and the sequence names
+     * 
+     * @param data
+     * @return
+     */
+    private static Map<String, Integer> readTabixHeader(ByteBuffer data)
+    {
+        data.position(data.position() + 6 * 4);
+        int namesLength = data.getInt();
+        byte[] names = new byte[namesLength];
+        data.get(names);
+
+        Map<String, Integer> sequenceNameToIndex = new HashMap<>();
+        int start = 0;
+        for (int position = 0; position < namesLength; position++)
+        {
+            if (names[position] == 0)
+            {
+                sequenceNameToIndex.put(new String(names, start, position - start, StandardCharsets.UTF_8), sequenceNameToIndex.size());
+                start = position + 1;
+            }
+        }
+        return sequenceNameToIndex;
+    }
+
+    private static List<Chunk> readChunks(ByteBuffer data)
+    {
+        int numberOfChunks = data.getInt();
+        List<Chunk> chunks = new ArrayList<>(numberOfChunks);
+        for (int chunkIndex = 0; chunkIndex < numberOfChunks; chunkIndex++)
+        {
+            chunks.add(new Chunk(data.getLong(), data.getLong()));
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns true if the index contains the names of the indexed sequences, which is required by {@link #getChunks(String, long, long)}
+     * 
+     * @return
+     */
+    public boolean hasSequenceNames()
+    {
+        return !this.sequenceNameToIndex.isEmpty();
+    }
+
+    public boolean hasSequence(String sequenceName)
+    {
+        return this.sequenceNameToIndex.containsKey(sequenceName);
+    }
+
+    /**
+     * Returns the sorted and merged {@link Chunk}s which contain all records overlapping the given region. The records within the
+     * {@link Chunk}s still have to be filtered by their position.
+     * 
+     * @param sequenceName
+     * @param start
+     *            1-based inclusive
+     * @param end
+     *            1-based inclusive
+     * @return
+     */
+    public List<Chunk> getChunks(String sequenceName, long start, long end)
+    {
+        Integer referenceIndex = this.sequenceNameToIndex.get(sequenceName);
+        if (referenceIndex == null || referenceIndex >= this.referenceIndexes.size() || end < start)
+        {
+            return Collections.emptyList();
+        }
+
+        ReferenceIndex index = this.referenceIndexes.get(referenceIndex);
+        long begin = Math.max(0, start - 1);
+        long minimumOffset = this.determineMinimumOffset(index, begin);
+
+        List<Chunk> chunks = new ArrayList<>();
+        for (int bin : regionToBins(begin, end, this.minShift, this.depth))
+        {
+            for (Chunk chunk : index.binToChunks.getOrDefault(bin, Collections.emptyList()))
+            {
+                if (chunk.getEnd() > minimumOffset)
+                {
+                    chunks.add(chunk);
+                }
+            }
+        }
+        return mergeChunks(chunks);
+    }
+
+    private long determineMinimumOffset(ReferenceIndex index, long begin)
+    {
+        if (index.linearIndex.length > 0)
+        {
+            int interval = (int) Math.min(begin >> this.minShift, index.linearIndex.length - 1);
+            return index.linearIndex[interval];
+        }
+        else
+        {
+            // the csi format stores the offset of the first record per bin instead of a linear index, the smallest leaf bin is the most precise
+            long leafBegin = Math.min(begin, determineMaximumCoordinate(this.minShift, this.depth) - 1);
+            int leafBin = (int) ((((1L << (this.depth * 3)) - 1) / 7) + (leafBegin >> this.minShift));
+            return index.binToMinimumOffset.getOrDefault(leafBin, 0L);
+        }
+    }
+
+    private static List<Chunk> mergeChunks(List<Chunk> chunks)
+    {
+        chunks.sort((chunk1, chunk2) -> Long.compareUnsigned(chunk1.getBegin(), chunk2.getBegin()));
+
+        List<Chunk> mergedChunks = new ArrayList<>();
+        Chunk current = null;
+        for (Chunk chunk : chunks)
+        {
+            if (current != null && Long.compareUnsigned(chunk.getBegin(), current.getEnd()) <= 0)
+            {
+                if (Long.compareUnsigned(chunk.getEnd(), current.getEnd()) > 0)
+                {
+                    current = new Chunk(current.getBegin(), chunk.getEnd());
+                }
+            }
+            else
+            {
+                if (current != null)
+                {
+                    mergedChunks.add(current);
+                }
+                current = chunk;
+            }
+        }
+        if (current != null)
+        {
+            mergedChunks.add(current);
+        }
+        return mergedChunks;
+    }
+
+    /**
+     * Returns the exclusive upper bound of the coordinates covered by the binning scheme
+     * 
+     * @param minShift
+     * @param depth
+     * @return
+     */
+    private static long determineMaximumCoordinate(int minShift, int depth)
+    {
+        return 1L << (minShift + depth * 3);
+    }
+
+    /**
+     * Returns the bins of the binning scheme shared by the tabix and csi formats which overlap the given 0-based half open region. Like
+     * htslib the region is clamped to the coordinates covered by the binning scheme, so an open ended region like [0, Long.MAX_VALUE)
+     * resolves to all bins.
+     * 
+     * @param begin
+     * @param end
+     * @param minShift
+     * @param depth
+     * @return
+     */
+    static List<Integer> regionToBins(long begin, long end, int minShift, int depth)
+    {
+        List<Integer> bins = new ArrayList<>();
+        long maximumCoordinate = determineMaximumCoordinate(minShift, depth);
+        end = Math.min(end, maximumCoordinate);
+        if (begin >= end)
+        {
+            return bins;
+        }
+
+        long last = end - 1;
+        int shift = minShift + depth * 3;
+        int levelOffset = 0;
+        for (int level = 0; level <= depth; level++)
+        {
+            long firstBin = levelOffset + (begin >> shift);
+            long lastBin = levelOffset + (last >> shift);
+            for (long bin = firstBin; bin <= lastBin; bin++)
+            {
+                bins.add((int) bin);
+            }
+            shift -= 3;
+            levelOffset += 1 << (level * 3);
+        }
+        return bins;
+    }
+}
@@ -0,0 +1,390 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.ftp;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.omnaest.genomics.vcf.VCFUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses the lines of a vcf file on a pool of workers. A single reader thread splits the raw lines into chunks, each worker parses a chunk
+ * together with the header lines of the file and maps the parsed {@link VCFRecord}s with the given mapper function, or maps the raw lines
+ * directly. The chunks are handed to the consumer through a bounded queue in their original order, so the reader pauses if the consumer falls
+ * behind. <br>
+ * <br>
+ * The reader thread is only started by the first access to the records, and the returned {@link Stream} has to be closed if it is not consumed
+ * completely. Closing stops the reader and the workers and closes the {@link InputStream}.
+ * 
+ * @author omnaest
+ * @param <R>
+ */
+class VCFParsingPipeline<R>
+{
+    private static final int CHUNK_SIZE                = 4096;
+    private static final int QUEUED_CHUNKS_PER_WORKER  = 4;
+    private static final int THREAD_SHUTDOWN_TIMEOUT   = 10;
+    private static final int WORKER_POLL_INTERVAL_MS   = 100;
+    private static final int WORKER_KEEP_ALIVE_SECONDS = 5;
+
+    private static final Logger LOG = LoggerFactory.getLogger(VCFParsingPipeline.class);
+
+    private static final AtomicInteger PIPELINE_COUNTER = new AtomicInteger();
+
+    private final InputStream                              inputStream;
+    private final BiFunction<byte[], List<String>, List<R>> chunkMapper;
+    private final int                                      pipelineIndex;
+
+    private final List<R>                                   endOfRecords = new ArrayList<>();
+    private final BlockingQueue<CompletableFuture<List<R>>> chunks;
+    private final ThreadPoolExecutor                        executor;
+    private Thread                                          readerThread = null;
+    private volatile boolean                                closed       = false;
+
+    private VCFParsingPipeline(InputStream inputStream, BiFunction<byte[], List<String>, List<R>> chunkMapper, int numberOfWorkers)
+    {
+        super();
+        this.inputStream = inputStream;
+        this.chunkMapper = chunkMapper;
+        this.pipelineIndex = PIPELINE_COUNTER.incrementAndGet();
+        this.chunks = new ArrayBlockingQueue<>(numberOfWorkers * QUEUED_CHUNKS_PER_WORKER);
+
+        // idle workers terminate on their own, as parsed record streams are often not closed by their consumers
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(numberOfWorkers, numberOfWorkers, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                                               runnable ->
+                                               {
+                                                   Thread thread = new Thread(runnable, "ensembl-vcf-parser-" + this.pipelineIndex + "-"
+                                                           + threadCounter.incrementAndGet());
+                                                   thread.setDaemon(true);
+                                                   return thread;
+                                               });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the {@link VCFRecord}s of the given uncompressed vcf {@link InputStream} mapped by the given mapper function in the order of the
+     * file. Null results of the mapper are dropped, so the mapper can filter records as well. With a single worker the records are parsed and
+     * mapped on the consuming thread.
+     * 
+     * @param inputStream
+     * @param mapper
+     * @param numberOfWorkers
+     * @return
+     */
+    public static <R> Stream<R> parse(InputStream inputStream, Function<VCFRecord, R> mapper, int numberOfWorkers)
+    {
+        if (numberOfWorkers <= 1)
+        {
+            try
+            {
+                return VCFUtils.read()
+                               .from(inputStream)
+                               .parseOnce()
+                               .map(mapper)
+                               .filter(Objects::nonNull)
+                               .onClose(() -> closeQuietly(inputStream));
+            }
+            catch (IOException e)
+            {
+                closeQuietly(inputStream);
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return new VCFParsingPipeline<R>(inputStream, (header, lines) -> parseChunk(header, lines, mapper), numberOfWorkers).stream();
+    }
+
+    /**
+     * Returns the raw data lines of the given uncompressed vcf {@link InputStream} without the header lines mapped by the given mapper function
+     * in the order of the file. This skips the parsing into {@link VCFRecord}s for mappers which only need a few columns. Null results of the
+     * mapper are dropped.
+     * 
+     * @param inputStream
+     * @param lineMapper
+     * @param numberOfWorkers
+     * @return
+     */
+    public static <R> Stream<R> mapLines(InputStream inputStream, Function<String, R> lineMapper, int numberOfWorkers)
+    {
+        if (numberOfWorkers <= 1)
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            return reader.lines()
+                         .filter(line -> !line.startsWith("#"))
+                         .map(lineMapper)
+                         .filter(Objects::nonNull)
+                         .onClose(() -> closeQuietly(inputStream));
+        }
+
+        return new VCFParsingPipeline<R>(inputStream, (header, lines) -> lines.stream()
+                                                                              .map(lineMapper)
+                                                                              .filter(Objects::nonNull)
+                                                                              .collect(Collectors.toList()),
+                                         numberOfWorkers).stream();
+    }
+
+    private Stream<R> stream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this.start(), Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(this::close);
+    }
+
+    private Iterator<R> start()
+    {
+        return new Iterator<R>()
+        {
+            private Iterator<R> chunk   = Collections.emptyIterator();
+            private boolean     started = false;
+            private boolean     ended   = false;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (!this.started)
+                {
+                    this.started = true;
+                    this.ended = !VCFParsingPipeline.this.startReader();
+                }
+                while (!this.chunk.hasNext() && !this.ended)
+                {
+                    List<R> records = VCFParsingPipeline.this.take();
+                    if (records == VCFParsingPipeline.this.endOfRecords)
+                    {
+                        this.ended = true;
+                        VCFParsingPipeline.this.executor.shutdown();
+                    }
+                    else
+                    {
+                        this.chunk = records.iterator();
+                    }
+                }
+                return this.chunk.hasNext();
+            }
+
+            @Override
+            public R next()
+            {
+                if (!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return this.chunk.next();
+            }
+        };
+    }
+
+    /**
+     * Starts the reader thread unless the pipeline has been closed before
+     * 
+     * @return true if the reader thread has been started
+     */
+    private synchronized boolean startReader()
+    {
+        if (this.closed)
+        {
+            return false;
+        }
+        this.readerThread = new Thread(this::readChunks, "ensembl-vcf-line-reader-" + this.pipelineIndex);
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+        return true;
+    }
+
+    private void readChunks()
+    {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(this.inputStream, StandardCharsets.UTF_8)))
+        {
+            ByteArrayOutputStream headerLines = new ByteArrayOutputStream();
+            String line = reader.readLine();
+            for (; line != null && line.startsWith("#"); line = reader.readLine())
+            {
+                headerLines.write(line.getBytes(StandardCharsets.UTF_8));
+                headerLines.write('\n');
+            }
+            byte[] header = headerLines.toByteArray();
+
+            List<String> lines = new ArrayList<>(CHUNK_SIZE);
+            for (; line != null && !this.closed; line = reader.readLine())
+            {
+                lines.add(line);
+                if (lines.size() >= CHUNK_SIZE)
+                {
+                    this.submit(header, lines);
+                    lines = new ArrayList<>(CHUNK_SIZE);
+                }
+            }
+            if (!lines.isEmpty())
+            {
+                this.submit(header, lines);
+            }
+            this.put(CompletableFuture.completedFuture(this.endOfRecords));
+        }
+        catch (Throwable e)
+        {
+            CompletableFuture<List<R>> failure = new CompletableFuture<>();
+            failure.completeExceptionally(e);
+            this.put(failure);
+        }
+    }
+
+    private void submit(byte[] header, List<String> lines)
+    {
+        this.put(CompletableFuture.supplyAsync(() -> this.chunkMapper.apply(header, lines), this.executor));
+    }
+
+    private static <R> List<R> parseChunk(byte[] header, List<String> lines, Function<VCFRecord, R> mapper)
+    {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(header.length + lines.size() * 256);
+        data.write(header, 0, header.length);
+        for (String line : lines)
+        {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            data.write(bytes, 0, bytes.length);
+            data.write('\n');
+        }
+
+        try (Stream<VCFRecord> records = VCFUtils.read()
+                                                 .from(new ByteArrayInputStream(data.toByteArray()))
+                                                 .parseOnce())
+        {
+            return records.map(mapper)
+                          .filter(Objects::nonNull)
+                          .collect(Collectors.toList());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void put(CompletableFuture<List<R>> chunk)
+    {
+        try
+        {
+            while (!this.closed && !this.chunks.offer(chunk, WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS))
+            {
+                // wait for the consumer
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    private List<R> take()
+    {
+        try
+        {
+            return this.chunks.take()
+                              .join();
+        }
+        catch (CompletionException e)
+        {
+            this.close();
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Unable to parse vcf records", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+            this.close();
+            throw new IllegalStateException("Interrupted while waiting for records", e);
+        }
+    }
+
+    private void close()
+    {
+        Thread readerThread;
+        synchronized (this)
+        {
+            this.closed = true;
+            readerThread = this.readerThread;
+        }
+
+        if (readerThread != null)
+        {
+            readerThread.interrupt();
+        }
+        else
+        {
+            // the reader closes the input stream itself once it has been started
+            closeQuietly(this.inputStream);
+        }
+        this.executor.shutdownNow();
+        try
+        {
+            this.executor.awaitTermination(THREAD_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            if (readerThread != null)
+            {
+                readerThread.join(TimeUnit.SECONDS.toMillis(THREAD_SHUTDOWN_TIMEOUT));
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    private static void closeQuietly(InputStream inputStream)
+    {
+        try
+        {
+            inputStream.close();
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Unable to close vcf input stream", e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.ftp;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.omnaest.genomics.ensembl.ftp.TabixIndex.Chunk;
+import org.omnaest.genomics.vcf.VCFUtils;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+/**
+ * Reads the records of a vcf file which overlap a genomic region. The raw lines are filtered by their CHROM, POS and REF columns before only the
+ * matching lines are handed to the vcf parser.
+ * 
+ * @author omnaest
+ */
+class VCFRegionReader
+{
+    private static final String CHROMOSOME_PREFIX = "chr";
+
+    private final String chromosome;
+    private final long   start;
+    private final long   end;
+
+    private final ByteArrayOutputStream selectedLines = new ByteArrayOutputStream();
+
+    private VCFRegionReader(String chromosome, long start, long end)
+    {
+        super();
+        this.chromosome = StringUtils.removeStartIgnoreCase(chromosome, CHROMOSOME_PREFIX);
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Reads the records overlapping the region from a BGZF compressed file by seeking to the blocks listed in the given {@link TabixIndex}
+     * 
+     * @param file
+     * @param index
+     * @param chromosome
+     * @param start
+     *            1-based inclusive
+     * @param end
+     *            1-based inclusive
+     * @return
+     * @throws IOException
+     */
+    public static Stream<VCFRecord> read(File file, TabixIndex index, String chromosome, long start, long end) throws IOException
+    {
+        VCFRegionReader regionReader = new VCFRegionReader(chromosome, start, end);
+        try (BGZFInputStream inputStream = BGZFInputStream.open(file))
+        {
+            regionReader.readHeader(inputStream);
+
+            String sequenceName = regionReader.resolveSequenceName(index);
+            for (Chunk chunk : index.getChunks(sequenceName, start, end))
+            {
+                inputStream.seek(chunk.getBegin());
+                boolean hasMoreRecords = true;
+                while (hasMoreRecords && Long.compareUnsigned(inputStream.getVirtualOffset(), chunk.getEnd()) < 0)
+                {
+                    String line = inputStream.readLine();
+                    hasMoreRecords = line != null && regionReader.accept(line);
+                }
+            }
+        }
+        return regionReader.parse();
+    }
+
+    /**
+     * Reads the records overlapping the region by a linear scan over the given uncompressed vcf content
+     * 
+     * @param inputStream
+     * @param chromosome
+     * @param start
+     *            1-based inclusive
+     * @param end
+     *            1-based inclusive
+     * @return
+     * @throws IOException
+     */
+    public static Stream<VCFRecord> read(InputStream inputStream, String chromosome, long start, long end) throws IOException
+    {
+        VCFRegionReader regionReader = new VCFRegionReader(chromosome, start, end);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)))
+        {
+            boolean hasMoreRecords = true;
+            for (String line = reader.readLine(); hasMoreRecords && line != null; line = reader.readLine())
+            {
+                if (line.startsWith("#"))
+                {
+                    regionReader.append(line);
+                }
+                else
+                {
+                    hasMoreRecords = regionReader.accept(line);
+                }
+            }
+        }
+        return regionReader.parse();
+    }
+
+    private void readHeader(BGZFInputStream inputStream) throws IOException
+    {
+        inputStream.seek(0);
+        for (String line = inputStream.readLine(); line != null && line.startsWith("#"); line = inputStream.readLine())
+        {
+            this.append(line);
+        }
+    }
+
+    private String resolveSequenceName(TabixIndex index)
+    {
+        return !index.hasSequence(this.chromosome) && index.hasSequence(CHROMOSOME_PREFIX + this.chromosome) ? CHROMOSOME_PREFIX + this.chromosome
+                : this.chromosome;
+    }
+
+    /**
+     * Selects the given data line if it overlaps the region and returns false if the line lies behind the region, which ends the reading of the
+     * position sorted records
+     * 
+     * @param line
+     * @return
+     */
+    private boolean accept(String line)
+    {
+        int chromosomeEnd = line.indexOf('\t');
+        int positionEnd = chromosomeEnd >= 0 ? line.indexOf('\t', chromosomeEnd + 1) : -1;
+        int idEnd = positionEnd >= 0 ? line.indexOf('\t', positionEnd + 1) : -1;
+        int referenceEnd = idEnd >= 0 ? line.indexOf('\t', idEnd + 1) : -1;
+        if (referenceEnd < 0 || line.startsWith("#"))
+        {
+            return true;
+        }
+
+        int chromosomeStart = line.regionMatches(true, 0, CHROMOSOME_PREFIX, 0, CHROMOSOME_PREFIX.length()) ? CHROMOSOME_PREFIX.length() : 0;
+        if (chromosomeEnd - chromosomeStart != this.chromosome.length()
+                || !line.regionMatches(chromosomeStart, this.chromosome, 0, this.chromosome.length()))
+        {
+            return true;
+        }
+
+        long position = parsePosition(line, chromosomeEnd + 1, positionEnd);
+        if (position < 0)
+        {
+            return true;
+        }
+        else if (position > this.end)
+        {
+            return false;
+        }
+
+        long lastPosition = position + Math.max(1, referenceEnd - idEnd - 1) - 1;
+        if (lastPosition >= this.start)
+        {
+            this.append(line);
+        }
+        return true;
+    }
+
+    private static long parsePosition(String line, int start, int end)
+    {
+        long position = 0;
+        for (int index = start; index < end; index++)
+        {
+            char character = line.charAt(index);
+            if (character < '0' || character > '9')
+            {
+                return -1;
+            }
+            position = position * 10 + (character - '0');
+        }
+        return position;
+    }
+
+    private void append(String line)
+    {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        this.selectedLines.write(bytes, 0, bytes.length);
+        this.selectedLines.write('\n');
+    }
+
+    private Stream<VCFRecord> parse() throws IOException
+    {
+        return VCFUtils.read()
+                       .from(new ByteArrayInputStream(this.selectedLines.toByteArray()))
+                       .parseOnce();
+    }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import java.util.Optional;
+
+import org.omnaest.genomics.ensembl.domain.GeneLocation;
+
+/**
+ * Helper for DNA sequences given in the orientation of their {@link GeneLocation} strand
+ * 
+ * @author omnaest
+ */
+public class DNASequenceUtils
+{
+    private DNASequenceUtils()
+    {
+        super();
+    }
+
+    /**
+     * Returns the reverse complement of the given DNA sequence. Upper and lower case is preserved, unknown nucleotide codes are kept as they are.
+     * 
+     * @param sequence
+     * @return
+     */
+    public static String reverseComplement(String sequence)
+    {
+        if (sequence == null)
+        {
+            return null;
+        }
+
+        char[] result = new char[sequence.length()];
+        for (int index = 0; index < result.length; index++)
+        {
+            result[result.length - 1 - index] = complement(sequence.charAt(index));
+        }
+        return new String(result);
+    }
+
+    private static char complement(char nucleotide)
+    {
+        switch (nucleotide)
+        {
+            case 'A':
+                return 'T';
+            case 'T':
+                return 'A';
+            case 'C':
+                return 'G';
+            case 'G':
+                return 'C';
+            case 'a':
+                return 't';
+            case 't':
+                return 'a';
+            case 'c':
+                return 'g';
+            case 'g':
+                return 'c';
+            default:
+                return nucleotide;
+        }
+    }
+
+    /**
+     * Slices the sequence of the region between start and end (1-based, inclusive) out of the given gene sequence. <br>
+     * <br>
+     * The gene sequence is expected in the orientation of the gene strand, like Ensembl returns it. The returned slice is given in the
+     * orientation of the given strand, so it is reverse complemented if the strand differs from the gene strand.
+     * 
+     * @param geneSequence
+     * @param geneLocation
+     * @param start
+     * @param end
+     * @param strand
+     * @return {@link Optional#empty()} if the region lies not completely within the gene sequence
+     */
+    public static Optional<String> slice(String geneSequence, GeneLocation geneLocation, long start, long end, int strand)
+    {
+        if (geneSequence == null || geneLocation == null || geneLocation.getPosition() == null || start > end)
+        {
+            return Optional.empty();
+        }
+
+        long geneStart = geneLocation.getPosition()
+                                     .getStart();
+        long geneEnd = geneLocation.getPosition()
+                                   .getEnd();
+        if (start < geneStart || end > geneEnd || geneEnd - geneStart + 1 != geneSequence.length())
+        {
+            return Optional.empty();
+        }
+
+        boolean geneOnReverseStrand = geneLocation.getStrand() < 0;
+        int fromIndex = (int) (geneOnReverseStrand ? geneEnd - end : start - geneStart);
+        int toIndex = (int) (geneOnReverseStrand ? geneEnd - start + 1 : end - geneStart + 1);
+        String slice = geneSequence.substring(fromIndex, toIndex);
+
+        boolean sliceOnReverseStrand = strand < 0;
+        return Optional.of(sliceOnReverseStrand != geneOnReverseStrand ? reverseComplement(slice) : slice);
+    }
+}
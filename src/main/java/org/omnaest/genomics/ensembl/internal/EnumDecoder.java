@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import java.util.function.Function;
+
+/**
+ * Case insensitive decoder of enum constants by a key, like the match string of a {@link org.omnaest.genomics.ensembl.domain.VariantConsequence}.
+ * <br>
+ * <br>
+ * The keys are held in a precomputed open addressing hash table, so a decode costs a single hash computation over the input characters and
+ * usually one key comparison. The input is read as {@link CharSequence}, which allows to decode a region of a larger line without creating a
+ * substring. Decoding does not allocate any object.
+ * 
+ * @author omnaest
+ * @param <E>
+ */
+public class EnumDecoder<E extends Enum<E>>
+{
+    private final char[][] keys;
+    private final Object[] values;
+    private final int      mask;
+
+    private EnumDecoder(E[] constants, Function<E, String> keyFunction)
+    {
+        super();
+
+        int capacity = Integer.highestOneBit(Math.max(1, constants.length) * 4 - 1) << 1;
+        this.keys = new char[capacity][];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+
+        for (E constant : constants)
+        {
+            String key = keyFunction.apply(constant);
+            if (key != null && this.decode(key) == null)
+            {
+                char[] lowerCaseKey = new char[key.length()];
+                for (int index = 0; index < lowerCaseKey.length; index++)
+                {
+                    lowerCaseKey[index] = toLowerCase(key.charAt(index));
+                }
+
+                int slot = hash(key, 0, key.length()) & this.mask;
+                while (this.keys[slot] != null)
+                {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.keys[slot] = lowerCaseKey;
+                this.values[slot] = constant;
+            }
+        }
+    }
+
+    /**
+     * Returns a new {@link EnumDecoder} for all constants of the given enum type. If multiple constants share the same key, the first one
+     * wins.
+     * 
+     * @param enumType
+     * @param keyFunction
+     * @return
+     */
+    public static <E extends Enum<E>> EnumDecoder<E> of(Class<E> enumType, Function<E, String> keyFunction)
+    {
+        return new EnumDecoder<>(enumType.getEnumConstants(), keyFunction);
+    }
+
+    /**
+     * Returns the constant whose key matches the given input ignoring the case, or null if there is no such constant
+     * 
+     * @param input
+     * @return
+     */
+    public E decode(CharSequence input)
+    {
+        return input != null ? this.decode(input, 0, input.length()) : null;
+    }
+
+    /**
+     * Similar to {@link #decode(CharSequence)} but only considers the characters from start (inclusive) to end (exclusive) of the given input
+     * 
+     * @param input
+     * @param start
+     * @param end
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public E decode(CharSequence input, int start, int end)
+    {
+        if (input == null)
+        {
+            return null;
+        }
+
+        int slot = hash(input, start, end) & this.mask;
+        char[] key;
+        while ((key = this.keys[slot]) != null)
+        {
+            if (equalsIgnoreCase(key, input, start, end))
+            {
+                return (E) this.values[slot];
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return null;
+    }
+
+    private static int hash(CharSequence input, int start, int end)
+    {
+        int hash = 0;
+        for (int index = start; index < end; index++)
+        {
+            hash = 31 * hash + toLowerCase(input.charAt(index));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equalsIgnoreCase(char[] lowerCaseKey, CharSequence input, int start, int end)
+    {
+        if (lowerCaseKey.length != end - start)
+        {
+            return false;
+        }
+        for (int index = 0; index < lowerCaseKey.length; index++)
+        {
+            if (lowerCaseKey[index] != toLowerCase(input.charAt(start + index)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char toLowerCase(char character)
+    {
+        if (character < 128)
+        {
+            return character >= 'A' && character <= 'Z' ? (char) (character + ('a' - 'A')) : character;
+        }
+        return Character.toLowerCase(Character.toUpperCase(character));
+    }
+}
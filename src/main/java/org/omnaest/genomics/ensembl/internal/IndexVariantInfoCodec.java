@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.omnaest.genomics.ensembl.domain.ClinicalSignificance;
+import org.omnaest.genomics.ensembl.domain.VariantConsequence;
+import org.omnaest.genomics.ensembl.internal.VariantInfoStreamer.IndexVariantInfo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Codec which writes and reads single {@link IndexVariantInfo} records to and from a data stream
+ * 
+ * @see #binary()
+ * @see #json()
+ * @author omnaest
+ */
+public interface IndexVariantInfoCodec
+{
+    public void write(IndexVariantInfo variantInfo, DataOutput output) throws IOException;
+
+    public IndexVariantInfo read(DataInput input) throws IOException;
+
+    /**
+     * Returns a compact binary {@link IndexVariantInfoCodec}. Each record starts with a flag byte followed by the fields which are present:<br>
+     * <ul>
+     * <li>rsId: the number of the 'rs' id as variable length integer, other ids as string</li>
+     * <li>minor allele frequency: as float, or as string if the float does not restore the original value</li>
+     * <li>consequence: the {@link VariantConsequence} dictionary code as byte, unknown consequences as string</li>
+     * <li>clinical significances: a bitset of the {@link ClinicalSignificance}s as byte, followed by the unknown values as strings</li>
+     * </ul>
+     * 
+     * @see VariantInfoPackingUtils
+     * @return
+     */
+    public static IndexVariantInfoCodec binary()
+    {
+        return new IndexVariantInfoCodec()
+        {
+            private static final int RS_ID_NUMBER          = 1;
+            private static final int RS_ID_STRING          = 1 << 1;
+            private static final int MAF_FLOAT             = 1 << 2;
+            private static final int MAF_STRING            = 1 << 3;
+            private static final int CONSEQUENCE_CODE      = 1 << 4;
+            private static final int CONSEQUENCE_STRING    = 1 << 5;
+            private static final int CLINICAL_BITS         = 1 << 6;
+            private static final int CLINICAL_OTHER_VALUES = 1 << 7;
+
+            @Override
+            public void write(IndexVariantInfo variantInfo, DataOutput output) throws IOException
+            {
+                String rsId = variantInfo.getRsId();
+                long rsIdNumber = VariantInfoPackingUtils.parseRsIdNumber(rsId);
+
+                String maf = variantInfo.getMaf();
+                float mafValue = VariantInfoPackingUtils.encodeMaf(maf);
+                boolean isMafRestorable = maf != null && maf.equals(VariantInfoPackingUtils.decodeMaf(mafValue));
+
+                String consequence = variantInfo.getConsequence();
+                int consequenceCode = VariantInfoPackingUtils.encodeConsequence(consequence);
+                boolean isConsequenceRestorable = consequenceCode > 0 && VariantInfoPackingUtils.decodeConsequence(consequenceCode)
+                                                                                                .getMatchStr()
+                                                                                                .equals(consequence);
+
+                int clinicalBits = 0;
+                List<String> otherClinicalSignificances = new ArrayList<>();
+                Set<String> clinicalSignificances = variantInfo.getClinicalSignifance();
+                if (clinicalSignificances != null)
+                {
+                    for (String clinicalSignificance : clinicalSignificances)
+                    {
+                        ClinicalSignificance matchingClinicalSignificance = ClinicalSignificance.decode(clinicalSignificance);
+                        if (matchingClinicalSignificance != null && matchingClinicalSignificance.getMatchStr()
+                                                                                                .equals(clinicalSignificance))
+                        {
+                            clinicalBits |= VariantInfoPackingUtils.encodeClinicalSignificance(matchingClinicalSignificance);
+                        }
+                        else if (clinicalSignificance != null)
+                        {
+                            otherClinicalSignificances.add(clinicalSignificance);
+                        }
+                    }
+                }
+
+                int flags = (rsIdNumber >= 0 ? RS_ID_NUMBER : rsId != null ? RS_ID_STRING : 0) | (isMafRestorable ? MAF_FLOAT : maf != null ? MAF_STRING : 0)
+                        | (isConsequenceRestorable ? CONSEQUENCE_CODE : consequence != null ? CONSEQUENCE_STRING : 0)
+                        | (clinicalBits != 0 ? CLINICAL_BITS : 0) | (!otherClinicalSignificances.isEmpty() ? CLINICAL_OTHER_VALUES : 0);
+                output.writeByte(flags);
+
+                if ((flags & RS_ID_NUMBER) != 0)
+                {
+                    VariantInfoPackingUtils.writeVarLong(rsIdNumber, output);
+                }
+                else if ((flags & RS_ID_STRING) != 0)
+                {
+                    output.writeUTF(rsId);
+                }
+
+                if ((flags & MAF_FLOAT) != 0)
+                {
+                    output.writeFloat(mafValue);
+                }
+                else if ((flags & MAF_STRING) != 0)
+                {
+                    output.writeUTF(maf);
+                }
+
+                if ((flags & CONSEQUENCE_CODE) != 0)
+                {
+                    output.writeByte(consequenceCode);
+                }
+                else if ((flags & CONSEQUENCE_STRING) != 0)
+                {
+                    output.writeUTF(consequence);
+                }
+
+                if ((flags & CLINICAL_BITS) != 0)
+                {
+                    output.writeByte(clinicalBits);
+                }
+                if ((flags & CLINICAL_OTHER_VALUES) != 0)
+                {
+                    VariantInfoPackingUtils.writeVarLong(otherClinicalSignificances.size(), output);
+                    for (String clinicalSignificance : otherClinicalSignificances)
+                    {
+                        output.writeUTF(clinicalSignificance);
+                    }
+                }
+            }
+
+            @Override
+            public IndexVariantInfo read(DataInput input) throws IOException
+            {
+                IndexVariantInfo variantInfo = new IndexVariantInfo();
+                int flags = input.readUnsignedByte();
+
+                if ((flags & RS_ID_NUMBER) != 0)
+                {
+                    variantInfo.setRsId(VariantInfoPackingUtils.toRsId(VariantInfoPackingUtils.readVarLong(input)));
+                }
+                else if ((flags & RS_ID_STRING) != 0)
+                {
+                    variantInfo.setRsId(input.readUTF());
+                }
+
+                if ((flags & MAF_FLOAT) != 0)
+                {
+                    variantInfo.setMaf(VariantInfoPackingUtils.decodeMaf(input.readFloat()));
+                }
+                else if ((flags & MAF_STRING) != 0)
+                {
+                    variantInfo.setMaf(input.readUTF());
+                }
+
+                if ((flags & CONSEQUENCE_CODE) != 0)
+                {
+                    variantInfo.setConsequence(VariantInfoPackingUtils.decodeConsequence(input.readUnsignedByte())
+                                                                      .getMatchStr());
+                }
+                else if ((flags & CONSEQUENCE_STRING) != 0)
+                {
+                    variantInfo.setConsequence(input.readUTF());
+                }
+
+                if ((flags & CLINICAL_BITS) != 0)
+                {
+                    VariantInfoPackingUtils.decodeClinicalSignificances(input.readUnsignedByte())
+                                           .forEach(variantInfo::addClinicalSignifance);
+                }
+                if ((flags & CLINICAL_OTHER_VALUES) != 0)
+                {
+                    long numberOfValues = VariantInfoPackingUtils.readVarLong(input);
+                    for (long index = 0; index < numberOfValues; index++)
+                    {
+                        variantInfo.addClinicalSignifance(input.readUTF());
+                    }
+                }
+
+                return variantInfo;
+            }
+        };
+    }
+
+    /**
+     * Returns a {@link IndexVariantInfoCodec} which writes each record as length prefixed json
+     * 
+     * @return
+     */
+    public static IndexVariantInfoCodec json()
+    {
+        return new IndexVariantInfoCodec()
+        {
+            private ObjectMapper objectMapper = new ObjectMapper();
+
+            @Override
+            public void write(IndexVariantInfo variantInfo, DataOutput output) throws IOException
+            {
+                byte[] data = this.objectMapper.writeValueAsBytes(variantInfo);
+                VariantInfoPackingUtils.writeVarLong(data.length, output);
+                output.write(data);
+            }
+
+            @Override
+            public IndexVariantInfo read(DataInput input) throws IOException
+            {
+                byte[] data = new byte[(int) VariantInfoPackingUtils.readVarLong(input)];
+                input.readFully(data);
+                return this.objectMapper.readValue(data, IndexVariantInfo.class);
+            }
+        };
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Memoized {@link CompletableFuture} which is only created on first demand. <br>
+ * <br>
+ * {@link #start()} triggers the computation without waiting for it, which allows to start several {@link LazyFuture}s concurrently before
+ * {@link #get()} waits for their results. The computation is triggered at most once, even if multiple threads access the {@link LazyFuture} at
+ * the same time.
+ * 
+ * @author omnaest
+ * @param <T>
+ */
+public class LazyFuture<T> implements Supplier<T>
+{
+    private final Supplier<CompletableFuture<T>> futureFactory;
+
+    private volatile CompletableFuture<T> future = null;
+
+    private LazyFuture(Supplier<CompletableFuture<T>> futureFactory)
+    {
+        super();
+        this.futureFactory = futureFactory;
+    }
+
+    public static <T> LazyFuture<T> of(Supplier<CompletableFuture<T>> futureFactory)
+    {
+        return new LazyFuture<>(futureFactory);
+    }
+
+    /**
+     * Triggers the computation if it has not been triggered before and returns immediately
+     * 
+     * @return this
+     */
+    public LazyFuture<T> start()
+    {
+        this.getFuture();
+        return this;
+    }
+
+    /**
+     * Triggers the computation if necessary and waits for its result. A {@link RuntimeException} of the computation is rethrown as it is.
+     */
+    @Override
+    public T get()
+    {
+        try
+        {
+            return this.getFuture()
+                       .join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to compute lazy future", e.getCause());
+        }
+    }
+
+    private CompletableFuture<T> getFuture()
+    {
+        CompletableFuture<T> future = this.future;
+        if (future == null)
+        {
+            synchronized (this)
+            {
+                future = this.future;
+                if (future == null)
+                {
+                    future = this.futureFactory.get();
+                    this.future = future;
+                }
+            }
+        }
+        return future;
+    }
+
+}
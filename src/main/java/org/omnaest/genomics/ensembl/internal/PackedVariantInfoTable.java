@@ -0,0 +1,424 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.omnaest.genomics.ensembl.domain.ClinicalSignificance;
+import org.omnaest.genomics.ensembl.domain.VariantConsequence;
+import org.omnaest.genomics.ensembl.internal.VariantInfoIndex.IndexVariantInfo;
+
+/**
+ * Open addressing hash table of {@link IndexVariantInfo}s keyed by the number of their 'rs' id. Each entry occupies a single long slot: the upper
+ * 32 bits hold the rs number incremented by one, so that 0 marks an empty slot, and the lower 32 bits hold the packed fields:<br>
+ * <ul>
+ * <li>bits 0-15: dictionary code of the minor allele frequency, 0 if there is none</li>
+ * <li>bits 16-23: the {@link VariantConsequence} code</li>
+ * <li>bits 24-31: the bitset of the {@link ClinicalSignificance}s</li>
+ * </ul>
+ * Records which cannot be packed without loss, like ids which are not plain 'rs' ids, unknown consequences or clinical significances, or minor
+ * allele frequencies which are not restored by their float value, are kept as objects in an overflow map. <br>
+ * <br>
+ * Records with the same id are merged by {@link VariantInfoIndex#mergeVariantInfos(IndexVariantInfo, IndexVariantInfo)}. <br>
+ * <br>
+ * The table is not thread safe for writes. It is meant to be filled by a single thread and afterwards read by any number of threads.
+ * 
+ * @see VariantInfoPackingUtils
+ * @author omnaest
+ */
+public class PackedVariantInfoTable
+{
+    public static final long MAXIMUM_RS_ID_NUMBER = 0xFFFFFFFEL;
+
+    private static final double LOAD_FACTOR            = 0.75;
+    private static final int    MINIMUM_CAPACITY       = 16;
+    private static final int    MAXIMUM_CAPACITY       = Integer.MAX_VALUE - 8;
+    private static final int    MAXIMUM_NUMBER_OF_MAFS = 0xFFFF;
+    private static final long   VALUE_MASK             = 0xFFFFFFFFL;
+
+    private long[] slots;
+    private int    size      = 0;
+    private int    threshold;
+
+    private float[]               mafs          = new float[256];
+    private int                   numberOfMafs  = 0;
+    private Map<Integer, Integer> mafBitsToCode = new HashMap<>();
+
+    private Map<String, IndexVariantInfo> overflow = new ConcurrentHashMap<>();
+
+    /**
+     * @param expectedNumberOfRecords
+     *            the table is sized to hold this number of records without growing
+     */
+    public PackedVariantInfoTable(long expectedNumberOfRecords)
+    {
+        super();
+        this.allocate((int) Math.min(MAXIMUM_CAPACITY, Math.max(MINIMUM_CAPACITY, (long) Math.ceil(expectedNumberOfRecords / LOAD_FACTOR))));
+    }
+
+    private void allocate(int capacity)
+    {
+        this.slots = new long[capacity];
+        this.threshold = capacity == MAXIMUM_CAPACITY ? capacity - 1 : (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Adds the given record or merges it into the record with the same id
+     * 
+     * @param variantInfo
+     * @return this
+     */
+    public PackedVariantInfoTable put(IndexVariantInfo variantInfo)
+    {
+        String rsId = variantInfo.getRsId();
+        long rsIdNumber = VariantInfoPackingUtils.parseRsIdNumber(rsId);
+        if (rsIdNumber < 0 || rsIdNumber > MAXIMUM_RS_ID_NUMBER)
+        {
+            this.overflow.merge(String.valueOf(rsId), variantInfo, VariantInfoIndex::mergeVariantInfos);
+            return this;
+        }
+
+        if (!this.overflow.isEmpty() && this.overflow.containsKey(rsId))
+        {
+            this.overflow.merge(rsId, variantInfo, VariantInfoIndex::mergeVariantInfos);
+            return this;
+        }
+
+        long packedValue = this.pack(variantInfo);
+        if (packedValue < 0)
+        {
+            IndexVariantInfo existingVariantInfo = this.remove(rsIdNumber);
+            this.overflow.put(rsId, existingVariantInfo != null ? VariantInfoIndex.mergeVariantInfos(existingVariantInfo, variantInfo) : variantInfo);
+            return this;
+        }
+
+        int value = (int) packedValue;
+        int index = this.findSlot(rsIdNumber);
+        if (this.slots[index] != 0)
+        {
+            this.slots[index] = toSlot(rsIdNumber, mergePackedValues((int) (this.slots[index] & VALUE_MASK), value));
+        }
+        else
+        {
+            this.ensureCapacityForOneMore();
+            this.slots[this.findSlot(rsIdNumber)] = toSlot(rsIdNumber, value);
+            this.size++;
+        }
+        return this;
+    }
+
+    /**
+     * Returns the record with the given id or null
+     * 
+     * @param rsId
+     * @return
+     */
+    public IndexVariantInfo get(String rsId)
+    {
+        if (!this.overflow.isEmpty())
+        {
+            IndexVariantInfo variantInfo = this.overflow.get(String.valueOf(rsId));
+            if (variantInfo != null)
+            {
+                return variantInfo;
+            }
+        }
+
+        long rsIdNumber = VariantInfoPackingUtils.parseRsIdNumber(rsId);
+        if (rsIdNumber < 0 || rsIdNumber > MAXIMUM_RS_ID_NUMBER)
+        {
+            return null;
+        }
+        long slot = this.slots[this.findSlot(rsIdNumber)];
+        return slot != 0 ? this.unpack(slot) : null;
+    }
+
+    public Stream<IndexVariantInfo> stream()
+    {
+        return Stream.concat(IntStream.range(0, this.slots.length)
+                                      .filter(index -> this.slots[index] != 0)
+                                      .mapToObj(index -> this.unpack(this.slots[index])),
+                             this.overflow.values()
+                                          .stream());
+    }
+
+    /**
+     * Returns the number of records
+     * 
+     * @return
+     */
+    public long size()
+    {
+        return this.size + this.overflow.size();
+    }
+
+    /**
+     * Returns the number of records which could not be packed
+     * 
+     * @return
+     */
+    public int getNumberOfOverflowRecords()
+    {
+        return this.overflow.size();
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the packed slots
+     * 
+     * @return
+     */
+    public long getNumberOfPackedBytes()
+    {
+        return this.slots.length * 8L + this.mafs.length * 4L;
+    }
+
+    /**
+     * Returns the packed fields of the given record as unsigned 32 bit value or -1 if the record can not be packed without loss
+     * 
+     * @param variantInfo
+     * @return
+     */
+    private long pack(IndexVariantInfo variantInfo)
+    {
+        int mafCode = this.encodeMaf(variantInfo.getMaf());
+
+        String consequence = variantInfo.getConsequence();
+        int consequenceCode = VariantInfoPackingUtils.encodeConsequence(consequence);
+        boolean isConsequenceRestorable = consequence == null || (consequenceCode > 0 && consequenceCode <= 0xFF
+                && VariantInfoPackingUtils.decodeConsequence(consequenceCode)
+                                          .getMatchStr()
+                                          .equals(consequence));
+
+        int clinicalBits = 0;
+        Set<String> clinicalSignificances = variantInfo.getClinicalSignifance();
+        if (clinicalSignificances != null)
+        {
+            for (String clinicalSignificance : clinicalSignificances)
+            {
+                ClinicalSignificance matchingClinicalSignificance = ClinicalSignificance.decode(clinicalSignificance);
+                if (matchingClinicalSignificance == null || !matchingClinicalSignificance.getMatchStr()
+                                                                                         .equals(clinicalSignificance))
+                {
+                    return -1;
+                }
+                clinicalBits |= VariantInfoPackingUtils.encodeClinicalSignificance(matchingClinicalSignificance);
+            }
+        }
+
+        if (mafCode < 0 || !isConsequenceRestorable || clinicalBits > 0xFF)
+        {
+            return -1;
+        }
+        return (mafCode | consequenceCode << 16 | clinicalBits << 24) & VALUE_MASK;
+    }
+
+    private IndexVariantInfo unpack(long slot)
+    {
+        int value = (int) (slot & VALUE_MASK);
+
+        IndexVariantInfo variantInfo = new IndexVariantInfo();
+        variantInfo.setRsId(VariantInfoPackingUtils.toRsId((slot >>> 32) - 1));
+
+        int mafCode = value & 0xFFFF;
+        if (mafCode != 0)
+        {
+            variantInfo.setMaf(VariantInfoPackingUtils.decodeMaf(this.mafs[mafCode - 1]));
+        }
+
+        VariantConsequence consequence = VariantInfoPackingUtils.decodeConsequence(value >>> 16 & 0xFF);
+        if (consequence != null)
+        {
+            variantInfo.setConsequence(consequence.getMatchStr());
+        }
+
+        VariantInfoPackingUtils.decodeClinicalSignificances(value >>> 24)
+                               .forEach(variantInfo::addClinicalSignifance);
+        return variantInfo;
+    }
+
+    /**
+     * Returns the dictionary code of the given minor allele frequency, 0 for null and -1 if the value can not be restored from its float or the
+     * dictionary is full
+     * 
+     * @param maf
+     * @return
+     */
+    private int encodeMaf(String maf)
+    {
+        if (maf == null)
+        {
+            return 0;
+        }
+
+        float mafValue = VariantInfoPackingUtils.encodeMaf(maf);
+        if (!maf.equals(VariantInfoPackingUtils.decodeMaf(mafValue)))
+        {
+            return -1;
+        }
+
+        Integer mafBits = Float.floatToIntBits(mafValue);
+        Integer code = this.mafBitsToCode.get(mafBits);
+        if (code == null)
+        {
+            if (this.numberOfMafs >= MAXIMUM_NUMBER_OF_MAFS)
+            {
+                return -1;
+            }
+            if (this.numberOfMafs == this.mafs.length)
+            {
+                float[] mafs = new float[Math.min(MAXIMUM_NUMBER_OF_MAFS, this.mafs.length * 2)];
+                System.arraycopy(this.mafs, 0, mafs, 0, this.numberOfMafs);
+                this.mafs = mafs;
+            }
+            this.mafs[this.numberOfMafs++] = mafValue;
+            code = this.numberOfMafs;
+            this.mafBitsToCode.put(mafBits, code);
+        }
+        return code;
+    }
+
+    /**
+     * Merges two packed values like {@link VariantInfoIndex#mergeVariantInfos(IndexVariantInfo, IndexVariantInfo)}: the first minor allele
+     * frequency, the most severe consequence and all clinical significances
+     * 
+     * @param value1
+     * @param value2
+     * @return
+     */
+    private static int mergePackedValues(int value1, int value2)
+    {
+        int mafCode = (value1 & 0xFFFF) != 0 ? value1 & 0xFFFF : value2 & 0xFFFF;
+
+        int consequenceCode1 = value1 >>> 16 & 0xFF;
+        int consequenceCode2 = value2 >>> 16 & 0xFF;
+        int consequenceCode = consequenceCode1 == 0 || (consequenceCode2 != 0 && isMoreSevere(consequenceCode2, consequenceCode1)) ? consequenceCode2
+                : consequenceCode1;
+
+        int clinicalBits = (value1 | value2) >>> 24;
+        return mafCode | consequenceCode << 16 | clinicalBits << 24;
+    }
+
+    private static boolean isMoreSevere(int consequenceCode, int otherConsequenceCode)
+    {
+        return VariantInfoPackingUtils.decodeConsequence(consequenceCode)
+                                      .getSeverity()
+                                      .compareTo(VariantInfoPackingUtils.decodeConsequence(otherConsequenceCode)
+                                                                        .getSeverity()) < 0;
+    }
+
+    private static long toSlot(long rsIdNumber, int value)
+    {
+        return (rsIdNumber + 1) << 32 | (value & VALUE_MASK);
+    }
+
+    /**
+     * Returns the index of the slot holding the given rs number or of the empty slot where it has to be inserted
+     * 
+     * @param rsIdNumber
+     * @return
+     */
+    private int findSlot(long rsIdNumber)
+    {
+        long key = rsIdNumber + 1;
+        int capacity = this.slots.length;
+        int index = this.homeIndex(key);
+        while (this.slots[index] != 0 && this.slots[index] >>> 32 != key)
+        {
+            index = index + 1 < capacity ? index + 1 : 0;
+        }
+        return index;
+    }
+
+    /**
+     * Maps the mixed key onto [0, capacity) by a multiply and shift instead of a modulo, which allows capacities which are not a power of two
+     * 
+     * @param key
+     * @return
+     */
+    private int homeIndex(long key)
+    {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 29;
+        return (int) (((hash >>> 32) * this.slots.length) >>> 32);
+    }
+
+    private void ensureCapacityForOneMore()
+    {
+        if (this.size >= this.threshold)
+        {
+            if (this.slots.length >= MAXIMUM_CAPACITY)
+            {
+                throw new IllegalStateException("Packed variant info table is full with " + this.size + " records");
+            }
+
+            long[] previousSlots = this.slots;
+            this.allocate((int) Math.min(MAXIMUM_CAPACITY, previousSlots.length * 2L));
+            for (long slot : previousSlots)
+            {
+                if (slot != 0)
+                {
+                    this.slots[this.findSlot((slot >>> 32) - 1)] = slot;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the record with the given rs number and closes the gap by shifting the following records of the probe sequence back
+     * 
+     * @param rsIdNumber
+     * @return the removed record or null
+     */
+    private IndexVariantInfo remove(long rsIdNumber)
+    {
+        int index = this.findSlot(rsIdNumber);
+        long slot = this.slots[index];
+        if (slot == 0)
+        {
+            return null;
+        }
+
+        int capacity = this.slots.length;
+        int gap = index;
+        int current = index;
+        while (true)
+        {
+            current = current + 1 < capacity ? current + 1 : 0;
+            long currentSlot = this.slots[current];
+            if (currentSlot == 0)
+            {
+                break;
+            }
+
+            int home = this.homeIndex(currentSlot >>> 32);
+            boolean isHomeBetweenGapAndCurrent = gap <= current ? gap < home && home <= current : gap < home || home <= current;
+            if (!isHomeBetweenGapAndCurrent)
+            {
+                this.slots[gap] = currentSlot;
+                gap = current;
+            }
+        }
+        this.slots[gap] = 0;
+        this.size--;
+
+        return this.unpack(slot);
+    }
+}
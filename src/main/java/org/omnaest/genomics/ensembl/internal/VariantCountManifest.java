@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.omnaest.genomics.ensembl.ftp.EnsemblFTPUtils.EnsembleVariationVCFLoaderWithVersionAndHomoSapiensSpecies;
+import org.omnaest.genomics.ensembl.ftp.EnsemblFTPUtils.VariationVCFResource;
+import org.omnaest.utils.CacheUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Small sidecar properties file which keeps the number of source variant records per species, so the variation vcf files do not have to be
+ * parsed an additional time just to size progress counters or distribution batches. Each count is stored together with the source key of the
+ * files it has been counted from, see {@link #determineSourceKey(EnsembleVariationVCFLoaderWithVersionAndHomoSapiensSpecies)}, and is only
+ * returned for the same source key, so a count of a previous ensembl release is never used for a newer one.
+ * 
+ * @author omnaest
+ */
+public class VariantCountManifest
+{
+    private static final Logger LOG = LoggerFactory.getLogger(VariantCountManifest.class);
+
+    private static final String KEY_SUFFIX_NUMBER_OF_VARIANTS = ".numberOfVariants";
+    private static final String KEY_SUFFIX_SOURCE_KEY         = ".sourceKey";
+
+    private final File file;
+
+    private VariantCountManifest(File file)
+    {
+        super();
+        this.file = file;
+    }
+
+    /**
+     * Returns the {@link VariantCountManifest} located in the ensembl cache folder
+     * 
+     * @return
+     */
+    public static VariantCountManifest getInstance()
+    {
+        return of(new File(CacheUtils.createCacheFolder("ensembl/manifest"), "variantcount.properties"));
+    }
+
+    public static VariantCountManifest of(File file)
+    {
+        return new VariantCountManifest(file);
+    }
+
+    /**
+     * Returns the source key of the variation vcf files of the given loader, which consists of the fingerprints of all files, see
+     * {@link VariationVCFResource#getFingerprint()}. If any of the files has no fingerprint, e.g. files which are not stored locally, no source
+     * key is returned.
+     * 
+     * @param loader
+     * @return
+     */
+    public static Optional<String> determineSourceKey(EnsembleVariationVCFLoaderWithVersionAndHomoSapiensSpecies loader)
+    {
+        List<Optional<String>> fingerprints = Stream.concat(loader.forChromosomes(), Stream.of(loader.forClinicallyAssociated(),
+                                                                                               loader.forPhenotypeAssociated()))
+                                                    .map(VariationVCFResource::getFingerprint)
+                                                    .collect(Collectors.toList());
+        if (fingerprints.stream()
+                        .allMatch(Optional::isPresent))
+        {
+            return Optional.of(fingerprints.stream()
+                                           .map(Optional::get)
+                                           .collect(Collectors.joining(";")));
+        }
+        else
+        {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns the number of source variant records of the given species, if it has been recorded before for the same source key
+     * 
+     * @param species
+     * @param sourceKey
+     *            see {@link #determineSourceKey(EnsembleVariationVCFLoaderWithVersionAndHomoSapiensSpecies)}
+     * @return
+     */
+    public synchronized OptionalLong getNumberOfVariants(String species, String sourceKey)
+    {
+        Properties properties = this.load();
+        if (!StringUtils.equals(sourceKey, properties.getProperty(species + KEY_SUFFIX_SOURCE_KEY)))
+        {
+            return OptionalLong.empty();
+        }
+
+        long numberOfVariants = NumberUtils.toLong(properties.getProperty(species + KEY_SUFFIX_NUMBER_OF_VARIANTS), -1);
+        return numberOfVariants >= 0 ? OptionalLong.of(numberOfVariants) : OptionalLong.empty();
+    }
+
+    /**
+     * Similar to {@link #getNumberOfVariants(String, String)} but returns an empty result if no source key is given
+     * 
+     * @param species
+     * @param sourceKey
+     * @return
+     */
+    public OptionalLong getNumberOfVariants(String species, Optional<String> sourceKey)
+    {
+        return sourceKey.map(key -> this.getNumberOfVariants(species, key))
+                        .orElse(OptionalLong.empty());
+    }
+
+    /**
+     * Records the number of source variant records of the given species and source key, replacing any count of a previous source key. Must only
+     * be called with the count of a complete pass over all source records.
+     * 
+     * @param species
+     * @param sourceKey
+     *            see {@link #determineSourceKey(EnsembleVariationVCFLoaderWithVersionAndHomoSapiensSpecies)}
+     * @param numberOfVariants
+     * @return
+     */
+    public synchronized VariantCountManifest putNumberOfVariants(String species, String sourceKey, long numberOfVariants)
+    {
+        Properties properties = this.load();
+        properties.setProperty(species + KEY_SUFFIX_SOURCE_KEY, sourceKey);
+        properties.setProperty(species + KEY_SUFFIX_NUMBER_OF_VARIANTS, String.valueOf(numberOfVariants));
+        try (OutputStream outputStream = new FileOutputStream(this.file))
+        {
+            properties.store(outputStream, "Number of source variant records per species");
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Unable to write variant count manifest: " + this.file, e);
+        }
+        return this;
+    }
+
+    private Properties load()
+    {
+        Properties properties = new Properties();
+        if (this.file.isFile())
+        {
+            try (InputStream inputStream = new FileInputStream(this.file))
+            {
+                properties.load(inputStream);
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Unable to read variant count manifest: " + this.file, e);
+            }
+        }
+        return properties;
+    }
+}
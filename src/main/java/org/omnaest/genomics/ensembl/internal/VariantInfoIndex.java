@@ -18,18 +18,19 @@ package org.omnaest.genomics.ensembl.internal;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
-import org.omnaest.genomics.ensembl.domain.ClinicalSignificance;
 import org.omnaest.genomics.ensembl.domain.VariantConsequence;
 import org.omnaest.genomics.ensembl.domain.raw.VariantInfo;
 import org.omnaest.genomics.ensembl.ftp.EnsemblFTPUtils;
-import org.omnaest.genomics.vcf.domain.VCFRecord;
-import org.omnaest.genomics.vcf.domain.VCFRecord.AdditionalInfo;
+import org.omnaest.genomics.ensembl.ftp.EnsemblFTPUtils.EnsemblFTPLoader;
 import org.omnaest.utils.CacheUtils;
 import org.omnaest.utils.ComparatorUtils;
 import org.omnaest.utils.PredicateUtils;
@@ -40,7 +41,6 @@ import org.omnaest.utils.counter.Counter;
 import org.omnaest.utils.counter.DurationProgressCounter;
 import org.omnaest.utils.counter.ImmutableDurationProgressCounter.DurationProgress;
 import org.omnaest.utils.duration.DurationCapture.DisplayableDuration;
-import org.omnaest.utils.functional.UnaryBiFunction;
 import org.omnaest.utils.optional.NullOptional;
 import org.omnaest.utils.repository.ElementRepository;
 import org.omnaest.utils.repository.MapElementRepository;
@@ -53,12 +53,20 @@ public class VariantInfoIndex
 {
     private static final Logger LOG = LoggerFactory.getLogger(VariantInfoIndex.class);
 
+    /**
+     * Number of records the packed index is sized for, if the number of variants is not known upfront
+     */
+    private static final int INITIAL_PACKED_INDEX_SIZE = 1 << 20;
+
     private Cache                                                            cache                 = CacheUtils.newNoOperationCache();
+    private boolean                                                          localFileStorage      = false;
     private Map<String, Index>                                               speciesToIndexData    = new ConcurrentHashMap<String, Index>();
     private Function<String, Index>                                          indexDataProvider     = species -> new Index();
     private Function<String, MapElementRepository<String, IndexVariantInfo>> repositoryProvider    = species -> ElementRepository.ofNonSupplied(new ConcurrentHashMap<>());
-    private Predicate<VCFRecord>                                             variantFilter         = PredicateUtils.allMatching();
+    private Predicate<String>                                                variantIdFilter       = PredicateUtils.allMatching();
     private int                                                              distributionBatchSize = 100000;
+    private boolean                                                          variantFilterActive   = false;
+    private boolean                                                          packedIndex           = false;
 
     public VariantInfoIndex usingCache(Cache cache)
     {
@@ -73,12 +81,43 @@ public class VariantInfoIndex
                                          .withNativeStringStorage(true));
     }
 
+    /**
+     * Streams the variation vcf files to local files instead of loading them into memory
+     * 
+     * @see EnsemblFTPLoader#withLocalFileStorage()
+     * @return
+     */
+    public VariantInfoIndex usingLocalFileStorage()
+    {
+        this.localFileStorage = true;
+        return this;
+    }
+
+    private EnsemblFTPLoader createFTPLoader()
+    {
+        EnsemblFTPLoader loader = EnsemblFTPUtils.load()
+                                                 .withCache(this.cache);
+        return this.localFileStorage ? loader.withLocalFileStorage() : loader;
+    }
+
     public VariantInfoIndex withRepositoryProvider(Function<String, MapElementRepository<String, IndexVariantInfo>> repositoryProvider)
     {
         this.repositoryProvider = repositoryProvider;
         return this;
     }
 
+    /**
+     * Stores the index in a {@link PackedVariantInfoTable} keyed by the number of the 'rs' ids, which needs about 11 bytes per variant, instead of
+     * the repository of the {@link #withRepositoryProvider(Function)}
+     * 
+     * @return
+     */
+    public VariantInfoIndex usingPackedIndex()
+    {
+        this.packedIndex = true;
+        return this;
+    }
+
     public VariantInfoIndex withDistributionBatchSize(int distributionBatchSize)
     {
         this.distributionBatchSize = distributionBatchSize;
@@ -97,6 +136,8 @@ public class VariantInfoIndex
 
     private Map<String, DurationProgressCounter> speciesToProcessedVariantsDurationCounter = new ConcurrentHashMap<>();
     private int                                  variantLoadLimit                          = Integer.MAX_VALUE;
+    private int                                  numberOfParsingWorkers                    = Runtime.getRuntime()
+                                                                                                    .availableProcessors();
 
     public VariantInfoIndex enable()
     {
@@ -104,82 +145,49 @@ public class VariantInfoIndex
         {
             try
             {
-                MapElementRepository<String, IndexVariantInfo> variantIdToVariantInfo = this.repositoryProvider.apply(species);
-
-                // *****************
-
-                LOG.info("Start counting matching variants...");
-                Counter numberOfAllSourceVariants = Counter.fromZero();
-                int numberOfVariants = (int) this.createVariantsStream(species)
-                                                 .peek(record -> numberOfAllSourceVariants.increment())
-                                                 .filter(this.variantFilter)
-                                                 .count();
-                LOG.info("...finished counting. Found " + numberOfVariants + " matching variants in " + numberOfAllSourceVariants.getAsLong()
-                        + " source variants.");
-
-                long currentVariantIndexSize = variantIdToVariantInfo.size();
+                // the counting pass is only necessary for the distribution factor of the repository based index, and only if no previous pass over
+                // the same source files has recorded the number of variants or a filter is active. The packed index grows as needed and uses the
+                // number of variants only as initial size and progress maximum.
+                VariantCountManifest variantCountManifest = VariantCountManifest.getInstance();
+                OptionalLong recordedNumberOfVariants = this.variantFilterActive ? OptionalLong.empty()
+                        : variantCountManifest.getNumberOfVariants(species, this.determineSourceKey(species));
+                int numberOfVariants;
+                if (recordedNumberOfVariants.isPresent())
                 {
-                    LOG.info("Rebuilding index with current index having " + currentVariantIndexSize + " variants, and " + numberOfVariants
-                            + " are to be matched.");
-
-                    UnaryBiFunction<IndexVariantInfo> variantInfoMerger = (info1, info2) ->
+                    numberOfVariants = (int) Math.min(this.variantLoadLimit, recordedNumberOfVariants.getAsLong());
+                    LOG.info("Skipped counting. Found " + numberOfVariants + " variants in the variant count manifest.");
+                }
+                else if (this.packedIndex)
+                {
+                    numberOfVariants = Math.min(this.variantLoadLimit, INITIAL_PACKED_INDEX_SIZE);
+                    LOG.info("Skipped counting for the packed index, which grows as needed.");
+                }
+                else
+                {
+                    LOG.info("Start counting matching variants...");
+                    Counter numberOfAllSourceVariants = Counter.fromZero();
+                    try (Stream<Boolean> matchingVariants = this.createVariantsStream(species, this::isMatchingVariant))
                     {
-                        IndexVariantInfo variantInfo = new IndexVariantInfo();
-                        variantInfo.setRsId(Optional.ofNullable(info1.getRsId())
-                                                    .orElse(info2.getRsId()));
-                        variantInfo.setMaf(Optional.ofNullable(info1.getMaf())
-                                                   .orElse(info2.getMaf()));
-                        variantInfo.setConsequence(Stream.of(info1.getConsequence(), info2.getConsequence())
-                                                         .filter(PredicateUtils.notBlank())
-                                                         .map(VariantConsequence::of)
-                                                         .filter(Optional::isPresent)
-                                                         .map(Optional::get)
-                                                         .sorted(ComparatorUtils.comparatorFunction(VariantConsequence::getSeverity))
-                                                         .findFirst()
-                                                         .map(VariantConsequence::getMatchStr)
-                                                         .orElse(null));
-
-                        Stream.concat(Optional.ofNullable(info1.getClinicalSignifance())
-                                              .orElse(Collections.emptySet())
-                                              .stream(),
-                                      Optional.ofNullable(info2.getClinicalSignifance())
-                                              .orElse(Collections.emptySet())
-                                              .stream())
-                              .filter(PredicateUtils.notNull())
-                              .forEach(variantInfo::addClinicalSignifance);
-
-                        return variantInfo;
-                    };
+                        numberOfVariants = (int) matchingVariants.peek(matching -> numberOfAllSourceVariants.increment())
+                                                                 .filter(Boolean::booleanValue)
+                                                                 .count();
+                    }
+                    LOG.info("...finished counting. Found " + numberOfVariants + " matching variants in " + numberOfAllSourceVariants.getAsLong()
+                            + " source variants.");
+                }
 
-                    Function<VCFRecord, IndexVariantInfo> variationVcfRecordToVariantInfoMapper = record ->
+                {
+                    Function<String, IndexVariantInfo> lineToVariantInfoMapper = line ->
                     {
-                        IndexVariantInfo variantInfo = new IndexVariantInfo();
-
-                        variantInfo.setRsId(record.getId());
-
-                        variantInfo.setMaf(record.getInfoValue(AdditionalInfo.MAF)
-                                                 .orElse(variantInfo.getMaf()));
-                        variantInfo.setConsequence(record.getInfoTokenGroups(AdditionalInfo.CSQ)
-                                                         .map(group -> group.getValueAt(1))
-                                                         .filter(Optional::isPresent)
-                                                         .map(Optional::get)
-                                                         .map(VariantConsequence::of)
-                                                         .filter(Optional::isPresent)
-                                                         .map(Optional::get)
-                                                         .sorted(ComparatorUtils.comparatorFunction(VariantConsequence::getSeverity))
-                                                         .findFirst()
-                                                         .map(VariantConsequence::getMatchStr)
-                                                         .orElse(variantInfo.getConsequence()));
-
-                        if (record.getInfoExists(AdditionalInfo.CLIN_risk_factor))
-                        {
-                            variantInfo.addClinicalSignifance(ClinicalSignificance.RISK_FACTOR.getMatchStr());
-                        }
-                        if (record.getInfoExists(AdditionalInfo.CLIN_benign))
+                        String rsId = VariantInfoProjectionUtils.readId(line);
+                        if (rsId == null || !this.variantIdFilter.test(rsId))
                         {
-                            variantInfo.addClinicalSignifance(ClinicalSignificance.BENIGN.getMatchStr());
+                            return null;
                         }
 
+                        IndexVariantInfo variantInfo = new IndexVariantInfo();
+                        variantInfo.setRsId(rsId);
+                        VariantInfoProjectionUtils.projectInfo(line, variantInfo);
                         return variantInfo;
                     };
 
@@ -191,34 +199,72 @@ public class VariantInfoIndex
                                                                                       .withMaximum(numberOfVariants);
                     overallDurationCounter.synchronizeProgressContinouslyFrom(processedVariantsDurationCounter);
 
+                    Consumer<Object> processedRecordCounter = result -> processedVariantsDurationCounter.increment()
+                                                                                                        .ifModulo(10000,
+                                                                                                                  (DurationProgress progress) -> LOG.info("Current number of processed records: "
+                                                                                                                          + progress.getCounter() + " "
+                                                                                                                          + progress.getProgressAsString() + " ( "
+                                                                                                                          + progress.getETA()
+                                                                                                                                    .map(DisplayableDuration::asCanonicalString)
+                                                                                                                                    .orElse("")
+                                                                                                                          + " )"));
+
+                    Counter numberOfProcessedVariants = Counter.fromZero();
+                    if (this.packedIndex)
+                    {
+                        PackedVariantInfoTable variantInfoTable = new PackedVariantInfoTable(numberOfVariants);
+
+                        LOG.info("Start reading raw variant vcf files into packed index...");
+                        try (Stream<IndexVariantInfo> variantInfos = this.createVariantsStream(species, lineToVariantInfoMapper))
+                        {
+                            variantInfos.peek(StreamUtils.peekProgressCounter(100000, numberOfVariants, progress -> LOG.info("    Processed variation index records: "
+                                    + progress.getCounter() + " " + progress.getProgressAsString())))
+                                        .forEach(variantInfo ->
+                                        {
+                                            variantInfoTable.put(variantInfo);
+                                            numberOfProcessedVariants.increment();
+                                            processedRecordCounter.accept(variantInfo);
+                                        });
+                        }
+                        LOG.info("...finished reading raw variant vcf files");
+                        this.recordNumberOfVariants(variantCountManifest, species, numberOfProcessedVariants.getAsLong());
+                        LOG.info("Cached " + variantInfoTable.size() + " records using " + variantInfoTable.getNumberOfPackedBytes() + " bytes and "
+                                + variantInfoTable.getNumberOfOverflowRecords() + " overflow records");
+
+                        return new Index(variantInfoTable);
+                    }
+
+                    MapElementRepository<String, IndexVariantInfo> variantIdToVariantInfo = this.repositoryProvider.apply(species);
+                    LOG.info("Rebuilding index with current index having " + variantIdToVariantInfo.size() + " variants, and " + numberOfVariants
+                            + " are to be matched.");
+
                     LOG.info("Start reading raw variant vcf files...");
                     ProcessorUtils.newRepeatingFilteredProcessorWithInMemoryCacheAndRepository(variantIdToVariantInfo, IndexVariantInfo.class)
                                   .withDistributionFactor(this.distributionBatchSize, numberOfVariants)
-                                  .process((cacheId, distributionFactor) -> this.createVariantsStream(species)
+                                  .process((cacheId, distributionFactor) -> this.createVariantsStream(species, lineToVariantInfoMapper)
                                                                                 .peek(StreamUtils.peekProgressCounter(100000,
-                                                                                                                      numberOfAllSourceVariants.getAsLong(),
+                                                                                                                      numberOfVariants,
                                                                                                                       progress -> LOG.info("    Processed variation index records: "
                                                                                                                               + progress.getCounter() + " "
                                                                                                                               + progress.getProgressAsString()
                                                                                                                               + " ( Cycle " + (cacheId + 1)
                                                                                                                               + "/" + distributionFactor
                                                                                                                               + " )")))
-                                                                                .filter(this.variantFilter))
-                                  .withAggregatingOperation(VCFRecord::getId, variationVcfRecordToVariantInfoMapper, variantInfoMerger)
-                                  .forEach(result -> processedVariantsDurationCounter.increment()
-                                                                                     .ifModulo(10000,
-                                                                                               (DurationProgress progress) -> LOG.info("Current number of processed records: "
-                                                                                                       + progress.getCounter() + " "
-                                                                                                       + progress.getProgressAsString() + " ( "
-                                                                                                       + progress.getETA()
-                                                                                                                 .map(DisplayableDuration::asCanonicalString)
-                                                                                                                 .orElse("")
-                                                                                                       + " )")));
+                                                                                .peek(variantInfo ->
+                                                                                {
+                                                                                    if (cacheId == 0)
+                                                                                    {
+                                                                                        numberOfProcessedVariants.increment();
+                                                                                    }
+                                                                                }))
+                                  .withAggregatingOperation(IndexVariantInfo::getRsId, UnaryOperator.identity(), VariantInfoIndex::mergeVariantInfos)
+                                  .forEach(result -> processedRecordCounter.accept(result));
                     LOG.info("...finished reading raw variant vcf files");
+                    this.recordNumberOfVariants(variantCountManifest, species, numberOfProcessedVariants.getAsLong());
                     LOG.info("Cached " + variantIdToVariantInfo.size() + " records");
-                }
 
-                return new Index(variantIdToVariantInfo);
+                    return new Index(variantIdToVariantInfo);
+                }
             }
             catch (Throwable e)
             {
@@ -230,32 +276,67 @@ public class VariantInfoIndex
 
     }
 
-    private Stream<VCFRecord> createVariantsStream(String species)
+    /**
+     * Rewrites the {@link VariantCountManifest} with the number of records processed by a complete and unfiltered pass, so the manifest always
+     * reflects the source files read last
+     * 
+     * @param variantCountManifest
+     * @param species
+     * @param numberOfVariants
+     */
+    private void recordNumberOfVariants(VariantCountManifest variantCountManifest, String species, long numberOfVariants)
     {
-        Stream<VCFRecord> records = StreamUtils.concat(EnsemblFTPUtils.load()
-                                                                      .withCache(this.cache)
-                                                                      .variationVCFFiles()
-                                                                      .current()
-                                                                      .forSpecies(species)
-                                                                      .forChromosomes()
-                                                                      .flatMap(resource -> resource.asParsedVCF()
-                                                                                                   .getRecords()),
-                                                       EnsemblFTPUtils.load()
-                                                                      .withCache(this.cache)
-                                                                      .variationVCFFiles()
-                                                                      .current()
-                                                                      .forSpecies(species)
-                                                                      .forClinicallyAssociated()
-                                                                      .asParsedVCF()
-                                                                      .getRecords(),
-                                                       EnsemblFTPUtils.load()
-                                                                      .withCache(this.cache)
-                                                                      .variationVCFFiles()
-                                                                      .current()
-                                                                      .forSpecies(species)
-                                                                      .forPhenotypeAssociated()
-                                                                      .asParsedVCF()
-                                                                      .getRecords());
+        if (this.variantLoadLimit == Integer.MAX_VALUE && !this.variantFilterActive)
+        {
+            this.determineSourceKey(species)
+                .ifPresent(sourceKey -> variantCountManifest.putNumberOfVariants(species, sourceKey, numberOfVariants));
+        }
+    }
+
+    private Optional<String> determineSourceKey(String species)
+    {
+        return VariantCountManifest.determineSourceKey(this.createFTPLoader()
+                                                           .variationVCFFiles()
+                                                           .current()
+                                                           .forSpecies(species));
+    }
+
+    /**
+     * Returns the raw data lines of all variation files mapped by the given mapper function, which is applied by the
+     * {@link #withNumberOfParsingWorkers(int)} in parallel. Null results of the mapper are dropped. Each variation file is only opened when the
+     * previous one has been read and its parsing pipeline is closed afterwards, the returned {@link Stream} has to be closed if it is not consumed
+     * completely.
+     * 
+     * @param species
+     * @param lineMapper
+     * @return
+     */
+    private <R> Stream<R> createVariantsStream(String species, Function<String, R> lineMapper)
+    {
+        Stream<Supplier<Stream<R>>> recordsSuppliers = Stream.of(() -> this.createFTPLoader()
+                                                                           .variationVCFFiles()
+                                                                           .current()
+                                                                           .forSpecies(species)
+                                                                           .forChromosomes()
+                                                                           .flatMap(resource -> resource.asParsedVCF()
+                                                                                                        .getLines(lineMapper, this.numberOfParsingWorkers)),
+                                                                 () -> this.createFTPLoader()
+                                                                           .variationVCFFiles()
+                                                                           .current()
+                                                                           .forSpecies(species)
+                                                                           .forClinicallyAssociated()
+                                                                           .asParsedVCF()
+                                                                           .getLines(lineMapper, this.numberOfParsingWorkers),
+                                                                 () -> this.createFTPLoader()
+                                                                           .variationVCFFiles()
+                                                                           .current()
+                                                                           .forSpecies(species)
+                                                                           .forPhenotypeAssociated()
+                                                                           .asParsedVCF()
+                                                                           .getLines(lineMapper, this.numberOfParsingWorkers));
+
+        // flatMap closes every records stream once it has been read, also if the limit is reached
+        Stream<R> records = recordsSuppliers.flatMap(Supplier::get);
         if (this.variantLoadLimit < Integer.MAX_VALUE)
         {
             records = records.limit(this.variantLoadLimit);
@@ -263,9 +344,59 @@ public class VariantInfoIndex
         return records;
     }
 
+    /**
+     * Returns true if the id of the given data line matches the {@link #withVariantIdFilter(Predicate)} or null if the line has no id
+     * 
+     * @param line
+     * @return
+     */
+    private Boolean isMatchingVariant(String line)
+    {
+        String rsId = VariantInfoProjectionUtils.readId(line);
+        return rsId != null ? this.variantIdFilter.test(rsId) : null;
+    }
+
+    /**
+     * Merges two records with the same id into a new one keeping the first minor allele frequency, the most severe consequence and all clinical
+     * significances
+     * 
+     * @param info1
+     * @param info2
+     * @return
+     */
+    static IndexVariantInfo mergeVariantInfos(IndexVariantInfo info1, IndexVariantInfo info2)
+    {
+        IndexVariantInfo variantInfo = new IndexVariantInfo();
+        variantInfo.setRsId(Optional.ofNullable(info1.getRsId())
+                                    .orElse(info2.getRsId()));
+        variantInfo.setMaf(Optional.ofNullable(info1.getMaf())
+                                   .orElse(info2.getMaf()));
+        variantInfo.setConsequence(Stream.of(info1.getConsequence(), info2.getConsequence())
+                                         .filter(PredicateUtils.notBlank())
+                                         .map(VariantConsequence::of)
+                                         .filter(Optional::isPresent)
+                                         .map(Optional::get)
+                                         .sorted(ComparatorUtils.comparatorFunction(VariantConsequence::getSeverity))
+                                         .findFirst()
+                                         .map(VariantConsequence::getMatchStr)
+                                         .orElse(null));
+
+        Stream.concat(Optional.ofNullable(info1.getClinicalSignifance())
+                              .orElse(Collections.emptySet())
+                              .stream(),
+                      Optional.ofNullable(info2.getClinicalSignifance())
+                              .orElse(Collections.emptySet())
+                              .stream())
+              .filter(PredicateUtils.notNull())
+              .forEach(variantInfo::addClinicalSignifance);
+
+        return variantInfo;
+    }
+
     public static class Index
     {
         private MapElementRepository<String, IndexVariantInfo> variantIdToVariantInfo = ElementRepository.ofNonSupplied(new ConcurrentHashMap<>());
+        private PackedVariantInfoTable                         variantInfoTable       = null;
 
         public Index()
         {
@@ -278,17 +409,44 @@ public class VariantInfoIndex
             this.variantIdToVariantInfo = variantIdToVariantInfo;
         }
 
+        public Index(PackedVariantInfoTable variantInfoTable)
+        {
+            super();
+            this.variantInfoTable = variantInfoTable;
+        }
+
         public NullOptional<IndexVariantInfo> get(String variantId)
         {
+            if (this.variantInfoTable != null)
+            {
+                return NullOptional.ofNullable(this.variantInfoTable.get(variantId));
+            }
             return this.variantIdToVariantInfo.get(variantId);
         }
 
         public Stream<IndexVariantInfo> stream()
         {
+            if (this.variantInfoTable != null)
+            {
+                return this.variantInfoTable.stream();
+            }
             return this.variantIdToVariantInfo.values();
         }
     }
 
+    /**
+     * Defines the number of workers which parse and filter the records of the variation files during the counting and the indexing pass.
+     * Default is the number of available processors.
+     * 
+     * @param numberOfWorkers
+     * @return
+     */
+    public VariantInfoIndex withNumberOfParsingWorkers(int numberOfWorkers)
+    {
+        this.numberOfParsingWorkers = Math.max(1, numberOfWorkers);
+        return this;
+    }
+
     public VariantInfoIndex withMaximumNumberOfVariants(int maxiumum)
     {
         this.variantLoadLimit = maxiumum;
@@ -314,7 +472,8 @@ public class VariantInfoIndex
 
     public VariantInfoIndex withVariantIdFilter(Predicate<String> variantIdFilter)
     {
-        this.variantFilter = record -> variantIdFilter.test(record.getId());
+        this.variantIdFilter = variantIdFilter;
+        this.variantFilterActive = true;
         return this;
     }
 
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.omnaest.genomics.ensembl.domain.ClinicalSignificance;
+import org.omnaest.genomics.ensembl.domain.VariantConsequence;
+
+/**
+ * Helpers to pack the fields of an index variant info into compact primitive representations: the number of a 'rs' id, a dictionary code of the
+ * {@link VariantConsequence}, a bitset of the {@link ClinicalSignificance}s and the minor allele frequency as float.
+ * 
+ * @see IndexVariantInfoCodec#binary()
+ * @author omnaest
+ */
+public class VariantInfoPackingUtils
+{
+    /**
+     * Code of a missing consequence
+     */
+    public static final int NO_CONSEQUENCE = 0;
+
+    /**
+     * Code of a consequence which is not part of the {@link VariantConsequence} dictionary
+     */
+    public static final int UNKNOWN_CONSEQUENCE = -1;
+
+    private static final String RS_ID_PREFIX = "rs";
+
+    private VariantInfoPackingUtils()
+    {
+        super();
+    }
+
+    /**
+     * Returns the number of a 'rs' id like rs123 or -1 if the given id is not a plain 'rs' id which can be restored from its number
+     * 
+     * @param rsId
+     * @return
+     */
+    public static long parseRsIdNumber(CharSequence rsId)
+    {
+        int length = rsId != null ? rsId.length() : 0;
+        if (length <= RS_ID_PREFIX.length() || length > RS_ID_PREFIX.length() + 18 || rsId.charAt(0) != 'r' || rsId.charAt(1) != 's'
+                || (rsId.charAt(2) == '0' && length > 3))
+        {
+            return -1;
+        }
+
+        long number = 0;
+        for (int index = RS_ID_PREFIX.length(); index < length; index++)
+        {
+            char character = rsId.charAt(index);
+            if (character < '0' || character > '9')
+            {
+                return -1;
+            }
+            number = number * 10 + (character - '0');
+        }
+        return number;
+    }
+
+    public static String toRsId(long rsIdNumber)
+    {
+        return RS_ID_PREFIX + rsIdNumber;
+    }
+
+    /**
+     * Returns the dictionary code of the given consequence, which is {@link #NO_CONSEQUENCE} for null and {@link #UNKNOWN_CONSEQUENCE} if the
+     * consequence is not part of the {@link VariantConsequence} dictionary
+     * 
+     * @param consequence
+     * @return
+     */
+    public static int encodeConsequence(CharSequence consequence)
+    {
+        if (consequence == null)
+        {
+            return NO_CONSEQUENCE;
+        }
+        VariantConsequence variantConsequence = VariantConsequence.decode(consequence);
+        return variantConsequence != null ? encodeConsequence(variantConsequence) : UNKNOWN_CONSEQUENCE;
+    }
+
+    public static int encodeConsequence(VariantConsequence consequence)
+    {
+        return consequence != null ? consequence.ordinal() + 1 : NO_CONSEQUENCE;
+    }
+
+    /**
+     * Inverse of {@link #encodeConsequence(VariantConsequence)}
+     * 
+     * @param code
+     * @return
+     */
+    public static VariantConsequence decodeConsequence(int code)
+    {
+        VariantConsequence[] consequences = VariantConsequence.values();
+        return code > 0 && code <= consequences.length ? consequences[code - 1] : null;
+    }
+
+    /**
+     * Returns a bitset of the given clinical significances using one bit per {@link ClinicalSignificance#ordinal()}. Values which do not match
+     * any {@link ClinicalSignificance} are ignored.
+     * 
+     * @see #encodeClinicalSignificance(ClinicalSignificance)
+     * @param clinicalSignificances
+     * @return
+     */
+    public static int encodeClinicalSignificances(Collection<String> clinicalSignificances)
+    {
+        int bits = 0;
+        if (clinicalSignificances != null)
+        {
+            for (String clinicalSignificance : clinicalSignificances)
+            {
+                bits |= encodeClinicalSignificance(ClinicalSignificance.decode(clinicalSignificance));
+            }
+        }
+        return bits;
+    }
+
+    public static int encodeClinicalSignificance(ClinicalSignificance clinicalSignificance)
+    {
+        return clinicalSignificance != null ? 1 << clinicalSignificance.ordinal() : 0;
+    }
+
+    /**
+     * Inverse of {@link #encodeClinicalSignificances(Collection)} returning the match strings of the {@link ClinicalSignificance}s
+     * 
+     * @param bits
+     * @return
+     */
+    public static Set<String> decodeClinicalSignificances(int bits)
+    {
+        Set<String> clinicalSignificances = new LinkedHashSet<>();
+        for (ClinicalSignificance clinicalSignificance : ClinicalSignificance.values())
+        {
+            if ((bits & encodeClinicalSignificance(clinicalSignificance)) != 0)
+            {
+                clinicalSignificances.add(clinicalSignificance.getMatchStr());
+            }
+        }
+        return clinicalSignificances;
+    }
+
+    /**
+     * Returns the minor allele frequency as float or {@link Float#NaN} if the given value is not a number
+     * 
+     * @param maf
+     * @return
+     */
+    public static float encodeMaf(String maf)
+    {
+        if (maf == null || maf.isEmpty())
+        {
+            return Float.NaN;
+        }
+        try
+        {
+            return Float.parseFloat(maf);
+        }
+        catch (NumberFormatException e)
+        {
+            return Float.NaN;
+        }
+    }
+
+    /**
+     * Inverse of {@link #encodeMaf(String)} in plain decimal notation like 0.000199681, returns null for {@link Float#NaN}
+     * 
+     * @param maf
+     * @return
+     */
+    public static String decodeMaf(float maf)
+    {
+        return Float.isNaN(maf) || Float.isInfinite(maf) ? null
+                : new BigDecimal(Float.toString(maf)).stripTrailingZeros()
+                                                     .toPlainString();
+    }
+
+    /**
+     * Writes the given non negative number as variable length integer with 7 bits per byte
+     * 
+     * @param value
+     * @param output
+     * @throws IOException
+     */
+    public static void writeVarLong(long value, DataOutput output) throws IOException
+    {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0)
+        {
+            output.writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        output.writeByte((int) remaining);
+    }
+
+    public static long readVarLong(DataInput input) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            byte currentByte = input.readByte();
+            value |= (long) (currentByte & 0x7F) << shift;
+            if ((currentByte & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+}
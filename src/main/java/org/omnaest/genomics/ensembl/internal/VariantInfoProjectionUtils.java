@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import org.omnaest.genomics.ensembl.domain.ClinicalSignificance;
+import org.omnaest.genomics.ensembl.domain.VariantConsequence;
+import org.omnaest.genomics.ensembl.domain.raw.VariantInfo;
+import org.omnaest.genomics.vcf.domain.VCFRecord.AdditionalInfo;
+
+/**
+ * Extracts the fields of an index variant info directly from a raw vcf data line: the id, the minor allele frequency, the clinical flags and the
+ * most severe consequence of all CSQ groups. The line is scanned once and no intermediate token objects are created, only the id and the minor
+ * allele frequency are copied into new {@link String}s.
+ * 
+ * @author omnaest
+ */
+public class VariantInfoProjectionUtils
+{
+    private static final int ID_COLUMN   = 2;
+    private static final int INFO_COLUMN = 7;
+
+    private static final int CSQ_CONSEQUENCE_INDEX = 1;
+
+    private static final String MAF_KEY              = AdditionalInfo.MAF.name();
+    private static final String CSQ_KEY              = AdditionalInfo.CSQ.name();
+    private static final String CLIN_RISK_FACTOR_KEY = AdditionalInfo.CLIN_risk_factor.name();
+    private static final String CLIN_BENIGN_KEY      = AdditionalInfo.CLIN_benign.name();
+
+    private VariantInfoProjectionUtils()
+    {
+        super();
+    }
+
+    /**
+     * Returns the id column of the given data line or null if the line is a header line or has no id column
+     * 
+     * @param line
+     * @return
+     */
+    public static String readId(CharSequence line)
+    {
+        int start = findColumnStart(line, 0, ID_COLUMN);
+        if (start < 0 || isHeaderLine(line))
+        {
+            return null;
+        }
+        return line.subSequence(start, findColumnEnd(line, start))
+                   .toString();
+    }
+
+    /**
+     * Sets the minor allele frequency, the most severe consequence and the clinical significances of the INFO column of the given data line on
+     * the given {@link VariantInfo}. Returns false if the line has no INFO column.
+     * 
+     * @param line
+     * @param variantInfo
+     * @return
+     */
+    public static boolean projectInfo(CharSequence line, VariantInfo variantInfo)
+    {
+        int infoStart = findColumnStart(line, 0, INFO_COLUMN);
+        if (infoStart < 0 || isHeaderLine(line))
+        {
+            return false;
+        }
+
+        int infoEnd = findColumnEnd(line, infoStart);
+        VariantConsequence consequence = null;
+        int entryStart = infoStart;
+        while (entryStart < infoEnd)
+        {
+            int entryEnd = indexOf(line, ';', entryStart, infoEnd);
+            int keyEnd = indexOf(line, '=', entryStart, entryEnd);
+            int valueStart = Math.min(keyEnd + 1, entryEnd);
+
+            if (regionEquals(line, entryStart, keyEnd, CSQ_KEY))
+            {
+                consequence = findMostSevereConsequence(line, valueStart, entryEnd);
+            }
+            else if (regionEquals(line, entryStart, keyEnd, MAF_KEY))
+            {
+                variantInfo.setMaf(line.subSequence(valueStart, entryEnd)
+                                       .toString());
+            }
+            else if (regionEquals(line, entryStart, keyEnd, CLIN_RISK_FACTOR_KEY))
+            {
+                variantInfo.addClinicalSignifance(ClinicalSignificance.RISK_FACTOR.getMatchStr());
+            }
+            else if (regionEquals(line, entryStart, keyEnd, CLIN_BENIGN_KEY))
+            {
+                variantInfo.addClinicalSignifance(ClinicalSignificance.BENIGN.getMatchStr());
+            }
+
+            entryStart = entryEnd + 1;
+        }
+
+        if (consequence != null)
+        {
+            variantInfo.setConsequence(consequence.getMatchStr());
+        }
+        return true;
+    }
+
+    /**
+     * Returns the most severe {@link VariantConsequence} of the consequence fields of all comma separated CSQ groups within the given region. If
+     * multiple consequences share the highest severity, the first one wins.
+     * 
+     * @param line
+     * @param start
+     * @param end
+     * @return
+     */
+    private static VariantConsequence findMostSevereConsequence(CharSequence line, int start, int end)
+    {
+        VariantConsequence mostSevereConsequence = null;
+        int groupStart = start;
+        while (groupStart < end)
+        {
+            int groupEnd = indexOf(line, ',', groupStart, end);
+
+            int fieldStart = groupStart;
+            for (int fieldIndex = 0; fieldIndex < CSQ_CONSEQUENCE_INDEX && fieldStart <= groupEnd; fieldIndex++)
+            {
+                fieldStart = indexOf(line, '|', fieldStart, groupEnd) + 1;
+            }
+            if (fieldStart <= groupEnd)
+            {
+                VariantConsequence consequence = VariantConsequence.decode(line, fieldStart, indexOf(line, '|', fieldStart, groupEnd));
+                if (consequence != null && (mostSevereConsequence == null || consequence.getSeverity()
+                                                                                        .compareTo(mostSevereConsequence.getSeverity()) < 0))
+                {
+                    mostSevereConsequence = consequence;
+                }
+            }
+
+            groupStart = groupEnd + 1;
+        }
+        return mostSevereConsequence;
+    }
+
+    private static boolean isHeaderLine(CharSequence line)
+    {
+        return line.length() > 0 && line.charAt(0) == '#';
+    }
+
+    private static int findColumnStart(CharSequence line, int start, int column)
+    {
+        int position = start;
+        for (int index = 0; index < column; index++)
+        {
+            int tabPosition = indexOf(line, '\t', position, line.length());
+            if (tabPosition >= line.length())
+            {
+                return -1;
+            }
+            position = tabPosition + 1;
+        }
+        return position;
+    }
+
+    private static int findColumnEnd(CharSequence line, int start)
+    {
+        return indexOf(line, '\t', start, line.length());
+    }
+
+    /**
+     * Returns the position of the given character within the region or the end of the region if it is not present
+     * 
+     * @param line
+     * @param character
+     * @param start
+     * @param end
+     * @return
+     */
+    private static int indexOf(CharSequence line, char character, int start, int end)
+    {
+        for (int index = start; index < end; index++)
+        {
+            if (line.charAt(index) == character)
+            {
+                return index;
+            }
+        }
+        return end;
+    }
+
+    private static boolean regionEquals(CharSequence line, int start, int end, String key)
+    {
+        if (end - start != key.length())
+        {
+            return false;
+        }
+        for (int index = 0; index < key.length(); index++)
+        {
+            if (line.charAt(start + index) != key.charAt(index))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
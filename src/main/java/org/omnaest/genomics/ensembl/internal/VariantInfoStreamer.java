@@ -15,27 +15,61 @@
  ******************************************************************************/
 package org.omnaest.genomics.ensembl.internal;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.OptionalLong;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.lang3.StringUtils;
-import org.omnaest.genomics.ensembl.domain.ClinicalSignificance;
 import org.omnaest.genomics.ensembl.domain.VariantConsequence;
 import org.omnaest.genomics.ensembl.domain.raw.VariantInfo;
 import org.omnaest.genomics.ensembl.ftp.EnsemblFTPUtils;
+import org.omnaest.genomics.ensembl.ftp.EnsemblFTPUtils.EnsemblFTPLoader;
+import org.omnaest.genomics.ensembl.ftp.EnsemblFTPUtils.EnsembleVariationVCFLoaderWithVersionAndHomoSapiensSpecies;
+import org.omnaest.genomics.ensembl.ftp.EnsemblFTPUtils.RecordOrder;
+import org.omnaest.genomics.ensembl.ftp.EnsemblFTPUtils.VCFResourceAccessor;
 import org.omnaest.genomics.ensembl.ftp.EnsemblFTPUtils.VariationVCFResource;
-import org.omnaest.genomics.vcf.domain.VCFRecord;
-import org.omnaest.genomics.vcf.domain.VCFRecord.AdditionalInfo;
 import org.omnaest.utils.CacheUtils;
 import org.omnaest.utils.ComparatorUtils;
-import org.omnaest.utils.FileUtils;
-import org.omnaest.utils.JSONHelper;
 import org.omnaest.utils.MapperUtils;
 import org.omnaest.utils.PeekUtils;
 import org.omnaest.utils.PredicateUtils;
@@ -57,9 +91,47 @@ public class VariantInfoStreamer
 {
     private static final Logger LOG = LoggerFactory.getLogger(VariantInfoStreamer.class);
 
-    private Cache cache            = CacheUtils.newNoOperationCache();
-    private int   batchSize        = 1000000;
-    private int   variantLoadLimit = Integer.MAX_VALUE;
+    private static final int SPILL_FILE_BUFFER_SIZE = 64 * 1024;
+
+    public static final int DEFAULT_MERGE_FAN_IN      = 64;
+    public static final int DEFAULT_MERGE_BUFFER_SIZE = 256 * 1024;
+
+    private static final Comparator<IndexVariantInfo> RS_ID_COMPARATOR = ComparatorUtils.builder()
+                                                                                        .of(IndexVariantInfo.class)
+                                                                                        .with(IndexVariantInfo::getRsId)
+                                                                                        .build();
+
+    private Cache                 cache            = CacheUtils.newNoOperationCache();
+    private boolean               localFileStorage = false;
+    private int                   batchSize        = 1000000;
+    private int                   variantLoadLimit = Integer.MAX_VALUE;
+    private IndexVariantInfoCodec codec            = IndexVariantInfoCodec.binary();
+
+    private int numberOfChromosomeLoadingWorkers = 1;
+    private int numberOfParsingWorkers           = 0;
+    private int numberOfDecompressionThreads     = 0;
+
+    private int             sortParallelism               = Runtime.getRuntime()
+                                                                   .availableProcessors();
+    private ExecutorService sortExecutor                  = null;
+    private int             maximumNumberOfResidentFrames = 2;
+
+    private int mergeFanIn      = DEFAULT_MERGE_FAN_IN;
+    private int mergeBufferSize = DEFAULT_MERGE_BUFFER_SIZE;
+
+    private File             spillDirectory   = null;
+    private SpillCompression spillCompression = SpillCompression.DEFLATE;
+
+    /**
+     * Compression of the sorted batch files written to the spill directory
+     * 
+     * @see VariantInfoStreamer#withSpillCompression(SpillCompression)
+     * @author omnaest
+     */
+    public static enum SpillCompression
+    {
+        NONE, DEFLATE
+    }
 
     private ProgressCounterContainer progressCounterContainer = ProgressCounterContainer.newInstance();
 
@@ -76,12 +148,149 @@ public class VariantInfoStreamer
                                          .withNativeStringStorage(true));
     }
 
+    /**
+     * Streams the variation vcf files to local files instead of loading them into memory
+     * 
+     * @see EnsemblFTPLoader#withLocalFileStorage()
+     * @return
+     */
+    public VariantInfoStreamer usingLocalFileStorage()
+    {
+        this.localFileStorage = true;
+        return this;
+    }
+
+    private EnsemblFTPLoader createFTPLoader()
+    {
+        EnsemblFTPLoader loader = EnsemblFTPUtils.load()
+                                                 .withCache(this.cache)
+                                                 .withNumberOfDecompressionThreads(this.determineNumberOfThreadsPerFile(this.numberOfDecompressionThreads));
+        return this.localFileStorage ? loader.withLocalFileStorage() : loader;
+    }
+
+    /**
+     * Returns the given number of threads, or if it is not defined the available processors divided by the number of files read concurrently
+     * 
+     * @param numberOfThreads
+     * @return
+     */
+    private int determineNumberOfThreadsPerFile(int numberOfThreads)
+    {
+        return numberOfThreads > 0 ? numberOfThreads
+                : Math.max(1, Runtime.getRuntime()
+                                     .availableProcessors()
+                        / this.numberOfChromosomeLoadingWorkers);
+    }
+
     public VariantInfoStreamer withBatchSize(int batchSize)
     {
         this.batchSize = batchSize;
         return this;
     }
 
+    /**
+     * Defines the {@link IndexVariantInfoCodec} used to write the sorted variant batches to disk. Default is {@link IndexVariantInfoCodec#binary()}.
+     * 
+     * @param codec
+     * @return
+     */
+    public VariantInfoStreamer withCodec(IndexVariantInfoCodec codec)
+    {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Defines the level of parallelism used to sort the frames of {@link #withBatchSize(int)} variants. Default is the number of available
+     * processors.
+     * 
+     * @see #withSortExecutor(ExecutorService)
+     * @param parallelism
+     * @return
+     */
+    public VariantInfoStreamer withSortParallelism(int parallelism)
+    {
+        this.sortParallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Defines the {@link ExecutorService} on which the frames are sorted and written to disk. A {@link ForkJoinPool} is recommended, as the
+     * parallel sort within each frame runs on it as well. The executor is not shut down by the {@link VariantInfoStreamer}. By default a
+     * {@link ForkJoinPool} with the {@link #withSortParallelism(int)} is used.
+     * 
+     * @param executor
+     * @return
+     */
+    public VariantInfoStreamer withSortExecutor(ExecutorService executor)
+    {
+        this.sortExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Defines the maximum number of frames which are held in memory at once, this is also the number of frames which are sorted concurrently.
+     * Default is 2.
+     * 
+     * @param maximumNumberOfResidentFrames
+     * @return
+     */
+    public VariantInfoStreamer withMaximumNumberOfResidentFrames(int maximumNumberOfResidentFrames)
+    {
+        this.maximumNumberOfResidentFrames = Math.max(1, maximumNumberOfResidentFrames);
+        return this;
+    }
+
+    /**
+     * Defines the maximum number of batch files which are merged at once. If there are more sorted batch files, they are merged in multiple passes.
+     * Default is {@value #DEFAULT_MERGE_FAN_IN}.
+     * 
+     * @param mergeFanIn
+     * @return
+     */
+    public VariantInfoStreamer withMergeFanIn(int mergeFanIn)
+    {
+        this.mergeFanIn = Math.max(2, mergeFanIn);
+        return this;
+    }
+
+    /**
+     * Defines the read buffer size in bytes for each batch file during the merge. Default is {@value #DEFAULT_MERGE_BUFFER_SIZE}.
+     * 
+     * @param mergeBufferSize
+     * @return
+     */
+    public VariantInfoStreamer withMergeBufferSize(int mergeBufferSize)
+    {
+        this.mergeBufferSize = Math.max(1024, mergeBufferSize);
+        return this;
+    }
+
+    /**
+     * Defines the directory the sorted batch files are written to. Default is the 'ensembl/variantbatch' cache folder.
+     * 
+     * @param spillDirectory
+     * @return
+     */
+    public VariantInfoStreamer withSpillDirectory(File spillDirectory)
+    {
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    /**
+     * Defines the {@link SpillCompression} of the sorted batch files. Default is {@link SpillCompression#DEFLATE} with the fastest compression
+     * level.
+     * 
+     * @param spillCompression
+     * @return
+     */
+    public VariantInfoStreamer withSpillCompression(SpillCompression spillCompression)
+    {
+        this.spillCompression = spillCompression;
+        return this;
+    }
+
     private VariantInfoStreamer()
     {
         super();
@@ -127,73 +336,491 @@ public class VariantInfoStreamer
         ProgressCounter sortAndSinkProgressCounter = this.progressCounterContainer.newProgressCounterWithWeight("Sorting Variants", 0.3);
         ProgressCounter consumptionProgressCounter = this.progressCounterContainer.newProgressCounterWithWeight("Processing Variants", 0.5);
 
-        //
-        LOG.info("Start counting matching variants...");
-        Counter numberOfAllSourceVariants = Counter.fromZero();
-        int numberOfVariants = (int) this.createVariantsStream(species, ftpLoaderProgressCounter)
-                                         .peek(record -> numberOfAllSourceVariants.increment())
-                                         //                                         .filter(this.variantFilter)
-                                         .count();
-        LOG.info("...finished counting. Found " + numberOfVariants + " matching variants in " + numberOfAllSourceVariants.getAsLong() + " source variants.");
+        // the number of variants is only known upfront if a previous complete pass over the same source files has recorded it
+        VariantCountManifest variantCountManifest = VariantCountManifest.getInstance();
+        OptionalLong recordedNumberOfVariants = variantCountManifest.getNumberOfVariants(species, this.determineSourceKey(species));
+        int estimatedNumberOfVariants = (int) Math.min(this.variantLoadLimit, recordedNumberOfVariants.orElse(this.variantLoadLimit));
+        if (recordedNumberOfVariants.isPresent())
+        {
+            LOG.info("Expecting " + estimatedNumberOfVariants + " variants as recorded in the variant count manifest");
+            sortAndSinkProgressCounter.withMaximum(estimatedNumberOfVariants);
+        }
 
         //
+        Function<String, IndexVariantInfo> lineToVariantInfoMapper = this.createLineToVariantInfoMapper();
+        UnaryBiFunction<IndexVariantInfo> variantInfoMerger = this.createVariantInfoMerger();
+
+        // sort the variants and restore them
+        Counter numberOfSourceVariants = Counter.fromZero();
+        Consumer<? super File> progressLogger;
+        if (recordedNumberOfVariants.isPresent())
+        {
+            progressLogger = PeekUtils.newDurationProgressCounterLogger(LOG::info, estimatedNumberOfVariants)
+                                      .by(this.batchSize);
+        }
+        else
+        {
+            progressLogger = file -> LOG.info("Sorted " + numberOfSourceVariants.getAsLong() + " variants");
+        }
+        Consumer<? super File> progressIncrementer = PeekUtils.incrementCounter(sortAndSinkProgressCounter)
+                                                              .by(this.batchSize);
+        List<File> batchFiles;
+        try (Stream<IndexVariantInfo> variantInfos = this.createVariantsStream(species, ftpLoaderProgressCounter, lineToVariantInfoMapper))
+        {
+            batchFiles = this.sortAndSinkFrames(variantInfos.peek(variantInfo -> numberOfSourceVariants.increment()), this.createFrameSorter(),
+                                                this.createBatchSinkMapper(), file ->
+                                                {
+                                                    progressLogger.accept(file);
+                                                    progressIncrementer.accept(file);
+                                                });
+        }
+
+        int numberOfVariants = (int) numberOfSourceVariants.getAsLong();
+        LOG.info("Sorted " + numberOfVariants + " variants into " + batchFiles.size() + " batch files");
+        if (this.variantLoadLimit == Integer.MAX_VALUE)
+        {
+            this.determineSourceKey(species)
+                .ifPresent(sourceKey -> variantCountManifest.putNumberOfVariants(species, sourceKey, numberOfVariants));
+        }
         sortAndSinkProgressCounter.withMaximum(numberOfVariants);
         consumptionProgressCounter.withMaximum(numberOfVariants);
 
-        //
-        Function<VCFRecord, IndexVariantInfo> variationVcfRecordToVariantInfoMapper = this.createVCFRecordToVariantInfoMapper();
-        UnaryBiFunction<IndexVariantInfo> variantInfoMerger = this.createVariantInfoMerger();
+        return this.mergeBatchFiles(batchFiles, variantInfoMerger)
+                   .peek(PeekUtils.incrementCounter(consumptionProgressCounter));
+    }
 
-        // sort the variants and restore them
-        AtomicInteger fileIndexCounter = new AtomicInteger();
-        return StreamUtils.merger()
-                          .ofSorted()
-                          .unary()
-                          .withIdentityFunction(IndexVariantInfo.class, String.class, IndexVariantInfo::getRsId)
-                          .withSourceStreams(StreamUtils.framedAsList(this.batchSize, this.createVariantsStream(species, Counter.fromZero()
-                                                                                                                                .asProgressCounter()))
-                                                        .map(this.createFrameSorter(variationVcfRecordToVariantInfoMapper))
-                                                        .map(VariantInfoBatch::new)
-                                                        .map(this.createBatchSinkToStreamMapper(fileIndexCounter))
-                                                        .peek(PeekUtils.newDurationProgressCounterLogger(LOG::info, numberOfVariants)
-                                                                       .by(this.batchSize))
-                                                        .peek(PeekUtils.incrementCounter(sortAndSinkProgressCounter)
-                                                                       .by(this.batchSize))
-                                                        .collect(Collectors.toList()))
-                          .reduce(variantInfoMerger)
-                          .peek(PeekUtils.incrementCounter(consumptionProgressCounter));
-    }
-
-    private Function<List<VCFRecord>, List<IndexVariantInfo>> createFrameSorter(Function<VCFRecord, IndexVariantInfo> variationVcfRecordToVariantInfoMapper)
+    /**
+     * Merges the sorted batch files into a single sorted {@link Stream} where all records with the same rsId are reduced into one. At most
+     * {@link #withMergeFanIn(int)} batch files are open at once, if there are more batch files they are merged into fewer intermediate batch files
+     * in multiple passes beforehand. Each batch file is deleted as soon as it has been read completely or its {@link Stream} is closed. <br>
+     * <br>
+     * If an intermediate merge pass fails, the batch files not yet merged and the intermediate batch files written so far are deleted before the
+     * failure is rethrown.
+     * 
+     * @param batchFiles
+     * @param variantInfoMerger
+     * @return
+     */
+    Stream<IndexVariantInfo> mergeBatchFiles(List<File> batchFiles, UnaryBiFunction<IndexVariantInfo> variantInfoMerger)
+    {
+        List<File> currentBatchFiles = batchFiles;
+        List<File> mergedBatchFiles = new ArrayList<>();
+        try
+        {
+            for (int pass = 1; currentBatchFiles.size() > this.mergeFanIn; pass++)
+            {
+                LOG.info("Merge pass " + pass + " of " + currentBatchFiles.size() + " batch files with a fan in of " + this.mergeFanIn);
+                mergedBatchFiles = new ArrayList<>();
+                for (int index = 0; index < currentBatchFiles.size(); index += this.mergeFanIn)
+                {
+                    List<File> group = currentBatchFiles.subList(index, Math.min(currentBatchFiles.size(), index + this.mergeFanIn));
+                    try (Stream<IndexVariantInfo> mergedGroup = this.createMergedStream(group, variantInfoMerger))
+                    {
+                        mergedBatchFiles.add(this.writeBatchFile(mergedGroup.iterator()));
+                    }
+                }
+                currentBatchFiles = mergedBatchFiles;
+            }
+        }
+        catch (RuntimeException e)
+        {
+            Set<File> remainingBatchFiles = new LinkedHashSet<>(currentBatchFiles);
+            remainingBatchFiles.addAll(mergedBatchFiles);
+            this.deleteBatchFiles(remainingBatchFiles);
+            LOG.info("Deleted the remaining variant batch files of the failed merge");
+            throw e;
+        }
+        return this.createMergedStream(currentBatchFiles, variantInfoMerger);
+    }
+
+    private Stream<IndexVariantInfo> createMergedStream(List<File> batchFiles, UnaryBiFunction<IndexVariantInfo> variantInfoMerger)
+    {
+        MergingSpliterator spliterator = new MergingSpliterator(batchFiles.stream()
+                                                                          .map(file -> new BatchFileSpliterator(file, this.codec, this.spillCompression,
+                                                                                                                   this.mergeBufferSize))
+                                                                          .collect(Collectors.toList()),
+                                                                RS_ID_COMPARATOR, variantInfoMerger);
+        return StreamSupport.stream(spliterator, false)
+                            .onClose(spliterator::close);
+    }
+
+    /**
+     * Splits the given records into frames of the batch size, which are sorted and written to batch files concurrently on the sort executor. At
+     * most {@link #withMaximumNumberOfResidentFrames(int)} frames are held in memory at once, further frames are only read from the records if a
+     * previous frame has been written to disk. The returned batch files are in the order of the frames. <br>
+     * <br>
+     * If reading the records or any frame fails, the frames still running are awaited, all batch files written so far are deleted and the
+     * records {@link Stream} is closed before the failure is rethrown.
+     * 
+     * @param records
+     * @param frameSorter
+     * @param batchSink
+     * @param frameListener
+     * @return
+     */
+    List<File> sortAndSinkFrames(Stream<IndexVariantInfo> variantInfos, Function<List<IndexVariantInfo>, List<IndexVariantInfo>> frameSorter,
+                                 Function<List<IndexVariantInfo>, File> batchSink, Consumer<File> frameListener)
+    {
+        ExecutorService executor = Optional.ofNullable(this.sortExecutor)
+                                           .orElseGet(() -> new ForkJoinPool(this.sortParallelism));
+        Deque<CompletableFuture<File>> pendingFrames = new ArrayDeque<>();
+        List<File> batchFiles = new ArrayList<>();
+        boolean completed = false;
+        try
+        {
+            Semaphore residentFrames = new Semaphore(this.maximumNumberOfResidentFrames);
+            AtomicBoolean failed = new AtomicBoolean(false);
+
+            Iterator<List<IndexVariantInfo>> frames = StreamUtils.framedAsList(this.batchSize, variantInfos)
+                                                                 .iterator();
+            while (!failed.get())
+            {
+                residentFrames.acquireUninterruptibly();
+                if (!frames.hasNext())
+                {
+                    residentFrames.release();
+                    break;
+                }
+
+                List<IndexVariantInfo> frame = frames.next();
+                CompletableFuture<File> pendingFrame = CompletableFuture.supplyAsync(() -> batchSink.apply(frameSorter.apply(frame)), executor);
+                pendingFrames.add(pendingFrame.whenComplete((file, exception) ->
+                {
+                    failed.compareAndSet(false, exception != null);
+                    residentFrames.release();
+                }));
+
+                while (!pendingFrames.isEmpty() && pendingFrames.peekFirst()
+                                                                .isDone())
+                {
+                    this.completeFrame(pendingFrames.pollFirst(), batchFiles, frameListener);
+                }
+            }
+
+            while (!pendingFrames.isEmpty())
+            {
+                this.completeFrame(pendingFrames.pollFirst(), batchFiles, frameListener);
+            }
+            completed = true;
+            return batchFiles;
+        }
+        finally
+        {
+            if (!completed)
+            {
+                this.discardFrames(pendingFrames, batchFiles);
+                variantInfos.close();
+            }
+            if (this.sortExecutor == null)
+            {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private void completeFrame(CompletableFuture<File> pendingFrame, List<File> batchFiles, Consumer<File> frameListener)
+    {
+        try
+        {
+            File file = pendingFrame.join();
+            batchFiles.add(file);
+            frameListener.accept(file);
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the given frames which are still running and deletes their batch files together with the given batch files
+     * 
+     * @param pendingFrames
+     * @param batchFiles
+     */
+    private void discardFrames(Deque<CompletableFuture<File>> pendingFrames, List<File> batchFiles)
+    {
+        for (CompletableFuture<File> pendingFrame : pendingFrames)
+        {
+            try
+            {
+                batchFiles.add(pendingFrame.join());
+            }
+            catch (CompletionException | CancellationException e)
+            {
+                // the failure of this frame is already reported or superseded by the original failure
+            }
+        }
+        pendingFrames.clear();
+
+        this.deleteBatchFiles(batchFiles);
+        LOG.info("Deleted " + batchFiles.size() + " variant batch files of the failed sort");
+        batchFiles.clear();
+    }
+
+    private void deleteBatchFiles(Collection<File> batchFiles)
+    {
+        for (File batchFile : batchFiles)
+        {
+            if (batchFile != null && batchFile.exists() && !batchFile.delete())
+            {
+                LOG.warn("Unable to delete variant batch file: " + batchFile);
+            }
+        }
+    }
+
+    private Function<List<IndexVariantInfo>, List<IndexVariantInfo>> createFrameSorter()
     {
         return batch ->
         {
             LOG.info("Sorting batch of size: " + batch.size());
-            return batch.stream()
-                        .map(variationVcfRecordToVariantInfoMapper)
-                        .sorted(ComparatorUtils.builder()
-                                               .of(IndexVariantInfo.class)
-                                               .with(IndexVariantInfo::getRsId)
-                                               .build())
-                        .collect(Collectors.toList());
+            IndexVariantInfo[] variantInfos = batch.toArray(new IndexVariantInfo[batch.size()]);
+            Arrays.parallelSort(variantInfos, RS_ID_COMPARATOR);
+            return Arrays.asList(variantInfos);
         };
     }
 
-    private Function<VariantInfoBatch, Stream<IndexVariantInfo>> createBatchSinkToStreamMapper(AtomicInteger fileIndexCounter)
+    private Function<List<IndexVariantInfo>, File> createBatchSinkMapper()
     {
         return batch ->
         {
-            LOG.info("Sinking batch of size: " + batch.getVariantInfos()
-                                                      .size());
-            File file = new File(CacheUtils.createCacheFolder("ensembl/variantbatch"), fileIndexCounter.getAndIncrement() + ".json");
-            return FileUtils.toFileSinkInputStreamSupplier(file)
-                            .accept(JSONHelper.writerSerializer(VariantInfoBatch.class)
-                                              .wrapObject(batch))
-                            .toStream(JSONHelper.readerDeserializer(IndexVariantInfo.class)
-                                                .forArray());
+            LOG.info("Sinking batch of size: " + batch.size());
+            return this.writeBatchFile(batch.iterator());
         };
     }
 
+    private File newBatchFile() throws IOException
+    {
+        File spillDirectory = Optional.ofNullable(this.spillDirectory)
+                                      .orElseGet(() -> CacheUtils.createCacheFolder("ensembl/variantbatch"));
+        spillDirectory.mkdirs();
+        return Files.createTempFile(spillDirectory.toPath(), "variants-", ".bin")
+                    .toFile();
+    }
+
+    File writeBatchFile(Iterator<IndexVariantInfo> variantInfos)
+    {
+        File file = null;
+        Deflater deflater = this.spillCompression == SpillCompression.DEFLATE ? new Deflater(Deflater.BEST_SPEED) : null;
+        try
+        {
+            file = this.newBatchFile();
+            OutputStream fileOutputStream = new FileOutputStream(file);
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(deflater != null
+                    ? new DeflaterOutputStream(fileOutputStream, deflater, SPILL_FILE_BUFFER_SIZE)
+                    : fileOutputStream, SPILL_FILE_BUFFER_SIZE)))
+            {
+                while (variantInfos.hasNext())
+                {
+                    output.writeBoolean(true);
+                    this.codec.write(variantInfos.next(), output);
+                }
+                output.writeBoolean(false);
+            }
+            return file;
+        }
+        catch (IOException e)
+        {
+            if (file != null)
+            {
+                file.delete();
+            }
+            throw new UncheckedIOException("Unable to write variant batch file: " + file, e);
+        }
+        catch (RuntimeException e)
+        {
+            if (file != null)
+            {
+                file.delete();
+            }
+            throw e;
+        }
+        finally
+        {
+            if (deflater != null)
+            {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Merges multiple sorted sources using a heap of their current head records, consecutive records which are equal by the comparator are
+     * reduced with the merger
+     * 
+     * @author omnaest
+     */
+    private static class MergingSpliterator extends Spliterators.AbstractSpliterator<IndexVariantInfo>
+    {
+        private final List<BatchFileSpliterator>        sources;
+        private final Comparator<IndexVariantInfo>      comparator;
+        private final UnaryBiFunction<IndexVariantInfo> merger;
+
+        private PriorityQueue<MergeHead> heads;
+
+        private static class MergeHead
+        {
+            private IndexVariantInfo     variantInfo;
+            private BatchFileSpliterator source;
+
+            public MergeHead(BatchFileSpliterator source)
+            {
+                super();
+                this.source = source;
+            }
+
+            public boolean advance()
+            {
+                return this.source.tryAdvance(variantInfo -> this.variantInfo = variantInfo);
+            }
+        }
+
+        public MergingSpliterator(List<BatchFileSpliterator> sources, Comparator<IndexVariantInfo> comparator,
+                                  UnaryBiFunction<IndexVariantInfo> merger)
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.sources = sources;
+            this.comparator = comparator;
+            this.merger = merger;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super IndexVariantInfo> action)
+        {
+            if (this.heads == null)
+            {
+                this.heads = new PriorityQueue<>(Math.max(1, this.sources.size()), (head1, head2) -> this.comparator.compare(head1.variantInfo,
+                                                                                                                         head2.variantInfo));
+                for (BatchFileSpliterator source : this.sources)
+                {
+                    this.offerNext(new MergeHead(source));
+                }
+            }
+
+            MergeHead head = this.heads.poll();
+            if (head == null)
+            {
+                return false;
+            }
+
+            IndexVariantInfo variantInfo = head.variantInfo;
+            this.offerNext(head);
+            while (!this.heads.isEmpty() && this.comparator.compare(variantInfo, this.heads.peek().variantInfo) == 0)
+            {
+                MergeHead equalHead = this.heads.poll();
+                variantInfo = this.merger.apply(variantInfo, equalHead.variantInfo);
+                this.offerNext(equalHead);
+            }
+
+            action.accept(variantInfo);
+            return true;
+        }
+
+        private void offerNext(MergeHead head)
+        {
+            if (head.advance())
+            {
+                this.heads.add(head);
+            }
+        }
+
+        public void close()
+        {
+            this.sources.forEach(BatchFileSpliterator::close);
+        }
+    }
+
+    /**
+     * Reads the records of a batch file lazily, the file is opened with the first read and closed and deleted at its end or with {@link #close()}
+     * 
+     * @author omnaest
+     */
+    private static class BatchFileSpliterator extends Spliterators.AbstractSpliterator<IndexVariantInfo>
+    {
+        private final File                  file;
+        private final IndexVariantInfoCodec codec;
+        private final SpillCompression      compression;
+        private final int                   bufferSize;
+
+        private DataInputStream input;
+        private boolean         closed = false;
+
+        public BatchFileSpliterator(File file, IndexVariantInfoCodec codec, SpillCompression compression, int bufferSize)
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.file = file;
+            this.codec = codec;
+            this.compression = compression;
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super IndexVariantInfo> action)
+        {
+            if (this.closed)
+            {
+                return false;
+            }
+
+            try
+            {
+                if (this.input == null)
+                {
+                    InputStream fileInputStream = new BufferedInputStream(new FileInputStream(this.file), this.bufferSize);
+                    this.input = new DataInputStream(this.compression == SpillCompression.DEFLATE
+                            ? new BufferedInputStream(new InflaterInputStream(fileInputStream), SPILL_FILE_BUFFER_SIZE)
+                            : fileInputStream);
+                }
+
+                if (this.input.readBoolean())
+                {
+                    action.accept(this.codec.read(this.input));
+                    return true;
+                }
+                else
+                {
+                    this.close();
+                    return false;
+                }
+            }
+            catch (IOException e)
+            {
+                this.close();
+                throw new UncheckedIOException("Unable to read variant batch file: " + this.file, e);
+            }
+        }
+
+        public void close()
+        {
+            if (this.closed)
+            {
+                return;
+            }
+
+            this.closed = true;
+            if (this.input != null)
+            {
+                try
+                {
+                    this.input.close();
+                }
+                catch (IOException e)
+                {
+                    LOG.warn("Unable to close variant batch file: " + this.file, e);
+                }
+                this.input = null;
+            }
+            if (!this.file.delete())
+            {
+                LOG.warn("Unable to delete variant batch file: " + this.file);
+            }
+        }
+    }
+
     private UnaryBiFunction<IndexVariantInfo> createVariantInfoMerger()
     {
         return (info1, info2) ->
@@ -228,73 +855,161 @@ public class VariantInfoStreamer
         };
     }
 
-    private Function<VCFRecord, IndexVariantInfo> createVCFRecordToVariantInfoMapper()
+    /**
+     * Maps a raw variation vcf data line to an {@link IndexVariantInfo} by projecting only the id and the required INFO fields
+     * 
+     * @see VariantInfoProjectionUtils
+     * @return
+     */
+    private Function<String, IndexVariantInfo> createLineToVariantInfoMapper()
     {
-        return record ->
+        return line ->
         {
-            IndexVariantInfo variantInfo = new IndexVariantInfo();
-
-            variantInfo.setRsId(record.getId());
-
-            variantInfo.setMaf(record.getInfoValue(AdditionalInfo.MAF)
-                                     .orElse(variantInfo.getMaf()));
-            variantInfo.setConsequence(record.getInfoTokenGroups(AdditionalInfo.CSQ)
-                                             .map(group -> group.getValueAt(1))
-                                             .filter(Optional::isPresent)
-                                             .map(Optional::get)
-                                             .map(VariantConsequence::of)
-                                             .filter(Optional::isPresent)
-                                             .map(Optional::get)
-                                             .sorted(ComparatorUtils.comparatorFunction(VariantConsequence::getSeverity))
-                                             .findFirst()
-                                             .map(VariantConsequence::getMatchStr)
-                                             .orElse(variantInfo.getConsequence()));
-
-            if (record.getInfoExists(AdditionalInfo.CLIN_risk_factor))
-            {
-                variantInfo.addClinicalSignifance(ClinicalSignificance.RISK_FACTOR.getMatchStr());
-            }
-            if (record.getInfoExists(AdditionalInfo.CLIN_benign))
+            String rsId = VariantInfoProjectionUtils.readId(line);
+            if (rsId == null)
             {
-                variantInfo.addClinicalSignifance(ClinicalSignificance.BENIGN.getMatchStr());
+                return null;
             }
 
+            IndexVariantInfo variantInfo = new IndexVariantInfo();
+            variantInfo.setRsId(rsId);
+            VariantInfoProjectionUtils.projectInfo(line, variantInfo);
             return variantInfo;
         };
     }
 
-    private Stream<VCFRecord> createVariantsStream(String species, ProgressCounter progressCounter)
-    {
-        List<VariationVCFResource> resources = StreamUtils.concat(EnsemblFTPUtils.load()
-                                                                                 .withCache(this.cache)
-                                                                                 .variationVCFFiles()
-                                                                                 .current()
-                                                                                 .forSpecies(species)
-                                                                                 .forChromosomes()
-                                                                                 .map(MapperUtils.identityCast(VariationVCFResource.class)),
-                                                                  Stream.of(EnsemblFTPUtils.load()
-                                                                                           .withCache(this.cache)
-                                                                                           .variationVCFFiles()
-                                                                                           .current()
-                                                                                           .forSpecies(species)
-                                                                                           .forClinicallyAssociated(),
-                                                                            EnsemblFTPUtils.load()
-                                                                                           .withCache(this.cache)
-                                                                                           .variationVCFFiles()
-                                                                                           .current()
-                                                                                           .forSpecies(species)
-                                                                                           .forPhenotypeAssociated()))
+    private Optional<String> determineSourceKey(String species)
+    {
+        return VariantCountManifest.determineSourceKey(this.createFTPLoader()
+                                                           .variationVCFFiles()
+                                                           .current()
+                                                           .forSpecies(species));
+    }
+
+    private Stream<IndexVariantInfo> createVariantsStream(String species, ProgressCounter progressCounter, Function<String, IndexVariantInfo> lineMapper)
+    {
+        if (this.numberOfChromosomeLoadingWorkers > 1)
+        {
+            return this.createParallelVariantsStream(species, progressCounter, lineMapper);
+        }
+
+        int numberOfParsingWorkers = this.determineNumberOfThreadsPerFile(this.numberOfParsingWorkers);
+
+        List<VariationVCFResource> resources = StreamUtils.concat(this.createFTPLoader()
+                                                                      .variationVCFFiles()
+                                                                      .current()
+                                                                      .forSpecies(species)
+                                                                      .forChromosomes()
+                                                                      .map(MapperUtils.identityCast(VariationVCFResource.class)),
+                                                                  Stream.of(this.createFTPLoader()
+                                                                                .variationVCFFiles()
+                                                                                .current()
+                                                                                .forSpecies(species)
+                                                                                .forClinicallyAssociated(),
+                                                                            this.createFTPLoader()
+                                                                                .variationVCFFiles()
+                                                                                .current()
+                                                                                .forSpecies(species)
+                                                                                .forPhenotypeAssociated()))
                                                           .collect(Collectors.toList());
         progressCounter.withMaximum(resources.size());
         return resources.stream()
                         .peek(PeekUtils.incrementCounter(progressCounter))
                         .flatMap(resource -> resource.withCacheClearanceAfterRead(true)
                                                      .asParsedVCF()
-                                                     .getRecords()
+                                                     .getLines(lineMapper, numberOfParsingWorkers)
                                                      .limit(this.variantLoadLimit))
                         .limit(this.variantLoadLimit);
     }
 
+    /**
+     * The chromosome files are downloaded and parsed concurrently in arbitrary order, followed by the other resources
+     * 
+     * @param species
+     * @param progressCounter
+     * @return
+     */
+    private Stream<IndexVariantInfo> createParallelVariantsStream(String species, ProgressCounter progressCounter,
+                                                                  Function<String, IndexVariantInfo> lineMapper)
+    {
+        List<VariationVCFResource> resources = Arrays.asList(this.createFTPLoader()
+                                                                 .variationVCFFiles()
+                                                                 .current()
+                                                                 .forSpecies(species)
+                                                                 .forClinicallyAssociated(),
+                                                             this.createFTPLoader()
+                                                                 .variationVCFFiles()
+                                                                 .current()
+                                                                 .forSpecies(species)
+                                                                 .forPhenotypeAssociated());
+        progressCounter.withMaximum(resources.size() + 1);
+        int numberOfParsingWorkers = this.determineNumberOfThreadsPerFile(this.numberOfParsingWorkers);
+        return Stream.concat(Stream.of(this.createFTPLoader()
+                                           .variationVCFFiles()
+                                           .current()
+                                           .forSpecies(species))
+                                   .peek(PeekUtils.incrementCounter(progressCounter))
+                                   .flatMap(loader -> loader.forChromosomeRecordsInParallel(this.numberOfChromosomeLoadingWorkers, RecordOrder.UNORDERED,
+                                                                                            accessor -> accessor.getLines(lineMapper,
+                                                                                                                          numberOfParsingWorkers))),
+                             resources.stream()
+                                      .peek(PeekUtils.incrementCounter(progressCounter))
+                                      .flatMap(resource -> resource.withCacheClearanceAfterRead(true)
+                                                                   .asParsedVCF()
+                                                                   .getLines(lineMapper, numberOfParsingWorkers)))
+                     .limit(this.variantLoadLimit);
+    }
+
+    /**
+     * Defines the number of workers which download and parse the chromosome variation files concurrently. Default is 1, which reads the files
+     * one after another. <br>
+     * <br>
+     * Each file which is read concurrently has its own line reader thread, parsing workers and decompression threads. Unless they are defined
+     * explicitly, the parsing workers and decompression threads per file default to the available processors divided by the number of loading
+     * workers. So a load with n processors and m loading workers uses at most about 2 * n + 2 * m threads in total, and holds at most 4 queued
+     * line chunks and 4 inflated blocks per parsing worker and decompression thread.
+     * 
+     * @see #withNumberOfParsingWorkers(int)
+     * @see #withNumberOfDecompressionThreads(int)
+     * @see EnsembleVariationVCFLoaderWithVersionAndHomoSapiensSpecies#forChromosomeRecordsInParallel(int, RecordOrder)
+     * @param numberOfWorkers
+     * @return
+     */
+    public VariantInfoStreamer withNumberOfChromosomeLoadingWorkers(int numberOfWorkers)
+    {
+        this.numberOfChromosomeLoadingWorkers = Math.max(1, numberOfWorkers);
+        return this;
+    }
+
+    /**
+     * Defines the number of workers which parse the lines of each variation file and map them to {@link IndexVariantInfo}s, while a separate
+     * thread reads the lines. Default is the number of available processors divided by the
+     * {@link #withNumberOfChromosomeLoadingWorkers(int)}, 1 parses the records on the reading thread.
+     * 
+     * @see VCFResourceAccessor#getLines(Function, int)
+     * @param numberOfWorkers
+     * @return
+     */
+    public VariantInfoStreamer withNumberOfParsingWorkers(int numberOfWorkers)
+    {
+        this.numberOfParsingWorkers = Math.max(1, numberOfWorkers);
+        return this;
+    }
+
+    /**
+     * Defines the number of threads which inflate the blocks of each variation file. Default is the number of available processors divided by
+     * the {@link #withNumberOfChromosomeLoadingWorkers(int)}, 1 inflates the blocks on the reading thread.
+     * 
+     * @see EnsemblFTPLoader#withNumberOfDecompressionThreads(int)
+     * @param numberOfDecompressionThreads
+     * @return
+     */
+    public VariantInfoStreamer withNumberOfDecompressionThreads(int numberOfDecompressionThreads)
+    {
+        this.numberOfDecompressionThreads = Math.max(1, numberOfDecompressionThreads);
+        return this;
+    }
+
     public VariantInfoStreamer withMaximumNumberOfVariants(int maxiumum)
     {
         this.variantLoadLimit = maxiumum;
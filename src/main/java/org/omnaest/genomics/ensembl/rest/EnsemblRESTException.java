@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.rest;
+
+/**
+ * Signals that the Ensembl REST server answered a request with an http error status
+ * 
+ * @author omnaest
+ */
+public class EnsemblRESTException extends RuntimeException
+{
+    private static final long serialVersionUID = -6016046404861322845L;
+
+    private final int  statusCode;
+    private final long retryAfterInMilliseconds;
+
+    public EnsemblRESTException(String url, int statusCode, long retryAfterInMilliseconds, String responseBody)
+    {
+        super("Request failed with http status " + statusCode + ": " + url + " " + responseBody);
+        this.statusCode = statusCode;
+        this.retryAfterInMilliseconds = retryAfterInMilliseconds;
+    }
+
+    public int getStatusCode()
+    {
+        return this.statusCode;
+    }
+
+    /**
+     * Returns the duration of the Retry-After header of the response in milliseconds, or -1 if the server did not provide one
+     * 
+     * @return
+     */
+    public long getRetryAfterInMilliseconds()
+    {
+        return this.retryAfterInMilliseconds;
+    }
+
+}
@@ -35,19 +35,41 @@ package org.omnaest.genomics.ensembl.rest;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.omnaest.genomics.ensembl.EnsemblUtils;
 import org.omnaest.genomics.ensembl.domain.raw.ExonRegions;
 import org.omnaest.genomics.ensembl.domain.raw.ExternalXRefs;
 import org.omnaest.genomics.ensembl.domain.raw.Lookup;
+import org.omnaest.genomics.ensembl.domain.raw.LookupBatch;
+import org.omnaest.genomics.ensembl.domain.raw.LookupBatchRequest;
 import org.omnaest.genomics.ensembl.domain.raw.RegionMappings;
 import org.omnaest.genomics.ensembl.domain.raw.Sequence;
+import org.omnaest.genomics.ensembl.domain.raw.SequenceBatchRequest;
 import org.omnaest.genomics.ensembl.domain.raw.Sequences;
 import org.omnaest.genomics.ensembl.domain.raw.SpeciesList;
 import org.omnaest.genomics.ensembl.domain.raw.Transcripts;
@@ -56,7 +78,6 @@ import org.omnaest.genomics.ensembl.domain.raw.VariantInfoBatch;
 import org.omnaest.genomics.ensembl.domain.raw.VariantInfoBatchRequest;
 import org.omnaest.genomics.ensembl.domain.raw.Variations;
 import org.omnaest.genomics.ensembl.domain.raw.XRefs;
-import org.omnaest.utils.MapUtils;
 import org.omnaest.utils.PredicateUtils;
 import org.omnaest.utils.StreamUtils;
 import org.omnaest.utils.cache.Cache;
@@ -74,6 +95,83 @@ import org.omnaest.utils.rest.client.RestClient.Proxy;
  */
 public class EnsemblRESTUtils
 {
+    public static final int DEFAULT_CONNECTION_POOL_SIZE = 8;
+    public static final int DEFAULT_VARIANT_BATCH_SIZE   = 100;
+    public static final int MAXIMUM_VARIANT_BATCH_SIZE   = 200;
+    public static final int DEFAULT_BATCH_PARALLELISM    = 4;
+    public static final int MAXIMUM_LOOKUP_BATCH_SIZE    = 1000;
+    public static final int MAXIMUM_SEQUENCE_BATCH_SIZE  = 50;
+
+    private static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int MAXIMUM_THROTTLE_RETRIES      = 10;
+
+    /**
+     * Sequence types supported by the Ensembl sequence endpoint
+     * 
+     * @author omnaest
+     */
+    public static enum SequenceType
+    {
+        GENOMIC("genomic"), CDNA("cdna"), CDS("cds"), PROTEIN("protein");
+
+        private String key;
+
+        private SequenceType(String key)
+        {
+            this.key = key;
+        }
+
+        public String getKey()
+        {
+            return this.key;
+        }
+    }
+
+    /**
+     * Counters of the GET requests of an {@link EnsembleRESTAccessor}
+     * 
+     * @see EnsembleRESTAccessor#getRequestMetrics()
+     * @author omnaest
+     */
+    public static class RequestMetrics
+    {
+        private long numberOfRequests;
+        private long numberOfCollapsedRequests;
+
+        public RequestMetrics(long numberOfRequests, long numberOfCollapsedRequests)
+        {
+            super();
+            this.numberOfRequests = numberOfRequests;
+            this.numberOfCollapsedRequests = numberOfCollapsedRequests;
+        }
+
+        /**
+         * Returns the number of GET requests made to the accessor, including the collapsed ones
+         * 
+         * @return
+         */
+        public long getNumberOfRequests()
+        {
+            return this.numberOfRequests;
+        }
+
+        /**
+         * Returns the number of GET requests which did not execute their own call but joined an identical call already in flight
+         * 
+         * @return
+         */
+        public long getNumberOfCollapsedRequests()
+        {
+            return this.numberOfCollapsedRequests;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "RequestMetrics [numberOfRequests=" + this.numberOfRequests + ", numberOfCollapsedRequests=" + this.numberOfCollapsedRequests + "]";
+        }
+
+    }
 
     public static interface EnsembleRESTAccessor
     {
@@ -84,6 +182,71 @@ public class EnsemblRESTUtils
 
         EnsembleRESTAccessor usingCache(Cache cache);
 
+        /**
+         * Defines the maximum number of concurrent requests which share the single http client of this accessor and therefore the number of
+         * keep-alive connections held open to the server. Default is {@value EnsemblRESTUtils#DEFAULT_CONNECTION_POOL_SIZE}
+         * 
+         * @param connectionPoolSize
+         * @return
+         */
+        EnsembleRESTAccessor withConnectionPoolSize(int connectionPoolSize);
+
+        /**
+         * Defines the retries for requests which failed with a server error (http status 5xx) or without a response. Other client errors are not
+         * retried. Throttled requests (http status 429) are not counted as failures, they are retried after the pause given by the
+         * {@link RateLimitScheduler}. Default is 12 retries with a 15 seconds delay.
+         * 
+         * @param retries
+         * @param duration
+         * @param timeUnit
+         * @return
+         */
+        EnsembleRESTAccessor withRetry(int retries, long duration, TimeUnit timeUnit);
+
+        /**
+         * Defines the {@link RateLimitScheduler} which paces the requests of this accessor. Default is {@link RateLimitScheduler#getShared()}
+         * 
+         * @param rateLimitScheduler
+         * @return
+         */
+        EnsembleRESTAccessor withRateLimitScheduler(RateLimitScheduler rateLimitScheduler);
+
+        /**
+         * Defines the number of variant ids which are resolved by a single batch request of {@link #getVariantDetails(String, Stream)}. The batch
+         * size is capped to {@value EnsemblRESTUtils#MAXIMUM_VARIANT_BATCH_SIZE} which is the maximum Ensembl accepts. Default is
+         * {@value EnsemblRESTUtils#DEFAULT_VARIANT_BATCH_SIZE}
+         * 
+         * @param variantBatchSize
+         * @return
+         */
+        EnsembleRESTAccessor withVariantBatchSize(int variantBatchSize);
+
+        /**
+         * Defines the number of batch requests which are in flight at the same time. Default is {@value EnsemblRESTUtils#DEFAULT_BATCH_PARALLELISM}
+         * 
+         * @param batchParallelism
+         * @return
+         */
+        EnsembleRESTAccessor withBatchParallelism(int batchParallelism);
+
+        /**
+         * If set to true, concurrent GET requests of the same url share a single call and its deserialized result instead of each executing their
+         * own call. Default is true.
+         * 
+         * @see #getRequestMetrics()
+         * @param requestCoalescing
+         * @return
+         */
+        EnsembleRESTAccessor withRequestCoalescing(boolean requestCoalescing);
+
+        /**
+         * Returns the {@link RequestMetrics} which count the number of requests and how many of them were collapsed into an identical request in
+         * flight
+         * 
+         * @return
+         */
+        RequestMetrics getRequestMetrics();
+
         XRefs getXRefs(String species, String symbol);
 
         XRefs getXRefs(String id);
@@ -142,6 +305,31 @@ public class EnsemblRESTUtils
          */
         Lookup getLookUp(String id);
 
+        /**
+         * Returns the lookups of the given ids using batch requests of at most {@value EnsemblRESTUtils#MAXIMUM_LOOKUP_BATCH_SIZE} ids each. Ids
+         * which are unknown to Ensembl are not contained in the returned {@link Map}.
+         * 
+         * @see #getLookUp(String)
+         * @see #withBatchParallelism(int)
+         * @param ids
+         * @return
+         */
+        Map<String, Lookup> getLookUps(Collection<String> ids);
+
+        /**
+         * Returns the sequences of the given type for all given ids using batch requests of at most
+         * {@value EnsemblRESTUtils#MAXIMUM_SEQUENCE_BATCH_SIZE} ids each. Multiple sequences per id are returned, e.g. the protein sequences of
+         * all transcripts of a gene, which can be assigned to their id via {@link Sequence#getQuery()}.
+         * 
+         * @see #getDNASequence(String)
+         * @see #getCodingDNASequence(String)
+         * @see #getProteinSequences(String)
+         * @param ids
+         * @param sequenceType
+         * @return
+         */
+        Sequences getSequences(Collection<String> ids, SequenceType sequenceType);
+
         ExternalXRefs getXRefsForExternalDatabase(String id, String externalDatabase);
 
         ExternalXRefs getXRefsForExternalDatabase(String id);
@@ -166,6 +354,124 @@ public class EnsemblRESTUtils
 
         Map<String, VariantInfo> getVariantDetails(String species, Stream<String> variantIds);
 
+        /**
+         * Similar to {@link #getVariantDetails(String, Stream)} but returns the resolved variants as soon as their batch request has finished. The
+         * variant ids are pulled lazily from the given {@link Stream}, so only the batches in flight and the current batch are held in memory. <br>
+         * <br>
+         * The returned {@link Stream} should be closed if it is not fully consumed.
+         * 
+         * @see #withBatchParallelism(int)
+         * @see #withVariantBatchSize(int)
+         * @param species
+         * @param variantIds
+         * @return variant id and {@link VariantInfo} pairs in the order the batches finish
+         */
+        Stream<BiElement<String, VariantInfo>> streamVariantDetails(String species, Stream<String> variantIds);
+
+    }
+
+    /**
+     * Asynchronous counterpart of the {@link EnsembleRESTAccessor}. Every method returns immediately with a {@link CompletableFuture} and the
+     * requests are executed by a bounded pool of worker threads, which limits the number of requests in flight.
+     * 
+     * @see EnsemblRESTUtils#getAsyncInstance()
+     * @author omnaest
+     */
+    public static interface EnsembleRESTAsyncAccessor
+    {
+        EnsembleRESTAsyncAccessor withBaseUrl(String baseUrl);
+
+        EnsembleRESTAsyncAccessor withProxy(Proxy proxy);
+
+        EnsembleRESTAsyncAccessor usingCache(Cache cache);
+
+        /**
+         * Defines the maximum number of requests which are executed at the same time, further requests are queued. The connection pool size of the
+         * underlying {@link EnsembleRESTAccessor} is set to the same number. Default is {@value EnsemblRESTUtils#DEFAULT_CONNECTION_POOL_SIZE}
+         * 
+         * @param maximumInFlightRequests
+         * @return
+         */
+        EnsembleRESTAsyncAccessor withMaximumInFlightRequests(int maximumInFlightRequests);
+
+        /**
+         * Returns the underlying blocking {@link EnsembleRESTAccessor}
+         * 
+         * @return
+         */
+        EnsembleRESTAccessor asBlocking();
+
+        CompletableFuture<XRefs> getXRefs(String species, String symbol);
+
+        CompletableFuture<XRefs> getXRefs(String id);
+
+        CompletableFuture<SpeciesList> getSpecies();
+
+        /**
+         * @see EnsembleRESTAccessor#getDNASequence(String)
+         * @param id
+         * @return
+         */
+        CompletableFuture<Sequence> getDNASequence(String id);
+
+        /**
+         * @see EnsembleRESTAccessor#getCodingDNASequence(String)
+         * @param id
+         * @return
+         */
+        CompletableFuture<Sequences> getCodingDNASequence(String id);
+
+        /**
+         * @see EnsembleRESTAccessor#getProteinSequences(String)
+         * @param id
+         * @return
+         */
+        CompletableFuture<Sequences> getProteinSequences(String id);
+
+        CompletableFuture<Variations> getVariations(String id);
+
+        CompletableFuture<Transcripts> getTranscripts(String id);
+
+        CompletableFuture<ExonRegions> getExonRegions(String id);
+
+        /**
+         * @see EnsembleRESTAccessor#getRegionMappings(String, String, String, String, long, long)
+         */
+        CompletableFuture<RegionMappings> getRegionMappings(String species, String sourceReferenceAssembly, String targetReferenceAssembly,
+                                                            String chromosome, long start, long end);
+
+        /**
+         * @see EnsembleRESTAccessor#getLookUp(String)
+         * @param id
+         * @return
+         */
+        CompletableFuture<Lookup> getLookUp(String id);
+
+        /**
+         * @see EnsembleRESTAccessor#getLookUps(Collection)
+         * @param ids
+         * @return
+         */
+        CompletableFuture<Map<String, Lookup>> getLookUps(Collection<String> ids);
+
+        /**
+         * @see EnsembleRESTAccessor#getSequences(Collection, SequenceType)
+         * @param ids
+         * @param sequenceType
+         * @return
+         */
+        CompletableFuture<Sequences> getSequences(Collection<String> ids, SequenceType sequenceType);
+
+        CompletableFuture<ExternalXRefs> getXRefsForExternalDatabase(String id, String externalDatabase);
+
+        CompletableFuture<ExternalXRefs> getXRefsForExternalDatabase(String id);
+
+        CompletableFuture<ExternalXRefs> getXRefsForExternalDatabaseByName(String species, String name, String externalDatabase);
+
+        CompletableFuture<VariantInfo> getVariantDetails(String species, String variantId);
+
+        CompletableFuture<Map<String, VariantInfo>> getVariantDetails(String species, Collection<String> variantIds);
+
     }
 
     public static EnsembleRESTAccessor getInstance()
@@ -176,19 +482,33 @@ public class EnsemblRESTUtils
             private String baseUrl = "http://rest.ensembl.org";
             private Cache  cache   = null;
 
+            private int      retries       = 12;
+            private long     retryDuration = 15;
+            private TimeUnit retryTimeUnit = TimeUnit.SECONDS;
+
+            private int variantBatchSize = DEFAULT_VARIANT_BATCH_SIZE;
+            private int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+
+            private volatile JsonHttpClient     httpClient         = null;
+            private volatile Semaphore          connections        = new Semaphore(DEFAULT_CONNECTION_POOL_SIZE);
+            private volatile RateLimitScheduler rateLimitScheduler = RateLimitScheduler.getShared();
+            private volatile boolean            requestCoalescing  = true;
+
+            private final Map<String, CompletableFuture<Object>> inFlightRequests          = new ConcurrentHashMap<>();
+            private final AtomicLong                             numberOfRequests          = new AtomicLong();
+            private final AtomicLong                             numberOfCollapsedRequests = new AtomicLong();
+
             @Override
             public ExonRegions getExonRegions(String id)
             {
                 String url = this.baseUrl + "/overlap/id/" + id + "?feature=exon";
-                return this.newRestClient()
-                           .requestGet(url, ExonRegions.class);
+                return this.requestGet(url, ExonRegions.class);
             }
 
             @Override
             public RegionMappings getRegionMappings(String species, String sourceReferenceAssembly, String targetReferenceAssembly, String chromosome,
                                                     long start, long end)
             {
-                RestClient restClient = this.newRestClient();
                 String url = RestClient.urlBuilder()
                                        .setBaseUrl(this.baseUrl)
                                        .addPathToken("map")
@@ -197,53 +517,47 @@ public class EnsemblRESTUtils
                                        .addPathToken(chromosome + ":" + start + ":" + end)
                                        .addPathToken(targetReferenceAssembly)
                                        .build();
-                return restClient.requestGet(url, RegionMappings.class);
+                return this.requestGet(url, RegionMappings.class);
             }
 
             @Override
             public Variations getVariations(String id)
             {
                 String url = this.baseUrl + "/overlap/id/" + id + "?feature=variation";
-                return this.newRestClient()
-                           .requestGet(url, Variations.class);
+                return this.requestGet(url, Variations.class);
             }
 
             @Override
             public Transcripts getTranscripts(String id)
             {
                 String url = this.baseUrl + "/overlap/id/" + id + "?feature=transcript";
-                return this.newRestClient()
-                           .requestGet(url, Transcripts.class);
+                return this.requestGet(url, Transcripts.class);
             }
 
             @Override
             public Sequence getDNASequence(String id)
             {
                 String url = this.baseUrl + "/sequence/id/" + id;
-                return this.newRestClient()
-                           .requestGet(url, Sequence.class);
+                return this.requestGet(url, Sequence.class);
             }
 
             @Override
             public Sequences getCodingDNASequence(String id)
             {
                 String url = this.baseUrl + "/sequence/id/" + id + "?type=cdna&multiple_sequences=true";
-                return this.newRestClient()
-                           .requestGet(url, Sequences.class);
+                return this.requestGet(url, Sequences.class);
             }
 
             @Override
             public Sequences getProteinSequences(String id)
             {
                 String url = this.baseUrl + "/sequence/id/" + id + "?type=protein&multiple_sequences=true";
-                return this.newRestClient()
-                           .requestGet(url, Sequences.class);
+                return this.requestGet(url, Sequences.class);
             }
 
             @Override
             public VariantInfo getVariantDetails(String species, String variantId)
             {
-                RestClient restClient = this.newRestClient();
                 String url = RestClient.urlBuilder()
                                        .setBaseUrl(this.baseUrl)
                                        .addPathToken("variation")
@@ -252,7 +566,7 @@ public class EnsemblRESTUtils
                                        .addQueryParameter("phenotypes", "1")
                                        .build();
 
-                return restClient.requestGet(url, VariantInfo.class);
+                return this.requestGet(url, VariantInfo.class);
             }
 
             @Override
@@ -266,68 +580,319 @@ public class EnsemblRESTUtils
             @Override
             public Map<String, VariantInfo> getVariantDetails(String species, Stream<String> variantIds)
             {
-                RestClient restClient = this.newRestClient();
-                String url = RestClient.urlBuilder()
-                                       .setBaseUrl(this.baseUrl)
-                                       .addPathToken("variation")
-                                       .addPathToken(species)
-                                       .addQueryParameter("phenotypes", "1")
-                                       .build();
-                return Optional.ofNullable(variantIds)
-                               .map(ids -> StreamUtils.framedNonNullAsList(100, ids.distinct()))
-                               .map(idBatch -> idBatch.map(ids ->
-                               {
-                                   Map<String, VariantInfo> variantIdToVariantInfo = Optional.ofNullable(restClient.requestPost(url,
-                                                                                                                                new VariantInfoBatchRequest(ids),
-                                                                                                                                VariantInfoBatch.class))
-                                                                                             .map(VariantInfoBatch::getVariantIdToVariantInfo)
-                                                                                             .orElse(Collections.emptyMap());
-
-                                   // merged variant ids will be contained within the synonyms and we have to explode the synonyms here
-                                   Map<String, VariantInfo> explodedVariantIdToVariantInfo = variantIdToVariantInfo.entrySet()
-                                                                                                                   .stream()
-                                                                                                                   .filter(entry -> entry.getValue() != null)
-                                                                                                                   .flatMap(entry -> Stream.concat(Stream.of(entry.getKey()),
-                                                                                                                                                   Optional.ofNullable(entry.getValue())
-                                                                                                                                                           .map(VariantInfo::getSynonyms)
-                                                                                                                                                           .map(List::stream)
-                                                                                                                                                           .orElse(Stream.empty()))
-                                                                                                                                           .filter(PredicateUtils.notNull())
-                                                                                                                                           .distinct()
-                                                                                                                                           .map(id -> BiElement.of(id,
-                                                                                                                                                                   entry.getValue())))
-                                                                                                                   .collect(Collectors.toMap(BiElement::getFirst,
-                                                                                                                                             BiElement::getSecond,
-                                                                                                                                             (v1, v2) -> v1));
-                                   return ids.stream()
-                                             .filter(explodedVariantIdToVariantInfo::containsKey)
-                                             .collect(Collectors.toMap(id -> id, id -> explodedVariantIdToVariantInfo.get(id)));
-                               })
-                                                      .reduce(MapUtils.merger())
-                                                      .orElse(Collections.emptyMap()))
-                               .orElse(Collections.emptyMap());
-            }
-
-            private RestClient newRestClient()
-            {
-                return RestClient.newJSONRestClient()
-                                 .withProxy(this.proxy)
-                                 .withCache(this.cache)
-                                 .withRetry(12, 15, TimeUnit.SECONDS);
+                Map<String, VariantInfo> variantIdToVariantInfo = new ConcurrentHashMap<>();
+                try (Stream<Map<String, VariantInfo>> batches = this.streamVariantDetailBatches(species, variantIds))
+                {
+                    batches.forEach(variantIdToVariantInfo::putAll);
+                }
+                return variantIdToVariantInfo;
+            }
+
+            @Override
+            public Stream<BiElement<String, VariantInfo>> streamVariantDetails(String species, Stream<String> variantIds)
+            {
+                return this.streamVariantDetailBatches(species, variantIds)
+                           .flatMap(variantIdToVariantInfo -> variantIdToVariantInfo.entrySet()
+                                                                                    .stream()
+                                                                                    .map(entry -> BiElement.of(entry.getKey(), entry.getValue())));
+            }
+
+            private Stream<Map<String, VariantInfo>> streamVariantDetailBatches(String species, Stream<String> variantIds)
+            {
+                if (variantIds == null)
+                {
+                    return Stream.empty();
+                }
+
+                String url = this.createVariantDetailsBatchUrl(species);
+                return this.streamBatchesInParallel(StreamUtils.framedNonNullAsList(this.variantBatchSize, variantIds.distinct()),
+                                                    ids -> this.requestVariantDetailsBatch(url, ids));
+            }
+
+            private String createVariantDetailsBatchUrl(String species)
+            {
+                return RestClient.urlBuilder()
+                                 .setBaseUrl(this.baseUrl)
+                                 .addPathToken("variation")
+                                 .addPathToken(species)
+                                 .addQueryParameter("phenotypes", "1")
+                                 .build();
+            }
+
+            private Map<String, VariantInfo> requestVariantDetailsBatch(String url, List<String> ids)
+            {
+                Map<String, VariantInfo> variantIdToVariantInfo = Optional.ofNullable(this.requestPost(url, new VariantInfoBatchRequest(ids),
+                                                                                                       VariantInfoBatch.class))
+                                                                          .map(VariantInfoBatch::getVariantIdToVariantInfo)
+                                                                          .orElse(Collections.emptyMap());
+
+                // merged variant ids will be contained within the synonyms and we have to explode the synonyms here
+                Map<String, VariantInfo> explodedVariantIdToVariantInfo = variantIdToVariantInfo.entrySet()
+                                                                                                .stream()
+                                                                                                .filter(entry -> entry.getValue() != null)
+                                                                                                .flatMap(entry -> Stream.concat(Stream.of(entry.getKey()),
+                                                                                                                                Optional.ofNullable(entry.getValue())
+                                                                                                                                        .map(VariantInfo::getSynonyms)
+                                                                                                                                        .map(List::stream)
+                                                                                                                                        .orElse(Stream.empty()))
+                                                                                                                        .filter(PredicateUtils.notNull())
+                                                                                                                        .distinct()
+                                                                                                                        .map(id -> BiElement.of(id,
+                                                                                                                                                entry.getValue())))
+                                                                                                .collect(Collectors.toMap(BiElement::getFirst,
+                                                                                                                          BiElement::getSecond,
+                                                                                                                          (v1, v2) -> v1));
+                return ids.stream()
+                          .filter(explodedVariantIdToVariantInfo::containsKey)
+                          .collect(Collectors.toMap(id -> id, id -> explodedVariantIdToVariantInfo.get(id)));
+            }
+
+            /**
+             * Applies the given batch function to all batches with at most {@link #batchParallelism} batches in flight. The results are returned in
+             * the order the batches finish and further batches are only pulled from the given {@link Stream} if the returned {@link Stream} is
+             * consumed, which bounds the number of results held in memory.
+             * 
+             * @param batches
+             * @param batchFunction
+             * @return
+             */
+            private <E, R> Stream<R> streamBatchesInParallel(Stream<List<E>> batches, Function<List<E>, R> batchFunction)
+            {
+                int parallelism = this.batchParallelism;
+                ThreadPoolExecutor executor = newDaemonThreadPool("ensembl-rest-batch", parallelism);
+                CompletionService<R> completionService = new ExecutorCompletionService<>(executor);
+                Iterator<List<E>> batchIterator = batches.iterator();
+                Iterator<R> resultIterator = new Iterator<R>()
+                {
+                    private int numberOfBatchesInFlight = 0;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        while (this.numberOfBatchesInFlight < parallelism && batchIterator.hasNext())
+                        {
+                            List<E> batch = batchIterator.next();
+                            completionService.submit(() -> batchFunction.apply(batch));
+                            this.numberOfBatchesInFlight++;
+                        }
+
+                        boolean hasNext = this.numberOfBatchesInFlight > 0;
+                        if (!hasNext)
+                        {
+                            executor.shutdown();
+                        }
+                        return hasNext;
+                    }
+
+                    @Override
+                    public R next()
+                    {
+                        if (!this.hasNext())
+                        {
+                            throw new NoSuchElementException();
+                        }
+
+                        try
+                        {
+                            Future<R> result = completionService.take();
+                            this.numberOfBatchesInFlight--;
+                            return result.get();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread()
+                                  .interrupt();
+                            executor.shutdownNow();
+                            throw new IllegalStateException("Interrupted while waiting for batch request", e);
+                        }
+                        catch (ExecutionException e)
+                        {
+                            executor.shutdownNow();
+                            if (e.getCause() instanceof RuntimeException)
+                            {
+                                throw (RuntimeException) e.getCause();
+                            }
+                            throw new IllegalStateException("Failed to execute batch request", e.getCause());
+                        }
+                    }
+                };
+                return StreamSupport.stream(Spliterators.spliteratorUnknownSize(resultIterator, Spliterator.NONNULL), false)
+                                    .onClose(executor::shutdownNow);
+            }
+
+            private <T> T requestGet(String url, Class<T> type)
+            {
+                this.numberOfRequests.incrementAndGet();
+                if (!this.requestCoalescing)
+                {
+                    return this.executeWithConnection(rateLimitScheduler -> this.getHttpClient()
+                                                                                .requestGet(url, type, rateLimitScheduler));
+                }
+
+                String key = type.getName() + " " + url;
+                CompletableFuture<Object> request = new CompletableFuture<>();
+                CompletableFuture<Object> inFlightRequest = this.inFlightRequests.putIfAbsent(key, request);
+                if (inFlightRequest != null)
+                {
+                    this.numberOfCollapsedRequests.incrementAndGet();
+                    return type.cast(this.joinInFlightRequest(inFlightRequest));
+                }
+
+                try
+                {
+                    T result = this.executeWithConnection(rateLimitScheduler -> this.getHttpClient()
+                                                                                    .requestGet(url, type, rateLimitScheduler));
+                    request.complete(result);
+                    return result;
+                }
+                catch (RuntimeException | Error e)
+                {
+                    request.completeExceptionally(e);
+                    throw e;
+                }
+                finally
+                {
+                    this.inFlightRequests.remove(key, request);
+                }
+            }
+
+            private Object joinInFlightRequest(CompletableFuture<Object> inFlightRequest)
+            {
+                try
+                {
+                    return inFlightRequest.join();
+                }
+                catch (CompletionException e)
+                {
+                    if (e.getCause() instanceof RuntimeException)
+                    {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IllegalStateException("Failed to execute request", e.getCause());
+                }
+            }
+
+            private <T> T requestPost(String url, Object body, Class<T> type)
+            {
+                return this.executeWithConnection(rateLimitScheduler -> this.getHttpClient()
+                                                                            .requestPost(url, body, type, rateLimitScheduler));
+            }
+
+            /**
+             * Executes the given request within the connection limit and the pacing of the {@link RateLimitScheduler}. The request passes the rate
+             * limit headers of its response to the given {@link RateLimitScheduler}, and a throttled request pauses the {@link RateLimitScheduler} for
+             * the duration of its Retry-After header before it is retried.
+             * 
+             * @see EnsembleRESTAccessor#withRetry(int, long, TimeUnit)
+             * @param operation
+             * @return
+             */
+            private <T> T executeWithConnection(Function<RateLimitScheduler, T> operation)
+            {
+                int numberOfThrottles = 0;
+                int numberOfFailures = 0;
+                while (true)
+                {
+                    RateLimitScheduler rateLimitScheduler = this.rateLimitScheduler;
+                    rateLimitScheduler.acquire();
+
+                    Semaphore connections = this.connections;
+                    connections.acquireUninterruptibly();
+                    try
+                    {
+                        return operation.apply(rateLimitScheduler);
+                    }
+                    catch (EnsemblRESTException e)
+                    {
+                        if (e.getStatusCode() == HTTP_STATUS_TOO_MANY_REQUESTS)
+                        {
+                            if (numberOfThrottles++ >= MAXIMUM_THROTTLE_RETRIES)
+                            {
+                                throw e;
+                            }
+                            if (e.getRetryAfterInMilliseconds() >= 0)
+                            {
+                                rateLimitScheduler.onThrottled(e.getRetryAfterInMilliseconds(), TimeUnit.MILLISECONDS);
+                            }
+                            else
+                            {
+                                rateLimitScheduler.onThrottled();
+                            }
+                            continue;
+                        }
+                        else if (!isRetriableStatusCode(e.getStatusCode()) || numberOfFailures++ >= this.retries)
+                        {
+                            throw e;
+                        }
+                    }
+                    catch (RuntimeException e)
+                    {
+                        if (numberOfFailures++ >= this.retries)
+                        {
+                            throw e;
+                        }
+                    }
+                    finally
+                    {
+                        connections.release();
+                    }
+
+                    this.waitForRetry();
+                }
+            }
+
+            private boolean isRetriableStatusCode(int statusCode)
+            {
+                return statusCode < 400 || statusCode >= 500;
+            }
+
+            private void waitForRetry()
+            {
+                try
+                {
+                    this.retryTimeUnit.sleep(this.retryDuration);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread()
+                          .interrupt();
+                    throw new IllegalStateException("Interrupted while waiting to retry a failed request", e);
+                }
+            }
+
+            /**
+             * Returns the single long living {@link JsonHttpClient} of this accessor, which is only recreated if the proxy or cache changes
+             * 
+             * @return
+             */
+            private JsonHttpClient getHttpClient()
+            {
+                JsonHttpClient httpClient = this.httpClient;
+                if (httpClient == null)
+                {
+                    synchronized (this)
+                    {
+                        httpClient = this.httpClient;
+                        if (httpClient == null)
+                        {
+                            httpClient = new JsonHttpClient(this.proxy, this.cache);
+                            this.httpClient = httpClient;
+                        }
+                    }
+                }
+                return httpClient;
             }
 
             @Override
             public SpeciesList getSpecies()
             {
                 String url = this.baseUrl + "/info/species";
-                return this.newRestClient()
-                           .requestGet(url, SpeciesList.class);
+                return this.requestGet(url, SpeciesList.class);
             }
 
             @Override
             public XRefs getXRefs(String species, String symbol)
             {
-                RestClient restClient = this.newRestClient();
                 String url = RestClient.urlBuilder()
                                        .setBaseUrl(this.baseUrl)
                                        .addPathToken("xrefs")
@@ -335,26 +900,24 @@ public class EnsemblRESTUtils
                                        .addPathToken(species)
                                        .addPathToken(symbol)
                                        .build();
-                return restClient.requestGet(url, XRefs.class);
+                return this.requestGet(url, XRefs.class);
             }
 
             @Override
             public XRefs getXRefs(String id)
             {
-                RestClient restClient = this.newRestClient();
                 String url = RestClient.urlBuilder()
                                        .setBaseUrl(this.baseUrl)
                                        .addPathToken("xrefs")
                                        .addPathToken("id")
                                        .addPathToken(id)
                                        .build();
-                return restClient.requestGet(url, XRefs.class);
+                return this.requestGet(url, XRefs.class);
             }
 
             @Override
             public ExternalXRefs getXRefsForExternalDatabase(String id, String externalDatabase)
             {
-                RestClient restClient = this.newRestClient();
                 String url = RestClient.urlBuilder()
                                        .setBaseUrl(this.baseUrl)
                                        .addPathToken("xrefs")
@@ -362,13 +925,12 @@ public class EnsemblRESTUtils
                                        .addPathToken(id)
                                        .addQueryParameter("external_db", externalDatabase)
                                        .build();
-                return restClient.requestGet(url, ExternalXRefs.class);
+                return this.requestGet(url, ExternalXRefs.class);
             }
 
             @Override
             public ExternalXRefs getXRefsForExternalDatabaseByName(String species, String name, String externalDatabase)
             {
-                RestClient restClient = this.newRestClient();
                 String url = RestClient.urlBuilder()
                                        .setBaseUrl(this.baseUrl)
                                        .addPathToken("xrefs")
@@ -377,39 +939,92 @@ public class EnsemblRESTUtils
                                        .addPathToken(name)
                                        .addQueryParameter("external_db", externalDatabase)
                                        .build();
-                return restClient.requestGet(url, ExternalXRefs.class);
+                return this.requestGet(url, ExternalXRefs.class);
             }
 
             @Override
             public ExternalXRefs getXRefsForExternalDatabase(String id)
             {
-                RestClient restClient = this.newRestClient();
                 String url = RestClient.urlBuilder()
                                        .setBaseUrl(this.baseUrl)
                                        .addPathToken("xrefs")
                                        .addPathToken("id")
                                        .addPathToken(id)
                                        .build();
-                return restClient.requestGet(url, ExternalXRefs.class);
+                return this.requestGet(url, ExternalXRefs.class);
             }
 
             @Override
             public Lookup getLookUp(String id)
             {
-                RestClient restClient = this.newRestClient();
                 String url = RestClient.urlBuilder()
                                        .setBaseUrl(this.baseUrl)
                                        .addPathToken("lookup")
                                        .addPathToken("id")
                                        .addPathToken(id)
                                        .build();
-                return restClient.requestGet(url, Lookup.class);
+                return this.requestGet(url, Lookup.class);
+            }
+
+            @Override
+            public Map<String, Lookup> getLookUps(Collection<String> ids)
+            {
+                Map<String, Lookup> idToLookup = new ConcurrentHashMap<>();
+                if (ids != null)
+                {
+                    String url = RestClient.urlBuilder()
+                                           .setBaseUrl(this.baseUrl)
+                                           .addPathToken("lookup")
+                                           .addPathToken("id")
+                                           .build();
+                    try (Stream<LookupBatch> batches = this.streamBatchesInParallel(StreamUtils.framedNonNullAsList(MAXIMUM_LOOKUP_BATCH_SIZE, ids.stream()
+                                                                                                                                             .distinct()),
+                                                                                    batch -> this.requestPost(url, new LookupBatchRequest(batch),
+                                                                                                              LookupBatch.class)))
+                    {
+                        batches.filter(PredicateUtils.notNull())
+                               .map(LookupBatch::getIdToLookup)
+                               .filter(PredicateUtils.notNull())
+                               .flatMap(batchIdToLookup -> batchIdToLookup.entrySet()
+                                                                          .stream())
+                               .filter(entry -> entry.getValue() != null)
+                               .forEach(entry -> idToLookup.put(entry.getKey(), entry.getValue()));
+                    }
+                }
+                return idToLookup;
+            }
+
+            @Override
+            public Sequences getSequences(Collection<String> ids, SequenceType sequenceType)
+            {
+                Sequences sequences = new Sequences();
+                if (ids != null)
+                {
+                    String url = RestClient.urlBuilder()
+                                           .setBaseUrl(this.baseUrl)
+                                           .addPathToken("sequence")
+                                           .addPathToken("id")
+                                           .build();
+                    SequenceType type = Optional.ofNullable(sequenceType)
+                                                .orElse(SequenceType.GENOMIC);
+                    try (Stream<Sequences> batches = this.streamBatchesInParallel(StreamUtils.framedNonNullAsList(MAXIMUM_SEQUENCE_BATCH_SIZE, ids.stream()
+                                                                                                                                               .distinct()),
+                                                                                  batch -> this.requestPost(url, new SequenceBatchRequest(batch, type.getKey(),
+                                                                                                                                          true),
+                                                                                                            Sequences.class)))
+                    {
+                        batches.filter(PredicateUtils.notNull())
+                               .forEach(sequences::addAll);
+                    }
+                }
+                return sequences;
             }
 
             @Override
             public EnsembleRESTAccessor withProxy(Proxy proxy)
             {
                 this.proxy = proxy;
+                this.httpClient = null;
                 return this;
             }
 
@@ -424,9 +1039,260 @@ public class EnsemblRESTUtils
             public EnsembleRESTAccessor usingCache(Cache cache)
             {
                 this.cache = cache;
+                this.httpClient = null;
+                return this;
+            }
+
+            @Override
+            public EnsembleRESTAccessor withRetry(int retries, long duration, TimeUnit timeUnit)
+            {
+                this.retries = retries;
+                this.retryDuration = duration;
+                this.retryTimeUnit = timeUnit;
+                return this;
+            }
+
+            @Override
+            public EnsembleRESTAccessor withRateLimitScheduler(RateLimitScheduler rateLimitScheduler)
+            {
+                this.rateLimitScheduler = rateLimitScheduler;
+                return this;
+            }
+
+            @Override
+            public EnsembleRESTAccessor withVariantBatchSize(int variantBatchSize)
+            {
+                this.variantBatchSize = Math.max(1, Math.min(MAXIMUM_VARIANT_BATCH_SIZE, variantBatchSize));
+                return this;
+            }
+
+            @Override
+            public EnsembleRESTAccessor withBatchParallelism(int batchParallelism)
+            {
+                this.batchParallelism = Math.max(1, batchParallelism);
+                return this;
+            }
+
+            @Override
+            public EnsembleRESTAccessor withConnectionPoolSize(int connectionPoolSize)
+            {
+                this.connections = new Semaphore(Math.max(1, connectionPoolSize));
+                return this;
+            }
+
+            @Override
+            public EnsembleRESTAccessor withRequestCoalescing(boolean requestCoalescing)
+            {
+                this.requestCoalescing = requestCoalescing;
+                return this;
+            }
+
+            @Override
+            public RequestMetrics getRequestMetrics()
+            {
+                return new RequestMetrics(this.numberOfRequests.get(), this.numberOfCollapsedRequests.get());
+            }
+
+        };
+    }
+
+    private static ThreadPoolExecutor newDaemonThreadPool(String threadNamePrefix, int numberOfThreads)
+    {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable ->
+        {
+            Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns a new {@link EnsembleRESTAsyncAccessor} based on a new {@link EnsembleRESTAccessor} instance
+     * 
+     * @see #getAsyncInstance(EnsembleRESTAccessor)
+     * @return
+     */
+    public static EnsembleRESTAsyncAccessor getAsyncInstance()
+    {
+        return getAsyncInstance(getInstance());
+    }
+
+    /**
+     * Returns a new {@link EnsembleRESTAsyncAccessor} which executes the requests of the given {@link EnsembleRESTAccessor} on its own bounded pool
+     * of daemon worker threads. The connection pool size of the given {@link EnsembleRESTAccessor} is kept, it is only aligned to the maximum number
+     * of in flight requests if {@link EnsembleRESTAsyncAccessor#withMaximumInFlightRequests(int)} is called.
+     * 
+     * @param restAccessor
+     * @return
+     */
+    public static EnsembleRESTAsyncAccessor getAsyncInstance(EnsembleRESTAccessor restAccessor)
+    {
+        return new EnsembleRESTAsyncAccessor()
+        {
+            private ThreadPoolExecutor executor = newDaemonThreadPool("ensembl-rest-async", DEFAULT_CONNECTION_POOL_SIZE);
+
+            private <T> CompletableFuture<T> supplyAsync(Supplier<T> request)
+            {
+                return CompletableFuture.supplyAsync(request, this.executor);
+            }
+
+            @Override
+            public EnsembleRESTAsyncAccessor withMaximumInFlightRequests(int maximumInFlightRequests)
+            {
+                int numberOfThreads = Math.max(1, maximumInFlightRequests);
+                if (numberOfThreads > this.executor.getMaximumPoolSize())
+                {
+                    this.executor.setMaximumPoolSize(numberOfThreads);
+                    this.executor.setCorePoolSize(numberOfThreads);
+                }
+                else
+                {
+                    this.executor.setCorePoolSize(numberOfThreads);
+                    this.executor.setMaximumPoolSize(numberOfThreads);
+                }
+                restAccessor.withConnectionPoolSize(numberOfThreads);
+                return this;
+            }
+
+            @Override
+            public EnsembleRESTAsyncAccessor withBaseUrl(String baseUrl)
+            {
+                restAccessor.withBaseUrl(baseUrl);
+                return this;
+            }
+
+            @Override
+            public EnsembleRESTAsyncAccessor withProxy(Proxy proxy)
+            {
+                restAccessor.withProxy(proxy);
+                return this;
+            }
+
+            @Override
+            public EnsembleRESTAsyncAccessor usingCache(Cache cache)
+            {
+                restAccessor.usingCache(cache);
                 return this;
             }
 
+            @Override
+            public EnsembleRESTAccessor asBlocking()
+            {
+                return restAccessor;
+            }
+
+            @Override
+            public CompletableFuture<XRefs> getXRefs(String species, String symbol)
+            {
+                return this.supplyAsync(() -> restAccessor.getXRefs(species, symbol));
+            }
+
+            @Override
+            public CompletableFuture<XRefs> getXRefs(String id)
+            {
+                return this.supplyAsync(() -> restAccessor.getXRefs(id));
+            }
+
+            @Override
+            public CompletableFuture<SpeciesList> getSpecies()
+            {
+                return this.supplyAsync(() -> restAccessor.getSpecies());
+            }
+
+            @Override
+            public CompletableFuture<Sequence> getDNASequence(String id)
+            {
+                return this.supplyAsync(() -> restAccessor.getDNASequence(id));
+            }
+
+            @Override
+            public CompletableFuture<Sequences> getCodingDNASequence(String id)
+            {
+                return this.supplyAsync(() -> restAccessor.getCodingDNASequence(id));
+            }
+
+            @Override
+            public CompletableFuture<Sequences> getProteinSequences(String id)
+            {
+                return this.supplyAsync(() -> restAccessor.getProteinSequences(id));
+            }
+
+            @Override
+            public CompletableFuture<Variations> getVariations(String id)
+            {
+                return this.supplyAsync(() -> restAccessor.getVariations(id));
+            }
+
+            @Override
+            public CompletableFuture<Transcripts> getTranscripts(String id)
+            {
+                return this.supplyAsync(() -> restAccessor.getTranscripts(id));
+            }
+
+            @Override
+            public CompletableFuture<ExonRegions> getExonRegions(String id)
+            {
+                return this.supplyAsync(() -> restAccessor.getExonRegions(id));
+            }
+
+            @Override
+            public CompletableFuture<RegionMappings> getRegionMappings(String species, String sourceReferenceAssembly, String targetReferenceAssembly,
+                                                                       String chromosome, long start, long end)
+            {
+                return this.supplyAsync(() -> restAccessor.getRegionMappings(species, sourceReferenceAssembly, targetReferenceAssembly, chromosome, start,
+                                                                             end));
+            }
+
+            @Override
+            public CompletableFuture<Lookup> getLookUp(String id)
+            {
+                return this.supplyAsync(() -> restAccessor.getLookUp(id));
+            }
+
+            @Override
+            public CompletableFuture<Map<String, Lookup>> getLookUps(Collection<String> ids)
+            {
+                return this.supplyAsync(() -> restAccessor.getLookUps(ids));
+            }
+
+            @Override
+            public CompletableFuture<Sequences> getSequences(Collection<String> ids, SequenceType sequenceType)
+            {
+                return this.supplyAsync(() -> restAccessor.getSequences(ids, sequenceType));
+            }
+
+            @Override
+            public CompletableFuture<ExternalXRefs> getXRefsForExternalDatabase(String id, String externalDatabase)
+            {
+                return this.supplyAsync(() -> restAccessor.getXRefsForExternalDatabase(id, externalDatabase));
+            }
+
+            @Override
+            public CompletableFuture<ExternalXRefs> getXRefsForExternalDatabase(String id)
+            {
+                return this.supplyAsync(() -> restAccessor.getXRefsForExternalDatabase(id));
+            }
+
+            @Override
+            public CompletableFuture<ExternalXRefs> getXRefsForExternalDatabaseByName(String species, String name, String externalDatabase)
+            {
+                return this.supplyAsync(() -> restAccessor.getXRefsForExternalDatabaseByName(species, name, externalDatabase));
+            }
+
+            @Override
+            public CompletableFuture<VariantInfo> getVariantDetails(String species, String variantId)
+            {
+                return this.supplyAsync(() -> restAccessor.getVariantDetails(species, variantId));
+            }
+
+            @Override
+            public CompletableFuture<Map<String, VariantInfo>> getVariantDetails(String species, Collection<String> variantIds)
+            {
+                return this.supplyAsync(() -> restAccessor.getVariantDetails(species, variantIds));
+            }
         };
     }
 
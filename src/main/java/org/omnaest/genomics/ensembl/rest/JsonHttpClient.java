@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.omnaest.utils.cache.Cache;
+import org.omnaest.utils.rest.client.RestClient.Proxy;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Json http client based on {@link HttpURLConnection}, which passes the rate limit headers of every response to a {@link RateLimitScheduler}, so
+ * the requests can be paced by the quota the server announces. GET responses are stored in the optional {@link Cache} by their url.
+ * 
+ * @see RateLimitScheduler#onResponseHeaders(java.util.function.Function)
+ * @author omnaest
+ */
+class JsonHttpClient
+{
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+    private static final int    CONNECT_TIMEOUT    = 30000;
+    private static final int    READ_TIMEOUT       = 300000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final java.net.Proxy proxy;
+    private final Cache          cache;
+
+    public JsonHttpClient(Proxy proxy, Cache cache)
+    {
+        super();
+        this.proxy = proxy != null ? new java.net.Proxy(java.net.Proxy.Type.HTTP, new InetSocketAddress(proxy.getHost(), proxy.getPort()))
+                : java.net.Proxy.NO_PROXY;
+        this.cache = cache;
+    }
+
+    public <T> T requestGet(String url, Class<T> type, RateLimitScheduler rateLimitScheduler)
+    {
+        if (this.cache != null)
+        {
+            return this.cache.computeIfAbsent(url, () -> this.request("GET", url, null, type, rateLimitScheduler), type);
+        }
+        return this.request("GET", url, null, type, rateLimitScheduler);
+    }
+
+    public <T> T requestPost(String url, Object body, Class<T> type, RateLimitScheduler rateLimitScheduler)
+    {
+        return this.request("POST", url, body, type, rateLimitScheduler);
+    }
+
+    private <T> T request(String method, String url, Object body, Class<T> type, RateLimitScheduler rateLimitScheduler)
+    {
+        try
+        {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection(this.proxy);
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setRequestProperty("Accept", "application/json");
+            if (body != null)
+            {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream outputStream = connection.getOutputStream())
+                {
+                    OBJECT_MAPPER.writeValue(outputStream, body);
+                }
+            }
+
+            int statusCode = connection.getResponseCode();
+            rateLimitScheduler.onResponseHeaders(connection::getHeaderField);
+            if (statusCode >= 400)
+            {
+                double retryAfterInSeconds = NumberUtils.toDouble(connection.getHeaderField(HEADER_RETRY_AFTER), -1.0);
+                long retryAfterInMilliseconds = retryAfterInSeconds >= 0 ? (long) (retryAfterInSeconds * 1000) : -1;
+                String responseBody = new String(this.readFully(connection.getErrorStream()), StandardCharsets.UTF_8);
+                throw new EnsemblRESTException(url, statusCode, retryAfterInMilliseconds, responseBody);
+            }
+
+            // the response stream is read completely, so the keep-alive connection can be reused
+            byte[] data = this.readFully(connection.getInputStream());
+            return data.length > 0 ? OBJECT_MAPPER.readValue(data, type) : null;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Request failed: " + url, e);
+        }
+    }
+
+    private byte[] readFully(InputStream inputStream) throws IOException
+    {
+        if (inputStream == null)
+        {
+            return new byte[0];
+        }
+
+        try (InputStream closingInputStream = inputStream)
+        {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = closingInputStream.read(buffer)) >= 0)
+            {
+                outputStream.write(buffer, 0, length);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+}
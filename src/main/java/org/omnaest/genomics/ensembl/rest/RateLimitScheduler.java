@@ -0,0 +1,376 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.rest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Token bucket which paces the requests of all threads sharing it below the Ensembl rate limit quota. <br>
+ * <br>
+ * Every response announces the remaining quota by its X-RateLimit-Remaining and X-RateLimit-Reset headers, see
+ * {@link #onResponseHeaders(Function)}. Until the announced reset the requests are paced, so the remaining quota is spread evenly over the
+ * remaining period, and if the quota is exhausted all requests are paused until the reset. Before the first headers have been received the
+ * requests pass immediately. If the server throttles a request (http status 429) all requests are paused for the duration of its Retry-After
+ * header and afterwards paced for the duration of {@link #withPacingDuration(long, TimeUnit)}. With {@link #withPermanentPacing(boolean)} the
+ * requests are always paced.
+ * 
+ * @see #getShared()
+ * @author omnaest
+ */
+public class RateLimitScheduler
+{
+    /**
+     * Ensembl allows 55000 requests per hour, which is about 15 requests per second
+     */
+    public static final double DEFAULT_PERMITS_PER_SECOND = 15.0;
+
+    public static final String HEADER_RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+    public static final String HEADER_RATE_LIMIT_RESET     = "X-RateLimit-Reset";
+
+    private static final double MINIMUM_PERMITS_PER_SECOND = 0.1;
+
+    /**
+     * Number of requests of the announced quota which are not spent by the pacing, since requests in flight are not yet counted by the server
+     */
+    private static final long QUOTA_RESERVE = 5;
+
+    private static final RateLimitScheduler SHARED_INSTANCE = new RateLimitScheduler();
+
+    private final LongSupplier nanoTimeSource;
+
+    private double  permitsPerSecond       = DEFAULT_PERMITS_PER_SECOND;
+    private double  availablePermits       = DEFAULT_PERMITS_PER_SECOND;
+    private long    lastRefillNanos;
+    private long    pacingUntilNanos;
+    private boolean permanentPacing        = false;
+    private long    pacingDurationNanos    = TimeUnit.MINUTES.toNanos(1);
+    private long    defaultRetryAfterNanos = TimeUnit.SECONDS.toNanos(1);
+    private double  quotaPermitsPerSecond  = Double.POSITIVE_INFINITY;
+    private long    quotaResetNanos;
+
+    private final AtomicLong numberOfRequests  = new AtomicLong();
+    private final AtomicLong numberOfWaits     = new AtomicLong();
+    private final AtomicLong totalWaitNanos    = new AtomicLong();
+    private final AtomicLong numberOfThrottles = new AtomicLong();
+
+    public static class RateLimitMetrics
+    {
+        private long numberOfRequests;
+        private long numberOfWaits;
+        private long totalWaitTimeInMilliseconds;
+        private long numberOfThrottles;
+
+        public RateLimitMetrics(long numberOfRequests, long numberOfWaits, long totalWaitTimeInMilliseconds, long numberOfThrottles)
+        {
+            super();
+            this.numberOfRequests = numberOfRequests;
+            this.numberOfWaits = numberOfWaits;
+            this.totalWaitTimeInMilliseconds = totalWaitTimeInMilliseconds;
+            this.numberOfThrottles = numberOfThrottles;
+        }
+
+        /**
+         * Returns the number of requests which passed the scheduler
+         * 
+         * @return
+         */
+        public long getNumberOfRequests()
+        {
+            return this.numberOfRequests;
+        }
+
+        /**
+         * Returns the number of requests which had to wait for a permit
+         * 
+         * @return
+         */
+        public long getNumberOfWaits()
+        {
+            return this.numberOfWaits;
+        }
+
+        public long getTotalWaitTimeInMilliseconds()
+        {
+            return this.totalWaitTimeInMilliseconds;
+        }
+
+        /**
+         * Returns the number of throttle signals received from the server
+         * 
+         * @return
+         */
+        public long getNumberOfThrottles()
+        {
+            return this.numberOfThrottles;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "RateLimitMetrics [numberOfRequests=" + this.numberOfRequests + ", numberOfWaits=" + this.numberOfWaits + ", totalWaitTimeInMilliseconds="
+                    + this.totalWaitTimeInMilliseconds + ", numberOfThrottles=" + this.numberOfThrottles + "]";
+        }
+
+    }
+
+    RateLimitScheduler(LongSupplier nanoTimeSource)
+    {
+        super();
+        this.nanoTimeSource = nanoTimeSource;
+        this.lastRefillNanos = nanoTimeSource.getAsLong();
+        this.pacingUntilNanos = this.lastRefillNanos;
+        this.quotaResetNanos = this.lastRefillNanos;
+    }
+
+    private RateLimitScheduler()
+    {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Returns the {@link RateLimitScheduler} instance which is shared by all {@link EnsemblRESTUtils} accessors by default
+     * 
+     * @return
+     */
+    public static RateLimitScheduler getShared()
+    {
+        return SHARED_INSTANCE;
+    }
+
+    public static RateLimitScheduler newInstance()
+    {
+        return new RateLimitScheduler();
+    }
+
+    public synchronized RateLimitScheduler withPermitsPerSecond(double permitsPerSecond)
+    {
+        this.permitsPerSecond = Math.max(MINIMUM_PERMITS_PER_SECOND, permitsPerSecond);
+        this.availablePermits = Math.min(this.availablePermits, this.permitsPerSecond);
+        return this;
+    }
+
+    /**
+     * If set to true all requests are paced, otherwise only after a throttle signal has been received from the server. Default is false.
+     * 
+     * @param permanentPacing
+     * @return
+     */
+    public synchronized RateLimitScheduler withPermanentPacing(boolean permanentPacing)
+    {
+        this.permanentPacing = permanentPacing;
+        return this;
+    }
+
+    /**
+     * Defines for how long the requests are paced after the last throttle signal. Default is 1 minute.
+     * 
+     * @param duration
+     * @param timeUnit
+     * @return
+     */
+    public synchronized RateLimitScheduler withPacingDuration(long duration, TimeUnit timeUnit)
+    {
+        this.pacingDurationNanos = timeUnit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Defines the pause applied to all requests after a throttled request if the server did not provide a Retry-After header. Default is 1 second.
+     * 
+     * @param duration
+     * @param timeUnit
+     * @return
+     */
+    public synchronized RateLimitScheduler withDefaultRetryAfter(long duration, TimeUnit timeUnit)
+    {
+        this.defaultRetryAfterNanos = timeUnit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Blocks the current thread until the next request is allowed to be sent
+     */
+    public void acquire()
+    {
+        long waitNanos = this.reserve();
+        this.numberOfRequests.incrementAndGet();
+        if (waitNanos > 0)
+        {
+            this.numberOfWaits.incrementAndGet();
+            this.totalWaitNanos.addAndGet(waitNanos);
+
+            long deadline = System.nanoTime() + waitNanos;
+            long remainingNanos = waitNanos;
+            while (remainingNanos > 0)
+            {
+                LockSupport.parkNanos(remainingNanos);
+                remainingNanos = deadline - System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Reserves a permit and returns the number of nanoseconds the caller has to wait before it is allowed to send its request
+     * 
+     * @return
+     */
+    synchronized long reserve()
+    {
+        long now = this.nanoTimeSource.getAsLong();
+        boolean quotaKnown = now - this.quotaResetNanos < 0;
+        if (!this.permanentPacing && !quotaKnown && now - this.pacingUntilNanos >= 0 && now - this.lastRefillNanos >= 0)
+        {
+            this.lastRefillNanos = now;
+            this.availablePermits = this.permitsPerSecond;
+            return 0;
+        }
+
+        double permitsPerSecond = this.determinePermitsPerSecond(now);
+        this.refill(now, permitsPerSecond);
+        this.availablePermits -= 1.0;
+
+        long pauseNanos = Math.max(0, this.lastRefillNanos - now);
+        long queueNanos = this.availablePermits < 0 ? (long) (-this.availablePermits / permitsPerSecond * 1.0E9) : 0;
+        return pauseNanos + queueNanos;
+    }
+
+    /**
+     * Returns the configured permits per second, or the lower rate of the quota announced by the server until its reset
+     * 
+     * @param now
+     * @return
+     */
+    private double determinePermitsPerSecond(long now)
+    {
+        return now - this.quotaResetNanos < 0 ? Math.min(this.permitsPerSecond, this.quotaPermitsPerSecond) : this.permitsPerSecond;
+    }
+
+    private void refill(long now, double permitsPerSecond)
+    {
+        if (now - this.lastRefillNanos > 0)
+        {
+            double elapsedSeconds = (now - this.lastRefillNanos) / 1.0E9;
+            this.availablePermits = Math.min(Math.max(1.0, permitsPerSecond), this.availablePermits + elapsedSeconds * permitsPerSecond);
+            this.lastRefillNanos = now;
+        }
+    }
+
+    /**
+     * Evaluates the X-RateLimit-Remaining and X-RateLimit-Reset headers of a response, responses without those headers are ignored
+     * 
+     * @see #onQuota(long, long, TimeUnit)
+     * @param headerValueResolver
+     *            resolves the value of a response header by its name, or null if the response has no such header
+     */
+    public void onResponseHeaders(Function<String, String> headerValueResolver)
+    {
+        long remainingRequests = NumberUtils.toLong(headerValueResolver.apply(HEADER_RATE_LIMIT_REMAINING), -1);
+        double resetInSeconds = NumberUtils.toDouble(headerValueResolver.apply(HEADER_RATE_LIMIT_RESET), -1.0);
+        if (remainingRequests >= 0 && resetInSeconds > 0)
+        {
+            this.onQuota(remainingRequests, (long) (resetInSeconds * 1000), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Signals the quota announced by the server, so the requests are paced to spend the remaining requests evenly until the reset. If no
+     * requests are remaining, all requests are paused until the reset.
+     * 
+     * @param remainingRequests
+     * @param reset
+     *            the duration until the quota is reset
+     * @param timeUnit
+     */
+    public synchronized void onQuota(long remainingRequests, long reset, TimeUnit timeUnit)
+    {
+        long now = this.nanoTimeSource.getAsLong();
+        long resetNanos = Math.max(1, timeUnit.toNanos(reset));
+        long permits = remainingRequests - QUOTA_RESERVE;
+
+        this.refill(now, this.determinePermitsPerSecond(now));
+        this.quotaResetNanos = now + resetNanos;
+        if (permits <= 0)
+        {
+            // the quota is renewed at the reset, so the pause is sufficient
+            this.quotaPermitsPerSecond = Double.POSITIVE_INFINITY;
+            this.pause(resetNanos);
+        }
+        else
+        {
+            this.quotaPermitsPerSecond = Math.max(MINIMUM_PERMITS_PER_SECOND, permits / (resetNanos / 1.0E9));
+            this.availablePermits = Math.min(this.availablePermits, Math.max(1.0, this.determinePermitsPerSecond(now)));
+        }
+    }
+
+    /**
+     * Signals that the server has throttled a request without providing a Retry-After duration
+     * 
+     * @see #onThrottled(long, TimeUnit)
+     */
+    public void onThrottled()
+    {
+        long defaultRetryAfterNanos;
+        synchronized (this)
+        {
+            defaultRetryAfterNanos = this.defaultRetryAfterNanos;
+        }
+        this.onThrottled(defaultRetryAfterNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Signals that the server has throttled a request and all requests have to be paused for the given duration
+     * 
+     * @param retryAfter
+     * @param timeUnit
+     */
+    public void onThrottled(long retryAfter, TimeUnit timeUnit)
+    {
+        this.numberOfThrottles.incrementAndGet();
+        this.pause(timeUnit.toNanos(retryAfter));
+    }
+
+    private synchronized void pause(long pauseNanos)
+    {
+        long now = this.nanoTimeSource.getAsLong();
+        long resumeNanos = now + pauseNanos;
+        if (resumeNanos - this.lastRefillNanos > 0)
+        {
+            this.refill(now, this.determinePermitsPerSecond(now));
+            this.lastRefillNanos = resumeNanos;
+            this.availablePermits = Math.min(0.0, this.availablePermits);
+        }
+        this.pacingUntilNanos = resumeNanos + this.pacingDurationNanos;
+    }
+
+    public RateLimitMetrics getMetrics()
+    {
+        return new RateLimitMetrics(this.numberOfRequests.get(), this.numberOfWaits.get(), TimeUnit.NANOSECONDS.toMillis(this.totalWaitNanos.get()),
+                                    this.numberOfThrottles.get());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RateLimitScheduler [permitsPerSecond=" + this.permitsPerSecond + ", metrics=" + this.getMetrics() + "]";
+    }
+
+}
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.omnaest.genomics.ensembl.EnsemblUtils.EnsemblDataSetAccessor;
+import org.omnaest.genomics.ensembl.domain.VariantConsequence;
+import org.omnaest.genomics.ensembl.domain.VariantDetail;
+import org.omnaest.genomics.ensembl.domain.raw.Phenotype;
+import org.omnaest.genomics.ensembl.domain.raw.Species;
+import org.omnaest.genomics.ensembl.domain.raw.SpeciesList;
+import org.omnaest.genomics.ensembl.domain.raw.VariantInfo;
+import org.omnaest.genomics.ensembl.rest.EnsemblRESTUtils.EnsembleRESTAccessor;
+import org.omnaest.utils.cache.Cache;
+
+/**
+ * Tests the variant details of {@link EnsemblUtils} against an in memory {@link Cache} and a stubbed {@link EnsembleRESTAccessor}
+ * 
+ * @author omnaest
+ */
+public class EnsemblUtilsVariantDetailTest
+{
+    private static final String SPECIES = "homo_sapiens";
+
+    private Map<String, Object>      cacheEntries           = new ConcurrentHashMap<>();
+    private AtomicInteger            cacheLookups           = new AtomicInteger();
+    private Set<String>              cacheLookupThreadNames = ConcurrentHashMap.newKeySet();
+    private String                   failingCacheKey        = null;
+    private Map<String, VariantInfo> restVariantInfos       = new ConcurrentHashMap<>();
+    private AtomicInteger            restVariantLookups     = new AtomicInteger();
+
+    @Test
+    public void testVariantDetailResolvesAndNotifiesOnlyOnce() throws Exception
+    {
+        this.cacheEntries.put(this.determineCacheKey("rs1"), this.createVariantInfo("rs1", "0.1", "missense_variant", "Trait A"));
+        this.restVariantInfos.put("rs2", this.createVariantInfo("rs2", "0.2", "missense_variant", "Trait B"));
+
+        AtomicInteger globalCacheConsumerInvocations = new AtomicInteger();
+        AtomicInteger globalRESTConsumerInvocations = new AtomicInteger();
+        AtomicInteger cacheConsumerInvocations = new AtomicInteger();
+        AtomicInteger restConsumerInvocations = new AtomicInteger();
+        Map<String, VariantDetail> variantDetails = this.createEnsemblDataSetAccessor()
+                                                        .withCacheReadParallelism(1)
+                                                        .withVariantDetailsCacheResolvingConsumer(variantInfo -> globalCacheConsumerInvocations.incrementAndGet())
+                                                        .withVariantDetailsRESTResolvingConsumer(variantInfo -> globalRESTConsumerInvocations.incrementAndGet())
+                                                        .findSpecies("human")
+                                                        .get()
+                                                        .findVariantDetails(Arrays.asList("rs1", "rs2"));
+
+        for (VariantDetail variantDetail : variantDetails.values())
+        {
+            variantDetail.withCacheResolvingConsumer(variantInfo -> cacheConsumerInvocations.incrementAndGet())
+                         .withRESTResolvingConsumer(variantInfo -> restConsumerInvocations.incrementAndGet());
+            for (int ii = 0; ii < 3; ii++)
+            {
+                variantDetail.getSynonyms();
+                variantDetail.getProteinPosition();
+                variantDetail.getClinicalSignificances();
+                variantDetail.getConsequence();
+                variantDetail.getTraits();
+                variantDetail.getMinorAlleleFrequency();
+            }
+        }
+
+        assertEquals(0.1, variantDetails.get("rs1")
+                                        .getMinorAlleleFrequency(),
+                     0.0001);
+        assertEquals(Arrays.asList("Trait A"), variantDetails.get("rs1")
+                                                             .getTraits()
+                                                             .stream()
+                                                             .collect(Collectors.toList()));
+        assertEquals(0.2, variantDetails.get("rs2")
+                                        .getMinorAlleleFrequency(),
+                     0.0001);
+        assertEquals(VariantConsequence.MISSENSE, variantDetails.get("rs2")
+                                                                .getConsequence());
+
+        assertEquals(1, cacheConsumerInvocations.get());
+        assertEquals(1, globalCacheConsumerInvocations.get());
+        assertEquals(1, restConsumerInvocations.get());
+        assertEquals(1, globalRESTConsumerInvocations.get());
+        assertEquals(2, this.cacheLookups.get());
+        assertEquals(1, this.restVariantLookups.get());
+    }
+
+    @Test
+    public void testParallelCacheReadEqualsSequentialRead() throws Exception
+    {
+        List<String> variantIds = IntStream.range(0, 200)
+                                           .mapToObj(index -> "rs" + index)
+                                           .collect(Collectors.toList());
+        IntStream.range(0, 200)
+                 .filter(index -> index % 2 == 0)
+                 .forEach(index -> this.cacheEntries.put(this.determineCacheKey("rs" + index),
+                                                         this.createVariantInfo("rs" + index, String.valueOf(index / 1000.0), "missense_variant",
+                                                                                "Trait " + index)));
+
+        Map<String, Double> sequentialResult = this.readMinorAlleleFrequencies(variantIds, 1);
+        assertEquals(200, this.cacheLookups.getAndSet(0));
+        assertEquals(100, sequentialResult.values()
+                                          .stream()
+                                          .filter(maf -> maf > 0.0)
+                                          .count());
+
+        this.cacheLookupThreadNames.clear();
+        Map<String, Double> parallelResult = this.readMinorAlleleFrequencies(variantIds, 4);
+        assertEquals(200, this.cacheLookups.get());
+        assertEquals(sequentialResult, parallelResult);
+        assertFalse(this.cacheLookupThreadNames.isEmpty());
+        assertTrue(this.cacheLookupThreadNames.stream()
+                                              .noneMatch(threadName -> threadName.startsWith("ForkJoinPool.commonPool")));
+    }
+
+    @Test
+    public void testParallelCacheReadRethrowsCacheFailure() throws Exception
+    {
+        List<String> variantIds = IntStream.range(0, 20)
+                                           .mapToObj(index -> "rs" + index)
+                                           .collect(Collectors.toList());
+        this.failingCacheKey = this.determineCacheKey("rs7");
+
+        try
+        {
+            this.readMinorAlleleFrequencies(variantIds, 4);
+            fail();
+        }
+        catch (RuntimeException e)
+        {
+            boolean containsCacheFailure = false;
+            for (Throwable cause = e; cause != null; cause = cause.getCause())
+            {
+                assertFalse(cause instanceof ExecutionException);
+                containsCacheFailure |= cause instanceof IllegalStateException && "Unable to read cache entry".equals(cause.getMessage());
+            }
+            assertTrue(containsCacheFailure);
+        }
+    }
+
+    private Map<String, Double> readMinorAlleleFrequencies(List<String> variantIds, int cacheReadParallelism)
+    {
+        return this.createEnsemblDataSetAccessor()
+                   .withCacheReadParallelism(cacheReadParallelism)
+                   .withVariantDetailRESTResolvingEnabled(false)
+                   .findSpecies("human")
+                   .get()
+                   .findVariantDetails(variantIds)
+                   .values()
+                   .stream()
+                   .collect(Collectors.toMap(VariantDetail::getId, VariantDetail::getMinorAlleleFrequency));
+    }
+
+    private EnsemblDataSetAccessor createEnsemblDataSetAccessor()
+    {
+        return EnsemblUtils.getInstance(this.createRESTAccessor())
+                           .usingCache(this.createCache());
+    }
+
+    private String determineCacheKey(String variantId)
+    {
+        return "VARIANT_DETAIL:" + SPECIES + ":" + variantId;
+    }
+
+    private VariantInfo createVariantInfo(String variantId, String maf, String consequence, String trait)
+    {
+        Phenotype phenotype = new Phenotype();
+        phenotype.setTrait(trait);
+
+        VariantInfo variantInfo = new VariantInfo();
+        variantInfo.setName(variantId);
+        variantInfo.setMaf(maf);
+        variantInfo.setConsequence(consequence);
+        variantInfo.setSynonyms(Arrays.asList("NP_115990.3:p.Ala76Val"));
+        variantInfo.setPhenotypes(Arrays.asList(phenotype));
+        variantInfo.setClinicalSignifance(new HashSet<>(Arrays.asList("pathogenic")));
+        return variantInfo;
+    }
+
+    /**
+     * Returns an in memory {@link Cache} which counts the lookups of cached elements and fails to read the {@link #failingCacheKey}
+     * 
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private Cache createCache()
+    {
+        return this.newStub(Cache.class, (proxy, method, args) ->
+        {
+            if ("get".equals(method.getName()))
+            {
+                this.cacheLookups.incrementAndGet();
+                this.cacheLookupThreadNames.add(Thread.currentThread()
+                                                      .getName());
+                if (args[0].equals(this.failingCacheKey))
+                {
+                    throw new IllegalStateException("Unable to read cache entry");
+                }
+                return this.cacheEntries.get(args[0]);
+            }
+            else if ("computeIfAbsent".equals(method.getName()))
+            {
+                return this.cacheEntries.computeIfAbsent((String) args[0], key -> ((Supplier<Object>) args[1]).get());
+            }
+            else if ("put".equals(method.getName()))
+            {
+                return this.cacheEntries.put((String) args[0], args[1]);
+            }
+            return this.defaultResult(proxy, method.getReturnType());
+        });
+    }
+
+    /**
+     * Returns an {@link EnsembleRESTAccessor} which knows only the human species and the variant infos of {@link #restVariantInfos}
+     * 
+     * @return
+     */
+    private EnsembleRESTAccessor createRESTAccessor()
+    {
+        Species species = new Species();
+        species.setName(SPECIES);
+        species.setCommonName("human");
+        species.setDisplayName("Human");
+        species.setAliases(Arrays.asList("homo sapiens"));
+        SpeciesList speciesList = new SpeciesList();
+        speciesList.setSpecies(Arrays.asList(species));
+
+        return this.newStub(EnsembleRESTAccessor.class, (proxy, method, args) ->
+        {
+            if ("getSpecies".equals(method.getName()))
+            {
+                return speciesList;
+            }
+            else if ("getVariantDetails".equals(method.getName()) && args[1] instanceof Collection)
+            {
+                this.restVariantLookups.incrementAndGet();
+                return ((Collection<?>) args[1]).stream()
+                                                .map(String.class::cast)
+                                                .filter(this.restVariantInfos::containsKey)
+                                                .collect(Collectors.toMap(Function.identity(), this.restVariantInfos::get));
+            }
+            return this.defaultResult(proxy, method.getReturnType());
+        });
+    }
+
+    private <T> T newStub(Class<T> type, InvocationHandler invocationHandler)
+    {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, invocationHandler));
+    }
+
+    private Object defaultResult(Object proxy, Class<?> returnType)
+    {
+        if (returnType.isInstance(proxy))
+        {
+            return proxy;
+        }
+        else if (Boolean.TYPE.equals(returnType))
+        {
+            return false;
+        }
+        else if (Integer.TYPE.equals(returnType))
+        {
+            return 0;
+        }
+        else if (Long.TYPE.equals(returnType))
+        {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -18,6 +18,8 @@ package org.omnaest.genomics.ensembl.domain;
 import static org.junit.Assert.assertEquals;
 
 import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -36,4 +38,75 @@ public class VariantConsequenceTest
                                           .map(VariantConsequence::getMatchStr)
                                           .get());
     }
+
+    /**
+     * Compares the former linear scan over all values with the hash based decoding for a mix of known and unknown consequences like they occur in
+     * the CSQ field of the Ensembl VCF files
+     */
+    @Test
+    @Ignore
+    public void benchmarkDecode() throws Exception
+    {
+        Random random = new Random(0);
+        String[] inputs = new String[100000];
+        for (int index = 0; index < inputs.length; index++)
+        {
+            VariantConsequence consequence = VariantConsequence.values()[random.nextInt(VariantConsequence.values().length)];
+            inputs[index] = random.nextInt(10) == 0 ? "non_coding_transcript_exon_variant" : consequence.getMatchStr();
+        }
+
+        for (int warmup = 0; warmup < 20; warmup++)
+        {
+            this.decodeByLinearScan(inputs);
+            this.decodeByHash(inputs);
+        }
+
+        int rounds = 50;
+        long linearScanStart = System.nanoTime();
+        long linearScanMatches = 0;
+        for (int round = 0; round < rounds; round++)
+        {
+            linearScanMatches += this.decodeByLinearScan(inputs);
+        }
+        long linearScanDuration = System.nanoTime() - linearScanStart;
+
+        long hashStart = System.nanoTime();
+        long hashMatches = 0;
+        for (int round = 0; round < rounds; round++)
+        {
+            hashMatches += this.decodeByHash(inputs);
+        }
+        long hashDuration = System.nanoTime() - hashStart;
+
+        assertEquals(linearScanMatches, hashMatches);
+        System.out.println("Linear scan: " + linearScanDuration / (rounds * inputs.length) + " ns/decode");
+        System.out.println("Hash:        " + hashDuration / (rounds * inputs.length) + " ns/decode");
+    }
+
+    private long decodeByLinearScan(String[] inputs)
+    {
+        long matches = 0;
+        for (String input : inputs)
+        {
+            Optional<VariantConsequence> consequence = Arrays.asList(VariantConsequence.values())
+                                                             .stream()
+                                                             .filter(iConsequence -> iConsequence.matches(input))
+                                                             .findFirst();
+            matches += consequence.isPresent() ? consequence.get()
+                                                            .ordinal()
+                    : -1;
+        }
+        return matches;
+    }
+
+    private long decodeByHash(String[] inputs)
+    {
+        long matches = 0;
+        for (String input : inputs)
+        {
+            VariantConsequence consequence = VariantConsequence.decode(input);
+            matches += consequence != null ? consequence.ordinal() : -1;
+        }
+        return matches;
+    }
 }
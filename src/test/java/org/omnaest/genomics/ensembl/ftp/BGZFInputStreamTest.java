@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+public class BGZFInputStreamTest
+{
+    /**
+     * Writes the given lines as BGZF file with blocks of at most the given uncompressed size and collects the virtual file offset of each line
+     * 
+     * @param lines
+     * @param blockSize
+     * @param virtualOffsets
+     * @return
+     * @throws IOException
+     */
+    static File writeBGZFFile(List<String> lines, int blockSize, List<Long> virtualOffsets) throws IOException
+    {
+        File file = File.createTempFile("bgzf-", ".vcf.gz");
+        file.deleteOnExit();
+
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        byte[] block = new byte[blockSize];
+        int blockLength = 0;
+        for (String line : lines)
+        {
+            byte[] data = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            if (blockLength + data.length > blockSize)
+            {
+                writeBlock(blocks, block, blockLength);
+                blockLength = 0;
+            }
+            virtualOffsets.add(((long) blocks.size() << 16) | blockLength);
+            System.arraycopy(data, 0, block, blockLength, data.length);
+            blockLength += data.length;
+        }
+        writeBlock(blocks, block, blockLength);
+        writeBlock(blocks, block, 0);
+
+        try (OutputStream outputStream = new FileOutputStream(file))
+        {
+            blocks.writeTo(outputStream);
+        }
+        return file;
+    }
+
+    private static void writeBlock(OutputStream outputStream, byte[] data, int length) throws IOException
+    {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        byte[] compressedData = new byte[BGZFInputStream.MAXIMUM_BLOCK_SIZE];
+        int compressedLength = deflater.deflate(compressedData);
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+
+        int blockSize = 18 + compressedLength + 8;
+        ByteBuffer buffer = ByteBuffer.allocate(blockSize)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[] { 31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF })
+              .putShort((short) 6)
+              .put((byte) 'B')
+              .put((byte) 'C')
+              .putShort((short) 2)
+              .putShort((short) (blockSize - 1))
+              .put(compressedData, 0, compressedLength)
+              .putInt((int) crc.getValue())
+              .putInt(length);
+        outputStream.write(buffer.array());
+    }
+
+    private List<String> createLines(int numberOfLines)
+    {
+        return IntStream.range(0, numberOfLines)
+                        .mapToObj(index -> "1\t" + (index * 10 + 1) + "\trs" + index + "\tA\tG")
+                        .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testReadLine() throws Exception
+    {
+        List<String> lines = this.createLines(5000);
+        File file = writeBGZFFile(lines, 1000, new ArrayList<>());
+
+        List<String> readLines = new ArrayList<>();
+        try (BGZFInputStream inputStream = BGZFInputStream.open(file))
+        {
+            for (String line = inputStream.readLine(); line != null; line = inputStream.readLine())
+            {
+                readLines.add(line);
+            }
+        }
+        assertEquals(lines, readLines);
+    }
+
+    @Test
+    public void testSeek() throws Exception
+    {
+        List<String> lines = this.createLines(5000);
+        List<Long> virtualOffsets = new ArrayList<>();
+        File file = writeBGZFFile(lines, 1000, virtualOffsets);
+
+        try (BGZFInputStream inputStream = BGZFInputStream.open(file))
+        {
+            for (int index : Arrays.asList(4321, 17, 0, 2500, 4999))
+            {
+                inputStream.seek(virtualOffsets.get(index));
+                assertEquals(virtualOffsets.get(index)
+                                           .longValue(),
+                             inputStream.getVirtualOffset());
+                assertEquals(lines.get(index), inputStream.readLine());
+            }
+            assertNull(inputStream.readLine());
+        }
+    }
+
+    @Test
+    public void testRegionToBins() throws Exception
+    {
+        assertEquals(Arrays.asList(0, 1, 9, 73, 585, 4681), TabixIndex.regionToBins(0, 1, 14, 5));
+        assertEquals(Arrays.asList(0, 1, 9, 73, 585, 4681, 4682), TabixIndex.regionToBins(16383, 16385, 14, 5));
+    }
+
+    @Test
+    public void testRegionToBinsOfOpenEndedRegion() throws Exception
+    {
+        List<Integer> bins = TabixIndex.regionToBins(0, Long.MAX_VALUE, 14, 5);
+        assertEquals(37449, bins.size());
+        assertEquals(Integer.valueOf(37448), bins.get(bins.size() - 1));
+        assertEquals(Arrays.asList(0, 8, 72, 584, 4680, 37448), TabixIndex.regionToBins((1L << 29) - 1, Long.MAX_VALUE, 14, 5));
+        assertEquals(Arrays.asList(), TabixIndex.regionToBins(1L << 29, Long.MAX_VALUE, 14, 5));
+    }
+
+    @Test
+    public void testGetChunksOfOpenEndedRegion() throws Exception
+    {
+        byte[] names = "1\0".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer data = ByteBuffer.allocate(4 + 4 + 6 * 4 + 4 + names.length + 4 + 4 + 4 + 16 + 4 + 8)
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(0x01494254)
+            .putInt(1);
+        for (int field = 0; field < 6; field++)
+        {
+            data.putInt(0);
+        }
+        data.putInt(names.length)
+            .put(names);
+        data.putInt(1)
+            .putInt(4681)
+            .putInt(1)
+            .putLong(0)
+            .putLong(100);
+        data.putInt(1)
+            .putLong(0);
+
+        TabixIndex index = TabixIndex.read(new ByteArrayInputStream(data.array()));
+        List<TabixIndex.Chunk> chunks = index.getChunks("1", 1, Long.MAX_VALUE);
+        assertEquals(1, chunks.size());
+        assertEquals(0, chunks.get(0)
+                              .getBegin());
+        assertEquals(100, chunks.get(0)
+                                .getEnd());
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.ftp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ParallelBGZFInputStreamTest
+{
+    private File createVCFFile(int numberOfLines) throws IOException
+    {
+        Random random = new Random(1);
+        List<String> lines = IntStream.range(0, numberOfLines)
+                                      .mapToObj(index -> "1\t" + (index * 10 + 1) + "\trs" + random.nextInt(100000000) + "\tA\tG\t.\t.\tMA=G;MAF="
+                                              + random.nextInt(1000) / 1000.0 + ";CSQ=" + (random.nextBoolean() ? "missense_variant" : "intron_variant"))
+                                      .collect(Collectors.toList());
+        return BGZFInputStreamTest.writeBGZFFile(lines, BGZFInputStream.MAXIMUM_BLOCK_SIZE - 256, new ArrayList<>());
+    }
+
+    private byte[] readFully(InputStream inputStream) throws IOException
+    {
+        try (InputStream closeableInputStream = inputStream)
+        {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int numberOfBytes = closeableInputStream.read(buffer); numberOfBytes >= 0; numberOfBytes = closeableInputStream.read(buffer))
+            {
+                outputStream.write(buffer, 0, numberOfBytes);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    @Test
+    public void testRead() throws Exception
+    {
+        File file = this.createVCFFile(100000);
+
+        byte[] expected = this.readFully(new GZIPInputStream(new FileInputStream(file)));
+        byte[] actual = this.readFully(ParallelBGZFInputStream.open(new FileInputStream(file), 4));
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testReadPlainGzip() throws Exception
+    {
+        byte[] data = "#CHROM\tPOS\tID\tREF\tALT\n1\t1\trs1\tA\tG\n".getBytes();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream))
+        {
+            gzipOutputStream.write(data);
+        }
+
+        assertArrayEquals(data, this.readFully(ParallelBGZFInputStream.open(new ByteArrayInputStream(outputStream.toByteArray()), 4)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadCorruptBlock() throws Exception
+    {
+        File file = this.createVCFFile(10000);
+        byte[] data = Files.readAllBytes(file.toPath());
+        int firstBlockSize = BGZFInputStream.readBlockSize(data, 0);
+        data[firstBlockSize - 8] ^= 0xFF;
+
+        this.readFully(ParallelBGZFInputStream.open(new ByteArrayInputStream(data), 4));
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkRead() throws Exception
+    {
+        File file = this.createVCFFile(2000000);
+        long uncompressedSize = this.readFully(new GZIPInputStream(new FileInputStream(file))).length;
+
+        for (int numberOfWorkers : new int[] { 1, 2, 4, 8 })
+        {
+            // warm up
+            this.readFully(ParallelBGZFInputStream.open(new FileInputStream(file), numberOfWorkers));
+
+            long start = System.nanoTime();
+            int numberOfRepetitions = 5;
+            for (int repetition = 0; repetition < numberOfRepetitions; repetition++)
+            {
+                assertEquals(uncompressedSize, this.readFully(ParallelBGZFInputStream.open(new FileInputStream(file), numberOfWorkers)).length);
+            }
+            double seconds = (System.nanoTime() - start) / 1.0E9;
+            System.out.println(numberOfWorkers + " workers: " + Math.round(numberOfRepetitions * uncompressedSize / seconds / 1024 / 1024) + " MB/s");
+        }
+    }
+}
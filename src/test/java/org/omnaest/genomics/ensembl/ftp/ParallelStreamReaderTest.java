@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.ftp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class ParallelStreamReaderTest
+{
+    private List<Supplier<Stream<Integer>>> createSources(int numberOfSources, int sourceSize)
+    {
+        List<Supplier<Stream<Integer>>> sources = new ArrayList<>();
+        for (int index = 0; index < numberOfSources; index++)
+        {
+            int start = index * sourceSize;
+            sources.add(() -> IntStream.range(start, start + sourceSize)
+                                       .boxed());
+        }
+        return sources;
+    }
+
+    @Test
+    public void testReadOrdered() throws Exception
+    {
+        List<Integer> elements = ParallelStreamReader.read(this.createSources(25, 5000), 4, true)
+                                                     .collect(Collectors.toList());
+        assertEquals(IntStream.range(0, 25 * 5000)
+                              .boxed()
+                              .collect(Collectors.toList()),
+                     elements);
+    }
+
+    @Test
+    public void testReadUnordered() throws Exception
+    {
+        Set<Integer> elements = ParallelStreamReader.read(this.createSources(25, 5000), 8, false)
+                                                    .collect(Collectors.toSet());
+        assertEquals(25 * 5000, elements.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReadFailure() throws Exception
+    {
+        List<Supplier<Stream<Integer>>> sources = this.createSources(10, 5000);
+        sources.add(3, () ->
+        {
+            throw new IllegalStateException();
+        });
+        ParallelStreamReader.read(sources, 4, false)
+                            .count();
+    }
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.omnaest.genomics.vcf.domain.VCFRecord;
+
+public class VCFParsingPipelineTest
+{
+    private InputStream createVCF(int numberOfRecords)
+    {
+        String header = "##fileformat=VCFv4.1\n" + "##INFO=<ID=MAF,Number=1,Type=Float,Description=\"Minor allele frequency\">\n"
+                + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+        String records = IntStream.range(0, numberOfRecords)
+                                  .mapToObj(index -> "1\t" + (index + 1) + "\trs" + index + "\tA\tG\t.\t.\tMAF=0.1\n")
+                                  .collect(Collectors.joining());
+        return new ByteArrayInputStream((header + records).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testParse() throws Exception
+    {
+        try (Stream<String> ids = VCFParsingPipeline.parse(this.createVCF(20000), VCFRecord::getId, 4))
+        {
+            assertEquals(IntStream.range(0, 20000)
+                                  .mapToObj(index -> "rs" + index)
+                                  .collect(Collectors.toList()),
+                         ids.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testParseWithFilteringMapper() throws Exception
+    {
+        List<String> ids = VCFParsingPipeline.parse(this.createVCF(20000), record -> record.getId()
+                                                                                           .endsWith("0") ? record.getId() : null,
+                                                    4)
+                                             .collect(Collectors.toList());
+        assertEquals(2000, ids.size());
+        assertEquals("rs19990", ids.get(ids.size() - 1));
+    }
+
+    @Test
+    public void testParseSingleWorker() throws Exception
+    {
+        assertEquals(1000, VCFParsingPipeline.parse(this.createVCF(1000), VCFRecord::getId, 1)
+                                             .count());
+    }
+
+    @Test
+    public void testMapLines() throws Exception
+    {
+        for (int numberOfWorkers : new int[] { 1, 4 })
+        {
+            List<String> ids = VCFParsingPipeline.mapLines(this.createVCF(20000), line -> line.split("\t")[2], numberOfWorkers)
+                                                 .collect(Collectors.toList());
+            assertEquals(IntStream.range(0, 20000)
+                                  .mapToObj(index -> "rs" + index)
+                                  .collect(Collectors.toList()),
+                         ids);
+        }
+    }
+
+    @Test
+    public void testReaderIsStartedLazily() throws Exception
+    {
+        AtomicBoolean inputStreamClosed = new AtomicBoolean(false);
+        InputStream inputStream = new FilterInputStream(this.createVCF(20000))
+        {
+            @Override
+            public void close() throws IOException
+            {
+                inputStreamClosed.set(true);
+                super.close();
+            }
+        };
+
+        this.awaitNoPipelineThreads();
+        Stream<String> ids = VCFParsingPipeline.mapLines(inputStream, line -> line.split("\t")[2], 4);
+        assertEquals(0, this.countPipelineThreads());
+
+        ids.close();
+        assertTrue(inputStreamClosed.get());
+        assertEquals(0, this.countPipelineThreads());
+    }
+
+    @Test
+    public void testCloseAfterPartialConsumption() throws Exception
+    {
+        try (Stream<String> ids = VCFParsingPipeline.mapLines(this.createVCF(100000), line -> line.split("\t")[2], 4))
+        {
+            assertEquals(10, ids.limit(10)
+                                .count());
+        }
+        this.awaitNoPipelineThreads();
+    }
+
+    private void awaitNoPipelineThreads() throws InterruptedException
+    {
+        // workers of previously finished pipelines terminate asynchronously
+        long deadline = System.currentTimeMillis() + 10000;
+        while (this.countPipelineThreads() > 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(0, this.countPipelineThreads());
+    }
+
+    private long countPipelineThreads()
+    {
+        return Thread.getAllStackTraces()
+                     .keySet()
+                     .stream()
+                     .filter(Thread::isAlive)
+                     .filter(thread -> thread.getName()
+                                             .startsWith("ensembl-vcf-"))
+                     .count();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseFailure() throws Exception
+    {
+        VCFParsingPipeline.parse(this.createVCF(20000), record ->
+        {
+            if (record.getId()
+                      .equals("rs12345"))
+            {
+                throw new IllegalArgumentException();
+            }
+            return record.getId();
+        }, 4)
+                          .count();
+    }
+}
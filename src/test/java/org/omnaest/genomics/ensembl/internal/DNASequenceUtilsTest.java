@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+import org.omnaest.genomics.ensembl.domain.GeneLocation;
+import org.omnaest.genomics.ensembl.domain.Range;
+
+public class DNASequenceUtilsTest
+{
+    @Test
+    public void testReverseComplement() throws Exception
+    {
+        assertEquals("NCcgTA", DNASequenceUtils.reverseComplement("TAcgGN"));
+    }
+
+    @Test
+    public void testSliceOnForwardStrand() throws Exception
+    {
+        GeneLocation geneLocation = new GeneLocation("5", "GRCh38", new Range(100, 109), 1);
+        String geneSequence = "ACGTTGCAAC";
+
+        assertEquals("GTTG", DNASequenceUtils.slice(geneSequence, geneLocation, 102, 105, 1)
+                                             .get());
+        assertEquals("CAAC", DNASequenceUtils.slice(geneSequence, geneLocation, 102, 105, -1)
+                                             .get());
+        assertFalse(DNASequenceUtils.slice(geneSequence, geneLocation, 98, 105, 1)
+                                    .isPresent());
+        assertFalse(DNASequenceUtils.slice(geneSequence, geneLocation, 105, 110, 1)
+                                    .isPresent());
+    }
+
+    @Test
+    public void testSliceOnReverseStrand() throws Exception
+    {
+        // forward strand of positions 100-109 is GTTGCAACGT, the gene sequence is given as its reverse complement
+        GeneLocation geneLocation = new GeneLocation("5", "GRCh38", new Range(100, 109), -1);
+        String geneSequence = DNASequenceUtils.reverseComplement("GTTGCAACGT");
+
+        assertEquals("CAACG", DNASequenceUtils.slice(geneSequence, geneLocation, 104, 108, 1)
+                                              .get());
+        assertEquals("CGTTG", DNASequenceUtils.slice(geneSequence, geneLocation, 104, 108, -1)
+                                              .get());
+    }
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.omnaest.genomics.ensembl.domain.ClinicalSignificance;
+import org.omnaest.genomics.ensembl.domain.VariantConsequence;
+import org.omnaest.genomics.ensembl.domain.raw.BioType;
+
+public class EnumDecoderTest
+{
+    @Test
+    public void testDecode() throws Exception
+    {
+        for (VariantConsequence consequence : VariantConsequence.values())
+        {
+            assertEquals(consequence, VariantConsequence.decode(consequence.getMatchStr()));
+            assertEquals(consequence, VariantConsequence.decode(consequence.getMatchStr()
+                                                                           .toUpperCase()));
+        }
+        assertEquals(ClinicalSignificance.RISK_FACTOR, ClinicalSignificance.decode("Risk Factor"));
+        assertEquals(BioType.PROTEIN_CODING, BioType.decode("protein_coding"));
+
+        assertNull(VariantConsequence.decode("unknown_consequence"));
+        assertNull(VariantConsequence.decode(null));
+        assertNull(BioType.decode("lncRNA"));
+    }
+
+    @Test
+    public void testDecodeRegion() throws Exception
+    {
+        StringBuilder line = new StringBuilder("A|missense_variant|MODERATE");
+        assertEquals(VariantConsequence.MISSENSE, VariantConsequence.decode(line, 2, 18));
+        assertEquals(VariantConsequence.UNKNOWN, VariantConsequence.decode(line, 2, 2));
+        assertNull(VariantConsequence.decode(line, 2, 17));
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.omnaest.genomics.ensembl.domain.ClinicalSignificance;
+import org.omnaest.genomics.ensembl.domain.VariantConsequence;
+import org.omnaest.genomics.ensembl.internal.VariantInfoStreamer.IndexVariantInfo;
+
+public class IndexVariantInfoCodecTest
+{
+    @Test
+    public void testBinaryRoundTrip() throws Exception
+    {
+        IndexVariantInfoCodec codec = IndexVariantInfoCodec.binary();
+
+        IndexVariantInfo variantInfo = this.createVariantInfo("rs1234567890", "0.000199681", VariantConsequence.MISSENSE.getMatchStr(),
+                                                              ClinicalSignificance.RISK_FACTOR.getMatchStr(), ClinicalSignificance.BENIGN.getMatchStr());
+        this.assertRoundTrip(codec, variantInfo);
+        this.assertRoundTrip(codec, this.createVariantInfo("rs0123", "0.10", "custom_variant", "pathogenic"));
+        this.assertRoundTrip(codec, this.createVariantInfo("COSM123", "unknown", null));
+        this.assertRoundTrip(codec, new IndexVariantInfo());
+    }
+
+    @Test
+    public void testBinaryIsCompact() throws Exception
+    {
+        IndexVariantInfo variantInfo = this.createVariantInfo("rs1234567", "0.25", VariantConsequence.INTRON.getMatchStr(),
+                                                              ClinicalSignificance.BENIGN.getMatchStr());
+        int binarySize = this.write(IndexVariantInfoCodec.binary(), variantInfo).length;
+        int jsonSize = this.write(IndexVariantInfoCodec.json(), variantInfo).length;
+
+        assertEquals(1 + 3 + 4 + 1 + 1, binarySize);
+        assertTrue(binarySize * 5 < jsonSize);
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception
+    {
+        this.assertRoundTrip(IndexVariantInfoCodec.json(), this.createVariantInfo("rs123", "0.5", VariantConsequence.STOP_GAINED.getMatchStr(),
+                                                                                  ClinicalSignificance.BENIGN.getMatchStr()));
+    }
+
+    private IndexVariantInfo createVariantInfo(String rsId, String maf, String consequence, String... clinicalSignificances)
+    {
+        IndexVariantInfo variantInfo = new IndexVariantInfo();
+        variantInfo.setRsId(rsId);
+        variantInfo.setMaf(maf);
+        variantInfo.setConsequence(consequence);
+        Arrays.asList(clinicalSignificances)
+              .forEach(variantInfo::addClinicalSignifance);
+        return variantInfo;
+    }
+
+    private void assertRoundTrip(IndexVariantInfoCodec codec, IndexVariantInfo variantInfo) throws IOException
+    {
+        IndexVariantInfo result = codec.read(new DataInputStream(new ByteArrayInputStream(this.write(codec, variantInfo))));
+        assertEquals(variantInfo.getRsId(), result.getRsId());
+        assertEquals(variantInfo.getMaf(), result.getMaf());
+        assertEquals(variantInfo.getConsequence(), result.getConsequence());
+        assertEquals(new HashSet<>(variantInfo.getClinicalSignifance()), new HashSet<>(result.getClinicalSignifance()));
+    }
+
+    private byte[] write(IndexVariantInfoCodec codec, IndexVariantInfo variantInfo) throws IOException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        codec.write(variantInfo, new DataOutputStream(outputStream));
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class LazyFutureTest
+{
+    @Test
+    public void testComputationIsLazyAndMemoized() throws Exception
+    {
+        AtomicInteger counter = new AtomicInteger();
+        LazyFuture<String> lazyFuture = LazyFuture.of(() -> CompletableFuture.completedFuture("value" + counter.incrementAndGet()));
+        assertEquals(0, counter.get());
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<String>> futures = IntStream.range(0, 100)
+                                                    .mapToObj(index -> executorService.submit(lazyFuture::get))
+                                                    .collect(Collectors.toList());
+            for (Future<String> future : futures)
+            {
+                assertEquals("value1", future.get());
+            }
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+        assertEquals(1, counter.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRuntimeExceptionIsRethrown() throws Exception
+    {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalArgumentException());
+        LazyFuture.of(() -> future)
+                  .start()
+                  .get();
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.omnaest.genomics.ensembl.domain.ClinicalSignificance;
+import org.omnaest.genomics.ensembl.domain.VariantConsequence;
+import org.omnaest.genomics.ensembl.internal.VariantInfoIndex.IndexVariantInfo;
+
+public class PackedVariantInfoTableTest
+{
+    @Test
+    public void testPutAndGet() throws Exception
+    {
+        PackedVariantInfoTable table = new PackedVariantInfoTable(10);
+        table.put(this.createVariantInfo("rs123", "0.4253", VariantConsequence.INTRON.getMatchStr(), ClinicalSignificance.BENIGN.getMatchStr()));
+        table.put(this.createVariantInfo("rs4294967294", null, null));
+
+        this.assertVariantInfo(this.createVariantInfo("rs123", "0.4253", VariantConsequence.INTRON.getMatchStr(), ClinicalSignificance.BENIGN.getMatchStr()),
+                               table.get("rs123"));
+        this.assertVariantInfo(this.createVariantInfo("rs4294967294", null, null), table.get("rs4294967294"));
+        assertNull(table.get("rs124"));
+        assertNull(table.get("rs0123"));
+        assertNull(table.get(null));
+        assertEquals(2, table.size());
+        assertEquals(0, table.getNumberOfOverflowRecords());
+    }
+
+    @Test
+    public void testMerge() throws Exception
+    {
+        PackedVariantInfoTable table = new PackedVariantInfoTable(10);
+        table.put(this.createVariantInfo("rs1", null, VariantConsequence.INTRON.getMatchStr(), ClinicalSignificance.BENIGN.getMatchStr()));
+        table.put(this.createVariantInfo("rs1", "0.25", VariantConsequence.STOP_GAINED.getMatchStr(), ClinicalSignificance.RISK_FACTOR.getMatchStr()));
+        table.put(this.createVariantInfo("rs1", "0.5", VariantConsequence.MISSENSE.getMatchStr()));
+
+        this.assertVariantInfo(this.createVariantInfo("rs1", "0.25", VariantConsequence.STOP_GAINED.getMatchStr(), ClinicalSignificance.BENIGN.getMatchStr(),
+                                                      ClinicalSignificance.RISK_FACTOR.getMatchStr()),
+                               table.get("rs1"));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testOverflow() throws Exception
+    {
+        PackedVariantInfoTable table = new PackedVariantInfoTable(10);
+        table.put(this.createVariantInfo("COSM123", "0.1", null));
+        table.put(this.createVariantInfo("rs4294967295", "0.1", null));
+        table.put(this.createVariantInfo("rs2", "1e-5", null));
+        table.put(this.createVariantInfo("rs3", null, "custom_variant"));
+        table.put(this.createVariantInfo("rs4", null, null, "pathogenic"));
+        table.put(this.createVariantInfo("rs5", "0.1", VariantConsequence.INTRON.getMatchStr()));
+        table.put(this.createVariantInfo("rs5", null, null, "pathogenic"));
+        table.put(this.createVariantInfo("rs5", "0.2", VariantConsequence.STOP_GAINED.getMatchStr()));
+
+        assertEquals(6, table.getNumberOfOverflowRecords());
+        assertEquals(6, table.size());
+        this.assertVariantInfo(this.createVariantInfo("COSM123", "0.1", null), table.get("COSM123"));
+        this.assertVariantInfo(this.createVariantInfo("rs4294967295", "0.1", null), table.get("rs4294967295"));
+        this.assertVariantInfo(this.createVariantInfo("rs2", "1e-5", null), table.get("rs2"));
+        this.assertVariantInfo(this.createVariantInfo("rs3", null, "custom_variant"), table.get("rs3"));
+        this.assertVariantInfo(this.createVariantInfo("rs4", null, null, "pathogenic"), table.get("rs4"));
+        this.assertVariantInfo(this.createVariantInfo("rs5", "0.1", VariantConsequence.STOP_GAINED.getMatchStr(), "pathogenic"), table.get("rs5"));
+    }
+
+    @Test
+    public void testGrowAndRemoveAgainstMap() throws Exception
+    {
+        Random random = new Random(42);
+        String[] mafs = { null, "0.1", "0.4253", "0.000199681", "1e-5" };
+        String[] consequences = { null, VariantConsequence.INTRON.getMatchStr(), VariantConsequence.MISSENSE.getMatchStr(),
+                                  VariantConsequence.STOP_GAINED.getMatchStr(), "custom_variant" };
+        String[] clinicalSignificances = { ClinicalSignificance.BENIGN.getMatchStr(), ClinicalSignificance.RISK_FACTOR.getMatchStr(), "pathogenic" };
+
+        PackedVariantInfoTable table = new PackedVariantInfoTable(16);
+        Map<String, IndexVariantInfo> expectedVariantInfos = new HashMap<>();
+        for (int index = 0; index < 50000; index++)
+        {
+            IndexVariantInfo variantInfo = this.createVariantInfo("rs" + random.nextInt(20000), mafs[random.nextInt(mafs.length)],
+                                                                  consequences[random.nextInt(consequences.length)]);
+            if (random.nextInt(10) == 0)
+            {
+                variantInfo.addClinicalSignifance(clinicalSignificances[random.nextInt(clinicalSignificances.length)]);
+            }
+
+            table.put(variantInfo);
+            expectedVariantInfos.merge(variantInfo.getRsId(), variantInfo, VariantInfoIndex::mergeVariantInfos);
+        }
+
+        assertEquals(expectedVariantInfos.size(), table.size());
+        expectedVariantInfos.values()
+                            .forEach(variantInfo -> this.assertVariantInfo(variantInfo, table.get(variantInfo.getRsId())));
+
+        Map<String, IndexVariantInfo> streamedVariantInfos = table.stream()
+                                                                  .collect(Collectors.toMap(IndexVariantInfo::getRsId, Function.identity()));
+        assertEquals(expectedVariantInfos.keySet(), streamedVariantInfos.keySet());
+    }
+
+    private IndexVariantInfo createVariantInfo(String rsId, String maf, String consequence, String... clinicalSignificances)
+    {
+        IndexVariantInfo variantInfo = new IndexVariantInfo();
+        variantInfo.setRsId(rsId);
+        variantInfo.setMaf(maf);
+        variantInfo.setConsequence(consequence);
+        Arrays.asList(clinicalSignificances)
+              .forEach(variantInfo::addClinicalSignifance);
+        return variantInfo;
+    }
+
+    private void assertVariantInfo(IndexVariantInfo expected, IndexVariantInfo result)
+    {
+        assertEquals(expected.getRsId(), result.getRsId());
+        assertEquals(expected.getMaf(), result.getMaf());
+        assertEquals(expected.getConsequence(), result.getConsequence());
+        assertEquals(new HashSet<>(expected.getClinicalSignifance()), new HashSet<>(result.getClinicalSignifance()));
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class VariantCountManifestTest
+{
+    @Test
+    public void testNumberOfVariants() throws Exception
+    {
+        File file = File.createTempFile("variantcount", ".properties");
+        file.delete();
+        file.deleteOnExit();
+
+        assertFalse(VariantCountManifest.of(file)
+                                        .getNumberOfVariants("homo_sapiens", "release-104")
+                                        .isPresent());
+
+        VariantCountManifest.of(file)
+                            .putNumberOfVariants("homo_sapiens", "release-104", 700000000L)
+                            .putNumberOfVariants("mus_musculus", "release-104", 80000000L);
+
+        assertEquals(700000000L, VariantCountManifest.of(file)
+                                                     .getNumberOfVariants("homo_sapiens", "release-104")
+                                                     .getAsLong());
+        assertEquals(80000000L, VariantCountManifest.of(file)
+                                                    .getNumberOfVariants("mus_musculus", "release-104")
+                                                    .getAsLong());
+    }
+
+    @Test
+    public void testNumberOfVariantsOfOtherSourceKey() throws Exception
+    {
+        File file = File.createTempFile("variantcount", ".properties");
+        file.delete();
+        file.deleteOnExit();
+
+        VariantCountManifest.of(file)
+                            .putNumberOfVariants("homo_sapiens", "release-104", 700000000L);
+        assertFalse(VariantCountManifest.of(file)
+                                        .getNumberOfVariants("homo_sapiens", "release-105")
+                                        .isPresent());
+        assertFalse(VariantCountManifest.of(file)
+                                        .getNumberOfVariants("homo_sapiens", Optional.empty())
+                                        .isPresent());
+
+        VariantCountManifest.of(file)
+                            .putNumberOfVariants("homo_sapiens", "release-105", 710000000L);
+        assertEquals(710000000L, VariantCountManifest.of(file)
+                                                     .getNumberOfVariants("homo_sapiens", Optional.of("release-105"))
+                                                     .getAsLong());
+        assertFalse(VariantCountManifest.of(file)
+                                        .getNumberOfVariants("homo_sapiens", "release-104")
+                                        .isPresent());
+    }
+}
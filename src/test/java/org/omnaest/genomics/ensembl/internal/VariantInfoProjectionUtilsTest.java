@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.omnaest.genomics.ensembl.domain.ClinicalSignificance;
+import org.omnaest.genomics.ensembl.domain.VariantConsequence;
+import org.omnaest.genomics.ensembl.internal.VariantInfoStreamer.IndexVariantInfo;
+
+public class VariantInfoProjectionUtilsTest
+{
+    private static final String LINE = "1\t10177\trs367896724\tA\tAC\t.\t.\tdbSNP_150;TSA=insertion;E_Freq;MAF=0.4253;CLIN_benign;"
+            + "CSQ=AC|intron_variant|MODIFIER|DDX11L1,AC|missense_variant|MODERATE|WASH7P,AC|downstream_gene_variant|MODIFIER|WASH7P";
+
+    @Test
+    public void testReadId() throws Exception
+    {
+        assertEquals("rs367896724", VariantInfoProjectionUtils.readId(LINE));
+        assertNull(VariantInfoProjectionUtils.readId("#CHROM\tPOS\tID\tREF\tALT"));
+        assertNull(VariantInfoProjectionUtils.readId("1\t10177"));
+    }
+
+    @Test
+    public void testProjectInfo() throws Exception
+    {
+        IndexVariantInfo variantInfo = new IndexVariantInfo();
+        assertTrue(VariantInfoProjectionUtils.projectInfo(LINE, variantInfo));
+
+        assertEquals("0.4253", variantInfo.getMaf());
+        assertEquals(VariantConsequence.MISSENSE.getMatchStr(), variantInfo.getConsequence());
+        assertEquals(new HashSet<>(Arrays.asList(ClinicalSignificance.BENIGN.getMatchStr())), variantInfo.getClinicalSignifance());
+    }
+
+    @Test
+    public void testProjectInfoWithoutFields() throws Exception
+    {
+        IndexVariantInfo variantInfo = new IndexVariantInfo();
+        assertTrue(VariantInfoProjectionUtils.projectInfo("1\t10177\trs1\tA\tAC\t.\t.\tdbSNP_150;CSQ=AC|unknown_term|MODIFIER", variantInfo));
+
+        assertNull(variantInfo.getMaf());
+        assertNull(variantInfo.getConsequence());
+
+        assertFalse(VariantInfoProjectionUtils.projectInfo("1\t10177\trs1\tA", new IndexVariantInfo()));
+    }
+}
@@ -1,7 +1,23 @@
 package org.omnaest.genomics.ensembl.internal;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
 import org.junit.Ignore;
 import org.junit.Test;
+import org.omnaest.genomics.ensembl.internal.VariantInfoStreamer.IndexVariantInfo;
 
 public class VariantInfoStreamerTest
 {
@@ -20,4 +36,98 @@ public class VariantInfoStreamerTest
         System.out.println(count);
     }
 
+    @Test
+    public void testSortAndSinkFramesDeletesBatchFilesOnFailure() throws Exception
+    {
+        File spillDirectory = Files.createTempDirectory("variantbatch")
+                                   .toFile();
+        AtomicBoolean variantInfosClosed = new AtomicBoolean(false);
+        AtomicInteger frameCounter = new AtomicInteger();
+        Stream<IndexVariantInfo> variantInfos = IntStream.range(0, 1000)
+                                                         .mapToObj(index ->
+                                                         {
+                                                             IndexVariantInfo variantInfo = new IndexVariantInfo();
+                                                             variantInfo.setRsId("rs" + index);
+                                                             return variantInfo;
+                                                         })
+                                                         .onClose(() -> variantInfosClosed.set(true));
+        try
+        {
+            this.streamer.withBatchSize(10)
+                         .withMaximumNumberOfResidentFrames(4)
+                         .withSortParallelism(2)
+                         .sortAndSinkFrames(variantInfos, frame -> frame, frame ->
+                         {
+                             if (frameCounter.incrementAndGet() == 20)
+                             {
+                                 throw new IllegalStateException("Unable to write frame");
+                             }
+                             try
+                             {
+                                 return Files.createTempFile(spillDirectory.toPath(), "variants-", ".bin")
+                                             .toFile();
+                             }
+                             catch (IOException e)
+                             {
+                                 throw new UncheckedIOException(e);
+                             }
+                         }, file ->
+                         {
+                         });
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals("Unable to write frame", e.getMessage());
+        }
+
+        assertTrue(frameCounter.get() >= 20);
+        assertTrue(variantInfosClosed.get());
+        assertEquals(0, spillDirectory.listFiles().length);
+        spillDirectory.delete();
+    }
+
+    @Test
+    public void testMergeBatchFilesDeletesBatchFilesOnFailure() throws Exception
+    {
+        File spillDirectory = Files.createTempDirectory("variantbatch")
+                                   .toFile();
+        this.streamer.withSpillDirectory(spillDirectory)
+                     .withMergeFanIn(2);
+
+        List<File> batchFiles = new ArrayList<>();
+        for (int batch = 0; batch < 8; batch++)
+        {
+            batchFiles.add(this.streamer.writeBatchFile(IntStream.range(0, 5)
+                                                                 .mapToObj(index ->
+                                                                 {
+                                                                     IndexVariantInfo variantInfo = new IndexVariantInfo();
+                                                                     variantInfo.setRsId("rs" + index);
+                                                                     return variantInfo;
+                                                                 })
+                                                                 .iterator()));
+        }
+
+        AtomicInteger mergeCounter = new AtomicInteger();
+        try
+        {
+            this.streamer.mergeBatchFiles(batchFiles, (variantInfo1, variantInfo2) ->
+            {
+                if (mergeCounter.incrementAndGet() == 8)
+                {
+                    throw new IllegalStateException("Unable to merge variants");
+                }
+                return variantInfo1;
+            });
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals("Unable to merge variants", e.getMessage());
+        }
+
+        assertEquals(0, spillDirectory.listFiles().length);
+        spillDirectory.delete();
+    }
+
 }
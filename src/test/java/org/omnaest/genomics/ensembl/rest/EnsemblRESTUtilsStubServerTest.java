@@ -0,0 +1,545 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.omnaest.genomics.ensembl.domain.raw.Lookup;
+import org.omnaest.genomics.ensembl.domain.raw.Sequence;
+import org.omnaest.genomics.ensembl.domain.raw.Sequences;
+import org.omnaest.genomics.ensembl.domain.raw.VariantInfo;
+import org.omnaest.genomics.ensembl.rest.EnsemblRESTUtils.EnsembleRESTAccessor;
+import org.omnaest.genomics.ensembl.rest.EnsemblRESTUtils.EnsembleRESTAsyncAccessor;
+import org.omnaest.genomics.ensembl.rest.EnsemblRESTUtils.SequenceType;
+import org.omnaest.utils.element.bi.BiElement;
+import org.omnaest.utils.rest.client.RestClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Tests the {@link EnsemblRESTUtils} against a local {@link RESTStubServer}
+ * 
+ * @author omnaest
+ */
+public class EnsemblRESTUtilsStubServerTest
+{
+    private static final String LOOKUP_JSON = "{\"id\":\"ENST00000523732\",\"biotype\":\"protein_coding\",\"Parent\":\"ENSG00000132837\"}";
+
+    private RESTStubServer server = RESTStubServer.start()
+                                                  .withJsonResponse("/lookup/id/", LOOKUP_JSON);
+
+    @After
+    public void tearDown()
+    {
+        this.server.close();
+    }
+
+    @Test
+    public void testGetLookUpWithSharedClientFromMultipleThreads() throws Exception
+    {
+        EnsembleRESTAccessor restAccessor = EnsemblRESTUtils.getInstance()
+                                                            .withBaseUrl(this.server.getBaseUrl())
+                                                            .withConnectionPoolSize(4);
+        AtomicInteger idCounter = new AtomicInteger();
+        List<Lookup> lookups = this.executeInParallel(50, 8, () -> restAccessor.getLookUp("ENST" + idCounter.incrementAndGet()));
+
+        assertEquals(50, lookups.size());
+        lookups.forEach(lookup -> assertEquals("ENSG00000132837", lookup.getParent()));
+        assertEquals(50, this.server.getNumberOfRequests());
+    }
+
+    @Test
+    public void testGetLookUpAsync() throws Exception
+    {
+        EnsembleRESTAsyncAccessor restAccessor = EnsemblRESTUtils.getAsyncInstance()
+                                                                 .withBaseUrl(this.server.getBaseUrl())
+                                                                 .withMaximumInFlightRequests(16);
+        List<CompletableFuture<Lookup>> futures = IntStream.range(0, 100)
+                                                           .mapToObj(index -> restAccessor.getLookUp("ENST" + index))
+                                                           .collect(Collectors.toList());
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                         .get(30, TimeUnit.SECONDS);
+
+        futures.forEach(future -> assertEquals("ENSG00000132837", future.join()
+                                                                        .getParent()));
+        assertEquals(100, this.server.getNumberOfRequests());
+    }
+
+    @Test
+    public void testConnectionPoolSizeSurvivesAsyncWrapping() throws Exception
+    {
+        int connectionPoolSize = 12;
+        CountDownLatch allRequestsArrived = new CountDownLatch(connectionPoolSize);
+        AtomicInteger requestsInFlight = new AtomicInteger();
+        AtomicInteger maximumRequestsInFlight = new AtomicInteger();
+        this.server.withHandler("/pooled/lookup/id/", exchange ->
+        {
+            maximumRequestsInFlight.accumulateAndGet(requestsInFlight.incrementAndGet(), Math::max);
+            allRequestsArrived.countDown();
+            try
+            {
+                // with a smaller connection pool not all requests arrive and the handlers are released by the timeout
+                allRequestsArrived.await(2, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread()
+                      .interrupt();
+            }
+            requestsInFlight.decrementAndGet();
+            RESTStubServer.sendJson(exchange, 200, LOOKUP_JSON);
+        });
+
+        EnsembleRESTAccessor restAccessor = EnsemblRESTUtils.getInstance()
+                                                            .withBaseUrl(this.server.getBaseUrl() + "/pooled")
+                                                            .withRateLimitScheduler(RateLimitScheduler.newInstance())
+                                                            .withConnectionPoolSize(connectionPoolSize);
+        EnsemblRESTUtils.getAsyncInstance(restAccessor);
+
+        AtomicInteger idCounter = new AtomicInteger();
+        List<Lookup> lookups = this.executeInParallel(connectionPoolSize, connectionPoolSize,
+                                                      () -> restAccessor.getLookUp("ENST" + idCounter.incrementAndGet()));
+
+        assertEquals(connectionPoolSize, lookups.size());
+        assertEquals(connectionPoolSize, maximumRequestsInFlight.get());
+    }
+
+    @Test
+    public void testConcurrentIdenticalRequestsAreCollapsed() throws Exception
+    {
+        CountDownLatch responseLatch = new CountDownLatch(1);
+        this.server.withHandler("/lookup/id/ENSG00000132837", exchange ->
+        {
+            try
+            {
+                responseLatch.await(30, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread()
+                      .interrupt();
+            }
+            RESTStubServer.sendJson(exchange, 200, LOOKUP_JSON);
+        });
+
+        EnsembleRESTAccessor restAccessor = EnsemblRESTUtils.getInstance()
+                                                            .withBaseUrl(this.server.getBaseUrl());
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<Lookup>> futures = IntStream.range(0, 8)
+                                                    .mapToObj(index -> executorService.submit(() -> restAccessor.getLookUp("ENSG00000132837")))
+                                                    .collect(Collectors.toList());
+
+            // the stub server holds back the response until all other threads joined the request in flight
+            long deadline = System.currentTimeMillis() + 30000;
+            while (restAccessor.getRequestMetrics()
+                               .getNumberOfCollapsedRequests() < 7
+                    && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            responseLatch.countDown();
+
+            for (Future<Lookup> future : futures)
+            {
+                assertEquals("ENSG00000132837", future.get(30, TimeUnit.SECONDS)
+                                                      .getParent());
+            }
+        }
+        finally
+        {
+            responseLatch.countDown();
+            executorService.shutdownNow();
+        }
+
+        assertEquals(1, this.server.getNumberOfRequests());
+        assertEquals(8, restAccessor.getRequestMetrics()
+                                    .getNumberOfRequests());
+        assertEquals(7, restAccessor.getRequestMetrics()
+                                    .getNumberOfCollapsedRequests());
+
+        // once the request has finished, the next request executes its own call
+        restAccessor.getLookUp("ENSG00000132837");
+        assertEquals(2, this.server.getNumberOfRequests());
+    }
+
+    @Test
+    public void testThrottledRequestsAreRetriedAfterPause() throws Exception
+    {
+        AtomicInteger throttleCounter = new AtomicInteger(2);
+        this.server.withHandler("/throttled/lookup/id/", exchange ->
+        {
+            int throttle = throttleCounter.getAndDecrement();
+            if (throttle > 0)
+            {
+                if (throttle == 2)
+                {
+                    exchange.getResponseHeaders()
+                            .set("Retry-After", "0.3");
+                }
+                RESTStubServer.sendJson(exchange, 429, "{\"error\":\"You have exceeded the limit of 15 requests per second\"}");
+            }
+            else
+            {
+                RESTStubServer.sendJson(exchange, 200, LOOKUP_JSON);
+            }
+        });
+
+        // default retry settings, so a throttled request must be paced by the scheduler and not by the 15 seconds retry delay, the first throttle
+        // provides a Retry-After header and the second falls back to the default retry after duration
+        RateLimitScheduler rateLimitScheduler = RateLimitScheduler.newInstance()
+                                                                  .withDefaultRetryAfter(50, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        Lookup lookup = EnsemblRESTUtils.getInstance()
+                                        .withBaseUrl(this.server.getBaseUrl() + "/throttled")
+                                        .withRateLimitScheduler(rateLimitScheduler)
+                                        .getLookUp("ENST00000523732");
+        long durationInMilliseconds = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("ENSG00000132837", lookup.getParent());
+        assertEquals(2, rateLimitScheduler.getMetrics()
+                                          .getNumberOfThrottles());
+        assertEquals(3, this.server.getNumberOfRequests());
+        assertTrue(durationInMilliseconds >= 350);
+        assertTrue("Throttled request took " + durationInMilliseconds + "ms", durationInMilliseconds < 5000);
+    }
+
+    @Test
+    public void testRequestsArePacedByRateLimitHeaders() throws Exception
+    {
+        this.server.withHandler("/quota/lookup/id/", exchange ->
+        {
+            exchange.getResponseHeaders()
+                    .set("X-RateLimit-Remaining", "9");
+            exchange.getResponseHeaders()
+                    .set("X-RateLimit-Reset", "1");
+            RESTStubServer.sendJson(exchange, 200, LOOKUP_JSON);
+        });
+
+        // 4 requests above the quota reserve per second, so after the first response and a burst of 4 requests every request waits 250ms
+        RateLimitScheduler rateLimitScheduler = RateLimitScheduler.newInstance();
+        EnsembleRESTAccessor restAccessor = EnsemblRESTUtils.getInstance()
+                                                            .withBaseUrl(this.server.getBaseUrl() + "/quota")
+                                                            .withRateLimitScheduler(rateLimitScheduler);
+        long start = System.nanoTime();
+        for (int ii = 0; ii < 9; ii++)
+        {
+            assertEquals("ENSG00000132837", restAccessor.getLookUp("ENST0000052373" + ii)
+                                                        .getParent());
+        }
+        long durationInMilliseconds = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(9, this.server.getNumberOfRequests());
+        assertEquals(4, rateLimitScheduler.getMetrics()
+                                          .getNumberOfWaits());
+        assertTrue("Paced requests took " + durationInMilliseconds + "ms", durationInMilliseconds >= 800);
+        assertTrue("Paced requests took " + durationInMilliseconds + "ms", durationInMilliseconds < 5000);
+    }
+
+    @Test
+    public void testServerErrorsAreRetriedAndClientErrorsAreNot() throws Exception
+    {
+        AtomicInteger failureCounter = new AtomicInteger(2);
+        this.server.withHandler("/failing/lookup/id/", exchange ->
+        {
+            if (exchange.getRequestURI()
+                        .getPath()
+                        .endsWith("UNKNOWN"))
+            {
+                RESTStubServer.sendJson(exchange, 400, "{\"error\":\"ID 'UNKNOWN' not found\"}");
+            }
+            else if (failureCounter.getAndDecrement() > 0)
+            {
+                RESTStubServer.sendJson(exchange, 503, "{\"error\":\"Service unavailable\"}");
+            }
+            else
+            {
+                RESTStubServer.sendJson(exchange, 200, LOOKUP_JSON);
+            }
+        });
+
+        EnsembleRESTAccessor restAccessor = EnsemblRESTUtils.getInstance()
+                                                            .withBaseUrl(this.server.getBaseUrl() + "/failing")
+                                                            .withRetry(3, 10, TimeUnit.MILLISECONDS)
+                                                            .withRateLimitScheduler(RateLimitScheduler.newInstance());
+        assertEquals("ENSG00000132837", restAccessor.getLookUp("ENST00000523732")
+                                                    .getParent());
+        assertEquals(3, this.server.getNumberOfRequests());
+
+        try
+        {
+            restAccessor.getLookUp("UNKNOWN");
+            fail();
+        }
+        catch (RuntimeException e)
+        {
+            // expected
+        }
+        assertEquals(4, this.server.getNumberOfRequests());
+    }
+
+    @Test
+    public void testGetVariantDetailsWithParallelBatches() throws Exception
+    {
+        this.server.withHandler("/variation/homo_sapiens", new VariantBatchHandler());
+
+        List<String> variantIds = IntStream.range(0, 1000)
+                                           .mapToObj(index -> "rs" + index)
+                                           .collect(Collectors.toList());
+        Map<String, VariantInfo> variantIdToVariantInfo = EnsemblRESTUtils.getInstance()
+                                                                          .withBaseUrl(this.server.getBaseUrl())
+                                                                          .withVariantBatchSize(50)
+                                                                          .withBatchParallelism(4)
+                                                                          .getVariantDetails("homo_sapiens", variantIds.stream());
+
+        assertEquals(1000, variantIdToVariantInfo.size());
+        assertEquals("missense_variant", variantIdToVariantInfo.get("rs999")
+                                                               .getConsequence());
+        assertEquals(20, this.server.getNumberOfRequests());
+    }
+
+    @Test
+    public void testStreamVariantDetails() throws Exception
+    {
+        this.server.withHandler("/variation/homo_sapiens", new VariantBatchHandler());
+
+        List<String> variantIds = IntStream.range(0, 1000)
+                                           .mapToObj(index -> "rs" + index)
+                                           .collect(Collectors.toList());
+        EnsembleRESTAccessor restAccessor = EnsemblRESTUtils.getInstance()
+                                                            .withBaseUrl(this.server.getBaseUrl())
+                                                            .withVariantBatchSize(50)
+                                                            .withBatchParallelism(2);
+        try (Stream<BiElement<String, VariantInfo>> variants = restAccessor.streamVariantDetails("homo_sapiens", variantIds.stream()))
+        {
+            assertEquals(1000, variants.map(BiElement::getFirst)
+                                       .distinct()
+                                       .count());
+        }
+        assertEquals(20, this.server.getNumberOfRequests());
+
+        // only the batches in flight are requested if the stream is not fully consumed
+        try (Stream<BiElement<String, VariantInfo>> variants = restAccessor.streamVariantDetails("homo_sapiens", variantIds.stream()))
+        {
+            assertEquals(10, variants.limit(10)
+                                     .count());
+        }
+        assertTrue(this.server.getNumberOfRequests() <= 20 + 3);
+    }
+
+    @Test
+    public void testGetLookUpsWithBatches() throws Exception
+    {
+        this.server.withHandler("/lookup/id", new LookupBatchHandler());
+
+        List<String> ids = IntStream.range(0, 2500)
+                                    .mapToObj(index -> "ENST" + index)
+                                    .collect(Collectors.toList());
+        Map<String, Lookup> idToLookup = EnsemblRESTUtils.getInstance()
+                                                         .withBaseUrl(this.server.getBaseUrl())
+                                                         .getLookUps(ids);
+
+        // every tenth id is unknown and answered with null
+        assertEquals(2250, idToLookup.size());
+        assertEquals("ENSG1", idToLookup.get("ENST1")
+                                        .getParent());
+        assertEquals(3, this.server.getNumberOfRequests());
+    }
+
+    @Test
+    public void testGetSequencesWithBatches() throws Exception
+    {
+        this.server.withHandler("/sequence/id", new SequenceBatchHandler());
+
+        List<String> ids = IntStream.range(0, 120)
+                                    .mapToObj(index -> "ENSG" + index)
+                                    .collect(Collectors.toList());
+        Sequences sequences = EnsemblRESTUtils.getInstance()
+                                              .withBaseUrl(this.server.getBaseUrl())
+                                              .getSequences(ids, SequenceType.PROTEIN);
+
+        assertEquals(240, sequences.size());
+        assertEquals(120, sequences.stream()
+                                   .map(Sequence::getQuery)
+                                   .distinct()
+                                   .count());
+        assertEquals("protein", sequences.get(0)
+                                         .getSequence());
+        assertEquals(3, this.server.getNumberOfRequests());
+    }
+
+    /**
+     * Answers a POST /lookup/id request with a {@link Lookup} for every requested id and null for every tenth id
+     */
+    private static class LookupBatchHandler implements HttpHandler
+    {
+        private ObjectMapper objectMapper = new ObjectMapper();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            JsonNode request = this.objectMapper.readTree(exchange.getRequestBody());
+            ObjectNode response = this.objectMapper.createObjectNode();
+            request.get("ids")
+                   .forEach(id ->
+                   {
+                       String transcriptId = id.asText();
+                       if (Integer.parseInt(transcriptId.substring(4)) % 10 == 0)
+                       {
+                           response.putNull(transcriptId);
+                       }
+                       else
+                       {
+                           response.putObject(transcriptId)
+                                   .put("id", transcriptId)
+                                   .put("Parent", transcriptId.replace("ENST", "ENSG"));
+                       }
+                   });
+            RESTStubServer.sendJson(exchange, 200, this.objectMapper.writeValueAsString(response));
+        }
+    }
+
+    /**
+     * Answers a POST /sequence/id request with two sequences for every requested id, which contain the requested type as sequence
+     */
+    private static class SequenceBatchHandler implements HttpHandler
+    {
+        private ObjectMapper objectMapper = new ObjectMapper();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            JsonNode request = this.objectMapper.readTree(exchange.getRequestBody());
+            ArrayNode response = this.objectMapper.createArrayNode();
+            request.get("ids")
+                   .forEach(id -> IntStream.range(0, 2)
+                                           .forEach(index -> response.addObject()
+                                                                     .put("id", id.asText() + "." + index)
+                                                                     .put("query", id.asText())
+                                                                     .put("seq", request.get("type")
+                                                                                        .asText())));
+            RESTStubServer.sendJson(exchange, 200, this.objectMapper.writeValueAsString(response));
+        }
+    }
+
+    /**
+     * Answers a POST /variation/:species request with a {@link VariantInfo} for every requested id
+     */
+    private static class VariantBatchHandler implements HttpHandler
+    {
+        private ObjectMapper objectMapper = new ObjectMapper();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            JsonNode request = this.objectMapper.readTree(exchange.getRequestBody());
+            ObjectNode response = this.objectMapper.createObjectNode();
+            request.get("ids")
+                   .forEach(id -> response.putObject(id.asText())
+                                          .put("name", id.asText())
+                                          .put("most_severe_consequence", "missense_variant"));
+            RESTStubServer.sendJson(exchange, 200, this.objectMapper.writeValueAsString(response));
+        }
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkSharedClient() throws Exception
+    {
+        int numberOfRequests = 5000;
+        int numberOfThreads = 8;
+        String url = this.server.getBaseUrl() + "/lookup/id/ENST00000523732";
+
+        // warm up
+        this.measureRequestsPerSecond(500, numberOfThreads, () -> RestClient.newJSONRestClient()
+                                                                            .withRetry(12, 15, TimeUnit.SECONDS)
+                                                                            .requestGet(url, Lookup.class));
+
+        double newClientPerRequest = this.measureRequestsPerSecond(numberOfRequests, numberOfThreads, () -> RestClient.newJSONRestClient()
+                                                                                                                      .withRetry(12, 15, TimeUnit.SECONDS)
+                                                                                                                      .requestGet(url, Lookup.class));
+
+        EnsembleRESTAccessor restAccessor = EnsemblRESTUtils.getInstance()
+                                                            .withBaseUrl(this.server.getBaseUrl())
+                                                            .withConnectionPoolSize(numberOfThreads)
+                                                            .withRequestCoalescing(false);
+        double sharedClient = this.measureRequestsPerSecond(numberOfRequests, numberOfThreads, () -> restAccessor.getLookUp("ENST00000523732"));
+
+        System.out.println("New client per request: " + Math.round(newClientPerRequest) + " requests/s");
+        System.out.println("Shared client:          " + Math.round(sharedClient) + " requests/s");
+    }
+
+    private double measureRequestsPerSecond(int numberOfRequests, int numberOfThreads, Supplier<?> request) throws Exception
+    {
+        long start = System.nanoTime();
+        this.executeInParallel(numberOfRequests, numberOfThreads, request);
+        return numberOfRequests / ((System.nanoTime() - start) / 1.0E9);
+    }
+
+    private <T> List<T> executeInParallel(int numberOfRequests, int numberOfThreads, Supplier<T> request) throws Exception
+    {
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        try
+        {
+            List<Future<T>> futures = IntStream.range(0, numberOfRequests)
+                                               .mapToObj(index -> executorService.submit(request::get))
+                                               .collect(Collectors.toList());
+            return futures.stream()
+                          .map(future ->
+                          {
+                              try
+                              {
+                                  return future.get();
+                              }
+                              catch (Exception e)
+                              {
+                                  throw new IllegalStateException(e);
+                              }
+                          })
+                          .collect(Collectors.toList());
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal local http server which stubs Ensembl REST endpoints for tests and benchmarks
+ * 
+ * @author omnaest
+ */
+public class RESTStubServer implements AutoCloseable
+{
+    private HttpServer      server;
+    private ExecutorService executorService = Executors.newCachedThreadPool();
+    private AtomicLong      requestCounter  = new AtomicLong();
+
+    private RESTStubServer(HttpServer server)
+    {
+        super();
+        this.server = server;
+        this.server.setExecutor(this.executorService);
+        this.server.start();
+    }
+
+    public static RESTStubServer start()
+    {
+        try
+        {
+            return new RESTStubServer(HttpServer.create(new InetSocketAddress("localhost", 0), 0));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public RESTStubServer withJsonResponse(String path, String json)
+    {
+        return this.withHandler(path, exchange -> sendJson(exchange, 200, json));
+    }
+
+    public RESTStubServer withHandler(String path, HttpHandler handler)
+    {
+        this.server.createContext(path, exchange ->
+        {
+            this.requestCounter.incrementAndGet();
+            try
+            {
+                handler.handle(exchange);
+            }
+            finally
+            {
+                exchange.close();
+            }
+        });
+        return this;
+    }
+
+    public static void sendJson(HttpExchange exchange, int statusCode, String json) throws IOException
+    {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders()
+                .set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody())
+        {
+            outputStream.write(body);
+        }
+    }
+
+    public String getBaseUrl()
+    {
+        return "http://localhost:" + this.server.getAddress()
+                                                .getPort();
+    }
+
+    public long getNumberOfRequests()
+    {
+        return this.requestCounter.get();
+    }
+
+    @Override
+    public void close()
+    {
+        this.server.stop(0);
+        this.executorService.shutdownNow();
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2021 Danny Kunz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.omnaest.genomics.ensembl.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RateLimitSchedulerTest
+{
+    private AtomicLong         time      = new AtomicLong();
+    private RateLimitScheduler scheduler = new RateLimitScheduler(this.time::get).withPermitsPerSecond(10);
+
+    @Test
+    public void testNoWaitWithoutThrottle() throws Exception
+    {
+        for (int ii = 0; ii < 100; ii++)
+        {
+            assertEquals(0, this.scheduler.reserve());
+        }
+    }
+
+    @Test
+    public void testPermanentPacing() throws Exception
+    {
+        this.scheduler.withPermanentPacing(true);
+
+        // burst of one second worth of permits
+        for (int ii = 0; ii < 10; ii++)
+        {
+            assertEquals(0, this.scheduler.reserve());
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), this.scheduler.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), this.scheduler.reserve());
+
+        this.time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, this.scheduler.reserve());
+    }
+
+    @Test
+    public void testThrottlePausesAndPaces() throws Exception
+    {
+        this.scheduler.withPacingDuration(10, TimeUnit.SECONDS)
+                      .onThrottled(2, TimeUnit.SECONDS);
+
+        assertEquals(TimeUnit.SECONDS.toNanos(2) + TimeUnit.MILLISECONDS.toNanos(100), this.scheduler.reserve());
+
+        this.time.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, this.scheduler.reserve());
+
+        this.time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        for (int ii = 0; ii < 100; ii++)
+        {
+            assertEquals(0, this.scheduler.reserve());
+        }
+        assertEquals(1, this.scheduler.getMetrics()
+                                      .getNumberOfThrottles());
+    }
+
+    @Test
+    public void testQuotaPacing() throws Exception
+    {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(RateLimitScheduler.HEADER_RATE_LIMIT_REMAINING, "15");
+        headers.put(RateLimitScheduler.HEADER_RATE_LIMIT_RESET, "10");
+        this.scheduler.onResponseHeaders(headers::get);
+
+        // the 10 requests above the reserve are spread over the 10 seconds until the reset
+        assertEquals(0, this.scheduler.reserve());
+        assertEquals(TimeUnit.SECONDS.toNanos(1), this.scheduler.reserve());
+        assertEquals(TimeUnit.SECONDS.toNanos(2), this.scheduler.reserve());
+
+        this.time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        for (int ii = 0; ii < 100; ii++)
+        {
+            assertEquals(0, this.scheduler.reserve());
+        }
+    }
+
+    @Test
+    public void testExhaustedQuotaPausesUntilReset() throws Exception
+    {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(RateLimitScheduler.HEADER_RATE_LIMIT_REMAINING, "2");
+        headers.put(RateLimitScheduler.HEADER_RATE_LIMIT_RESET, "2");
+        this.scheduler.onResponseHeaders(headers::get);
+
+        assertEquals(TimeUnit.SECONDS.toNanos(2) + TimeUnit.MILLISECONDS.toNanos(100), this.scheduler.reserve());
+        assertEquals(0, this.scheduler.getMetrics()
+                                      .getNumberOfThrottles());
+    }
+
+    @Test
+    public void testResponseWithoutRateLimitHeaders() throws Exception
+    {
+        this.scheduler.onResponseHeaders(header -> null);
+        for (int ii = 0; ii < 100; ii++)
+        {
+            assertEquals(0, this.scheduler.reserve());
+        }
+    }
+}